@@ -0,0 +1,372 @@
+package xcsf;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import xcsf.classifier.Classifier;
+import xcsf.classifier.Condition;
+
+/**
+ * Uniform grid over the condition centers that is used for closest classifier
+ * matching (CCM). Every cell stores the classifiers whose center lies within
+ * the cell and the maximum bounding radius of these conditions (see
+ * {@link Condition#getBoundingRadius()}).
+ * <p>
+ * For a query, the cells are visited in rings of increasing distance around
+ * the cell of the input. The minimum distance between the input and a cell
+ * together with the maximum radius of the cell bounds the activity of all
+ * classifiers in the cell (see
+ * {@link Condition#getActivityUpperBound(double, double)}). Cells, whose bound
+ * does not exceed the current activity threshold, are skipped and the search
+ * stops, once no remaining ring can contain a more active classifier.
+ * <p>
+ * The grid spans at most {@link #MAX_GRID_DIMENSIONS} input dimensions (the
+ * first ones). Further dimensions are ignored for the distance bounds, which
+ * keeps the bounds valid, but less tight.
+ */
+class CenterIndex {
+
+    // only the first dimensions are gridded to limit the number of cells
+    private final static int MAX_GRID_DIMENSIONS = 3;
+    // the desired number of cells, that is cellsPerDimension^gridDimensions
+    private final static int NUM_CELLS = 512;
+    // initial capacity of a single cell
+    private final static int INITIAL_CELL_CAPACITY = 8;
+
+    // grid layout, initialized with the first classifier
+    private int gridDimensions;
+    private int cellsPerDimension;
+    private double cellWidth;
+    private Classifier[][] cells;
+    private int[] cellSizes;
+    // upper bound of the bounding radius of all conditions in a cell
+    private double[] cellRadius;
+
+    // the cell of every registered classifier
+    private IdentityHashMap<Classifier, Integer> cellOf = new IdentityHashMap<Classifier, Integer>();
+
+    // the current candidates sorted by activity (highest first)
+    private Classifier[] candidates = new Classifier[XCSFConstants.maxPopSize];
+    private double[] candidateActivity = new double[XCSFConstants.maxPopSize];
+    private int numCandidates;
+    // minimum activity of the candidates required to reach the numerosity
+    private double threshold;
+
+    // temporary arrays to avoid mem alloc.
+    private int[] tmpCursor, tmpQueryCell;
+
+    /**
+     * Registers the given classifier.
+     *
+     * @param classifier
+     *            the classifier to add
+     */
+    void add(Classifier classifier) {
+        Condition condition = classifier.getCondition();
+        if (cells == null) {
+            initGrid(condition.getCenter().length);
+        }
+        double[] center = condition.getCenter();
+        for (int d = 0; d < gridDimensions; d++) {
+            tmpCursor[d] = cellIndex(center[d]);
+        }
+        int cell = linearIndex(tmpCursor);
+        Classifier[] list = cells[cell];
+        if (list == null) {
+            list = cells[cell] = new Classifier[INITIAL_CELL_CAPACITY];
+        } else if (cellSizes[cell] == list.length) {
+            list = cells[cell] = Arrays.copyOf(list, 2 * list.length);
+        }
+        list[cellSizes[cell]++] = classifier;
+        cellRadius[cell] = Math.max(cellRadius[cell], condition
+                .getBoundingRadius());
+        cellOf.put(classifier, cell);
+    }
+
+    /**
+     * Unregisters the given classifier.
+     *
+     * @param classifier
+     *            the classifier to remove
+     */
+    void remove(Classifier classifier) {
+        Integer cell = cellOf.remove(classifier);
+        if (cell == null) {
+            return;
+        }
+        Classifier[] list = cells[cell];
+        int last = --cellSizes[cell];
+        for (int i = 0; i <= last; i++) {
+            if (list[i] == classifier) {
+                list[i] = list[last];
+                list[last] = null;
+                break;
+            }
+        }
+        if (last == 0) {
+            // the radius bound is not decreased otherwise
+            cellRadius[cell] = 0;
+        }
+    }
+
+    /**
+     * Removes all classifiers from this index.
+     */
+    void clear() {
+        cellOf.clear();
+        if (cells != null) {
+            for (int cell = 0; cell < cells.length; cell++) {
+                if (cells[cell] != null) {
+                    Arrays.fill(cells[cell], 0, cellSizes[cell], null);
+                }
+            }
+            Arrays.fill(cellSizes, 0);
+            Arrays.fill(cellRadius, 0);
+        }
+    }
+
+    /**
+     * Adds the most active classifiers for the given state to the
+     * <code>matchSet</code>, highest activity first, until their numerosity
+     * sum reaches <code>num</code>.
+     *
+     * @param state
+     *            the state to match
+     * @param num
+     *            the number of (micro) classifiers to select
+     * @param matchSet
+     *            the (empty) matchset to fill
+     */
+    void closest(StateDescriptor state, int num, MatchSet matchSet) {
+        numCandidates = 0;
+        threshold = Double.NEGATIVE_INFINITY;
+        if (cells == null) {
+            return;
+        }
+        double[] input = state.getConditionInput();
+        for (int d = 0; d < gridDimensions; d++) {
+            tmpQueryCell[d] = cellIndex(input[d]);
+        }
+        // any non-empty cell provides the type-specific bound
+        Condition type = null;
+        double maxRadius = 0;
+        for (int cell = 0; cell < cells.length; cell++) {
+            if (cellSizes[cell] > 0) {
+                type = cells[cell][0].getCondition();
+                maxRadius = Math.max(maxRadius, cellRadius[cell]);
+            }
+        }
+        if (type == null) {
+            return;
+        }
+        for (int ring = 0; ring < cellsPerDimension; ring++) {
+            // cells of this ring are at least (ring - 1) cells away
+            if (ring > 1
+                    && type.getActivityUpperBound((ring - 1) * cellWidth,
+                            maxRadius) <= threshold) {
+                break;
+            }
+            visitRing(ring, state, input, type, num);
+        }
+        for (int i = 0; i < numCandidates; i++) {
+            matchSet.add(candidates[i]);
+            candidates[i] = null;
+        }
+    }
+
+    /**
+     * Visits all cells at the given Chebyshev distance (in cells) from the
+     * query cell.
+     *
+     * @param ring
+     *            the Chebyshev distance from the query cell
+     * @param state
+     *            the state to match
+     * @param input
+     *            the condition input of the state
+     * @param type
+     *            a condition that provides the activity bound
+     * @param num
+     *            the number of (micro) classifiers to select
+     */
+    private void visitRing(int ring, StateDescriptor state, double[] input,
+            Condition type, int num) {
+        // start at the lower corner of the ring cube, clamped to the grid
+        for (int d = 0; d < gridDimensions; d++) {
+            tmpCursor[d] = Math.max(0, tmpQueryCell[d] - ring);
+        }
+        do {
+            // only the surface of the ring cube
+            boolean surface = false;
+            for (int d = 0; d < gridDimensions; d++) {
+                if (Math.abs(tmpCursor[d] - tmpQueryCell[d]) == ring) {
+                    surface = true;
+                    break;
+                }
+            }
+            if (surface) {
+                visitCell(linearIndex(tmpCursor), state, input, type, num);
+            }
+        } while (nextCell(ring));
+    }
+
+    /**
+     * Computes the activity of all classifiers in the given cell, unless the
+     * activity bound of the cell does not exceed the current threshold.
+     *
+     * @param cell
+     *            the linear cell index
+     * @param state
+     *            the state to match
+     * @param input
+     *            the condition input of the state
+     * @param type
+     *            a condition that provides the activity bound
+     * @param num
+     *            the number of (micro) classifiers to select
+     */
+    private void visitCell(int cell, StateDescriptor state, double[] input,
+            Condition type, int num) {
+        int n = cellSizes[cell];
+        if (n == 0) {
+            return;
+        }
+        // minimum distance between input and cell
+        double distance = 0;
+        for (int d = 0; d < gridDimensions; d++) {
+            double low = Condition.LOWER_BOUND + tmpCursor[d] * cellWidth;
+            double high = low + cellWidth;
+            double delta = 0;
+            if (tmpCursor[d] > 0 && input[d] < low) {
+                delta = low - input[d];
+            } else if (tmpCursor[d] < cellsPerDimension - 1 && input[d] > high) {
+                delta = input[d] - high;
+            }
+            distance += delta * delta;
+        }
+        distance = Math.sqrt(distance);
+        if (type.getActivityUpperBound(distance, cellRadius[cell]) <= threshold) {
+            return;
+        }
+        Classifier[] list = cells[cell];
+        for (int i = 0; i < n; i++) {
+            double activity = list[i].getActivity(state);
+            if (activity > threshold) {
+                insertCandidate(list[i], activity, num);
+            }
+        }
+    }
+
+    /**
+     * Inserts the classifier into the sorted candidate list and drops all
+     * candidates, which are not required to reach the numerosity
+     * <code>num</code>.
+     *
+     * @param classifier
+     *            the classifier to insert
+     * @param activity
+     *            its activity
+     * @param num
+     *            the number of (micro) classifiers to select
+     */
+    private void insertCandidate(Classifier classifier, double activity,
+            int num) {
+        int i = numCandidates;
+        while (i > 0 && candidateActivity[i - 1] < activity) {
+            candidates[i] = candidates[i - 1];
+            candidateActivity[i] = candidateActivity[i - 1];
+            i--;
+        }
+        candidates[i] = classifier;
+        candidateActivity[i] = activity;
+        numCandidates++;
+        // keep the shortest prefix, that reaches the numerosity
+        int numerositySum = 0;
+        for (i = 0; i < numCandidates; i++) {
+            numerositySum += candidates[i].getNumerosity();
+            if (numerositySum >= num) {
+                for (int j = i + 1; j < numCandidates; j++) {
+                    candidates[j] = null;
+                }
+                numCandidates = i + 1;
+                threshold = candidateActivity[i];
+                return;
+            }
+        }
+    }
+
+    /**
+     * Initializes the grid for the given input dimension.
+     *
+     * @param dimension
+     *            the dimension of the condition input
+     */
+    private void initGrid(int dimension) {
+        gridDimensions = Math.min(dimension, MAX_GRID_DIMENSIONS);
+        cellsPerDimension = Math.max(1, (int) Math.round(Math.pow(NUM_CELLS,
+                1.0 / gridDimensions)));
+        cellWidth = (Condition.UPPER_BOUND - Condition.LOWER_BOUND)
+                / cellsPerDimension;
+        int numCells = 1;
+        for (int d = 0; d < gridDimensions; d++) {
+            numCells *= cellsPerDimension;
+        }
+        cells = new Classifier[numCells][];
+        cellSizes = new int[numCells];
+        cellRadius = new double[numCells];
+        tmpCursor = new int[gridDimensions];
+        tmpQueryCell = new int[gridDimensions];
+    }
+
+    /**
+     * Returns the (clamped) cell index of the given value.
+     *
+     * @param value
+     *            the coordinate
+     * @return the cell index in <tt>[0, cellsPerDimension-1]</tt>
+     */
+    private int cellIndex(double value) {
+        int index = (int) ((value - Condition.LOWER_BOUND) / cellWidth);
+        if (index < 0 || value < Condition.LOWER_BOUND) {
+            return 0;
+        } else if (index >= cellsPerDimension) {
+            return cellsPerDimension - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Converts the given grid coordinates into a linear cell index.
+     *
+     * @param cursor
+     *            the grid coordinates
+     * @return the linear cell index
+     */
+    private int linearIndex(int[] cursor) {
+        int index = 0;
+        for (int d = gridDimensions - 1; d >= 0; d--) {
+            index = index * cellsPerDimension + cursor[d];
+        }
+        return index;
+    }
+
+    /**
+     * Advances the cursor to the next cell of the ring cube around the query
+     * cell, clamped to the grid.
+     *
+     * @param ring
+     *            the Chebyshev distance from the query cell
+     * @return <code>false</code>, if all cells were visited
+     */
+    private boolean nextCell(int ring) {
+        for (int d = 0; d < gridDimensions; d++) {
+            if (tmpCursor[d] < Math.min(cellsPerDimension - 1, tmpQueryCell[d]
+                    + ring)) {
+                tmpCursor[d]++;
+                return true;
+            }
+            tmpCursor[d] = Math.max(0, tmpQueryCell[d] - ring);
+        }
+        return false;
+    }
+}
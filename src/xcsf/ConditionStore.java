@@ -0,0 +1,292 @@
+package xcsf;
+
+import xcsf.classifier.Classifier;
+import xcsf.classifier.Condition;
+import xcsf.classifier.ConditionRotatingEllipsoid;
+
+/**
+ * Packed copy of the inverse transformation matrices of the population's
+ * conditions, which allows for a fast matching kernel. The store is organized
+ * as a structure of arrays: matrix component <tt>(i,j)</tt> of all slots is
+ * stored contiguously, such that the kernel processes a block of classifiers
+ * with simple loops over primitive arrays instead of chasing the references
+ * <code>Classifier -> Condition -> double[][]</code> for every classifier.
+ * <p>
+ * Slots are parallel to the indices of the population, that is slot
+ * <tt>i</tt> holds the condition of <code>population.elements[i]</code>.
+ * Thus, the population has to forward all modifications to this store. Only
+ * {@link ConditionRotatingEllipsoid} conditions are packed, other conditions
+ * are matched by calling {@link Classifier#doesMatch(StateDescriptor)}.
+ * <p>
+ * The kernel computes exactly the same floating point operations (in the same
+ * order) as {@link XCSFUtils.Matrix#multiplyExtended(double[][], double[],
+ * double[], int)}, thus match results are identical to the default matching.
+ */
+class ConditionStore {
+
+    /** number of slots processed at once by the kernel */
+    final static int BLOCK_SIZE = 256;
+
+    // dimension of the conditions, initialized with the first packed condition
+    private int dimension = -1;
+    // components[i * (dimension + 1) + j][slot] = inverseTransform[i][j]
+    private double[][] components;
+    // indicates if the slot contains a packed condition
+    private boolean[] packed;
+    private int capacity;
+    private int size;
+
+    // temporary arrays to avoid mem alloc.
+    private double[] tmpRow = new double[BLOCK_SIZE];
+    private double[] tmpDistance = new double[BLOCK_SIZE];
+
+    /**
+     * Default constructor.
+     *
+     * @param capacity
+     *            the maximum number of slots
+     */
+    ConditionStore(int capacity) {
+        this.capacity = capacity;
+        this.packed = new boolean[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Appends the condition of the given classifier.
+     *
+     * @param classifier
+     *            the classifier to add
+     */
+    void add(Classifier classifier) {
+        set(size++, classifier);
+    }
+
+    /**
+     * Copies the condition of the given classifier into the given slot.
+     *
+     * @param slot
+     *            the slot to overwrite
+     * @param classifier
+     *            the classifier to pack
+     */
+    void set(int slot, Classifier classifier) {
+        Condition condition = classifier.getCondition();
+        if (!(condition instanceof ConditionRotatingEllipsoid)) {
+            packed[slot] = false;
+            return;
+        }
+        double[][] inverseTransform = ((ConditionRotatingEllipsoid) condition)
+                .getInverseTransform();
+        if (components == null) {
+            init(inverseTransform.length - 1);
+        }
+        int c = 0;
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j <= dimension; j++) {
+                components[c++][slot] = inverseTransform[i][j];
+            }
+        }
+        packed[slot] = true;
+    }
+
+    /**
+     * Removes the slot at the given index. Shifts any subsequent slots to the
+     * left.
+     *
+     * @param index
+     *            the index of the slot to remove
+     */
+    void remove(int index) {
+        shift(index + 1, index, size - index - 1);
+        size--;
+    }
+
+    /**
+     * Removes the slots at the given indices. Shifts any subsequent slots to
+     * the left.
+     *
+     * @param sortedIndices
+     *            the indices to remove in ascending order
+     */
+    void remove(int[] sortedIndices) {
+        int i;
+        for (i = 0; i < sortedIndices.length - 1; i++) {
+            shift(sortedIndices[i] + 1, sortedIndices[i] - i,
+                    sortedIndices[i + 1] - sortedIndices[i] - 1);
+        }
+        shift(sortedIndices[i] + 1, sortedIndices[i] - i, size
+                - sortedIndices[i] - 1);
+        size -= sortedIndices.length;
+    }
+
+    /**
+     * Re-packs all slots, e.g. after the population was sorted.
+     *
+     * @param elements
+     *            the population elements
+     * @param size
+     *            the population size
+     */
+    void rebuild(Classifier[] elements, int size) {
+        this.size = 0;
+        for (int i = 0; i < size; i++) {
+            add(elements[i]);
+        }
+    }
+
+    /**
+     * Removes all slots.
+     */
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Adds all classifiers that match the given state to the
+     * <code>matchSet</code> in population order.
+     *
+     * @param state
+     *            the state to match
+     * @param elements
+     *            the population elements, parallel to the slots of this store
+     * @param matchSet
+     *            the matchset to fill
+     */
+    void match(StateDescriptor state, Classifier[] elements, MatchSet matchSet) {
+        matchSet.size = match(state, elements, 0, size, matchSet.elements,
+                matchSet.size, tmpDistance, tmpRow);
+    }
+
+    /**
+     * Appends all classifiers in the range <tt>[from, to)</tt> that match the
+     * given state to the <code>hits</code> array in population order. This
+     * method does not modify the store and may be called concurrently for
+     * disjoint ranges, if every thread provides its own temporary arrays.
+     *
+     * @param state
+     *            the state to match
+     * @param elements
+     *            the population elements, parallel to the slots of this store
+     * @param from
+     *            the first slot (inclusive)
+     * @param to
+     *            the last slot (exclusive)
+     * @param hits
+     *            the array to append matching classifiers to
+     * @param numHits
+     *            the number of classifiers already contained in
+     *            <code>hits</code>
+     * @param distance
+     *            temporary array of length {@link #BLOCK_SIZE}
+     * @param row
+     *            temporary array of length {@link #BLOCK_SIZE}
+     * @return the new number of classifiers in <code>hits</code>
+     */
+    int match(StateDescriptor state, Classifier[] elements, int from, int to,
+            Classifier[] hits, int numHits, double[] distance, double[] row) {
+        double[] input = state.getConditionInput();
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            int length = Math.min(BLOCK_SIZE, to - start);
+            if (components != null) {
+                squaredDistances(input, start, length, distance, row);
+            }
+            for (int k = 0; k < length; k++) {
+                int slot = start + k;
+                if (packed[slot] ? distance[k] < 1 : elements[slot]
+                        .doesMatch(state)) {
+                    hits[numHits++] = elements[slot];
+                }
+            }
+        }
+        return numHits;
+    }
+
+    /**
+     * Matching kernel: computes the squared distance of the inverse
+     * transformed <code>input</code> to the unit sphere center for
+     * <code>length</code> slots starting at <code>from</code>. The innermost
+     * loops run over contiguous slots without dependencies, which allows the
+     * JIT compiler to vectorize them.
+     *
+     * @param input
+     *            the condition input
+     * @param from
+     *            the first slot
+     * @param length
+     *            the number of slots
+     * @param distance
+     *            on return: the squared distances
+     * @param row
+     *            temporary array of at least <code>length</code> entries
+     */
+    private void squaredDistances(double[] input, int from, int length,
+            double[] distance, double[] row) {
+        int n = dimension;
+        for (int i = 0; i < n; i++) {
+            int c = i * (n + 1);
+            // row[k] = inverseTransform[i] * (input, 1)
+            double[] m = components[c];
+            double x = input[0];
+            for (int k = 0; k < length; k++) {
+                row[k] = m[from + k] * x;
+            }
+            for (int j = 1; j < n; j++) {
+                m = components[c + j];
+                x = input[j];
+                for (int k = 0; k < length; k++) {
+                    row[k] += m[from + k] * x;
+                }
+            }
+            // translation
+            m = components[c + n];
+            for (int k = 0; k < length; k++) {
+                row[k] += m[from + k];
+            }
+            // accumulate the squared length
+            if (i == 0) {
+                for (int k = 0; k < length; k++) {
+                    distance[k] = row[k] * row[k];
+                }
+            } else {
+                for (int k = 0; k < length; k++) {
+                    distance[k] += row[k] * row[k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves <code>length</code> slots from <code>src</code> to
+     * <code>dest</code>.
+     *
+     * @param src
+     *            the first source slot
+     * @param dest
+     *            the first destination slot
+     * @param length
+     *            the number of slots to move
+     */
+    private void shift(int src, int dest, int length) {
+        if (length <= 0) {
+            return;
+        }
+        if (components != null) {
+            for (double[] component : components) {
+                System.arraycopy(component, src, component, dest, length);
+            }
+        }
+        System.arraycopy(packed, src, packed, dest, length);
+    }
+
+    /**
+     * Allocates the component arrays for the given dimension.
+     *
+     * @param dimension
+     *            the dimension of the conditions
+     */
+    private void init(int dimension) {
+        this.dimension = dimension;
+        this.components = new double[dimension * (dimension + 1)][capacity];
+    }
+}
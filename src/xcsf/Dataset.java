@@ -0,0 +1,110 @@
+package xcsf;
+
+/**
+ * A finite set of labeled instances, each consisting of an input vector, an
+ * output vector (the possibility outputs) and an integer label. Rows are
+ * accessed by index. The returned arrays must not be modified, but may be
+ * kept by the caller: implementations either return stored arrays (see
+ * {@link DatasetArrays}) or decode a new array per call (see
+ * {@link DatasetMapped}). Callers, that use one row at a time, avoid the
+ * allocation by {@link #getInput(int, double[])} and
+ * {@link #getOutput(int, double[])}.
+ *
+ * @see FileRead
+ */
+public interface Dataset {
+
+    /**
+     * Returns the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int getRows();
+
+    /**
+     * Returns the dimension of the input vectors.
+     *
+     * @return the input dimension
+     */
+    public int getInputSize();
+
+    /**
+     * Returns the dimension of the output vectors.
+     *
+     * @return the output dimension
+     */
+    public int getOutputSize();
+
+    /**
+     * Returns the input vector of the given row.
+     *
+     * @param row
+     *            the row index
+     * @return the input vector, which must not be modified
+     */
+    public double[] getInput(int row);
+
+    /**
+     * Returns the output vector of the given row.
+     *
+     * @param row
+     *            the row index
+     * @return the output vector, which must not be modified
+     */
+    public double[] getOutput(int row);
+
+    /**
+     * Returns the input vector of the given row like {@link #getInput(int)},
+     * but implementations, that decode the rows, write it into the given
+     * array instead of a new one. Stored rows are returned without copying,
+     * thus the caller has to use the returned array.
+     * 
+     * @param row
+     *            the row index
+     * @param input
+     *            an array of the input dimension, which may be overwritten
+     * @return the input vector, which must not be modified and is valid until
+     *         the given array is reused
+     */
+    public double[] getInput(int row, double[] input);
+
+    /**
+     * Returns the output vector of the given row like {@link #getOutput(int)},
+     * but implementations, that decode the rows, write it into the given
+     * array instead of a new one (see {@link #getInput(int, double[])}).
+     * 
+     * @param row
+     *            the row index
+     * @param output
+     *            an array of the output dimension, which may be overwritten
+     * @return the output vector, which must not be modified and is valid until
+     *         the given array is reused
+     */
+    public double[] getOutput(int row, double[] output);
+
+    /**
+     * Returns the label of the given row.
+     *
+     * @param row
+     *            the row index
+     * @return the label
+     */
+    public int getLabel(int row);
+
+    /**
+     * Returns the input vectors of all rows, indexed by row, e.g. for
+     * {@link xcsf.classifier.Classifier#setDatasetInputs(double[][])}. This may
+     * copy all inputs to the heap.
+     *
+     * @return the input vectors, which must not be modified
+     */
+    public double[][] getInputs();
+
+    /**
+     * Returns an estimate of the heap memory used by this dataset, e.g. for
+     * a memory report on load.
+     *
+     * @return the estimated memory in bytes
+     */
+    public long getMemoryUsage();
+}
@@ -0,0 +1,264 @@
+package xcsf;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * In-memory {@link Dataset} backed by primitive arrays. Each row is stored as
+ * one exactly sized <code>double[]</code> for the input and one for the
+ * output, which are handed out without copying; the labels are stored in one
+ * <code>int[]</code>. Compared to rows of boxed <code>Double</code> values,
+ * this stores the raw values plus a small constant per row.
+ */
+public class DatasetArrays implements Dataset {
+
+    // estimated sizes of the object layout, used for the memory report
+    private final static int ARRAY_HEADER_BYTES = 16;
+    private final static int REFERENCE_BYTES = 4;
+
+    private int rows;
+    private int inputSize;
+    private int outputSize;
+    private double[][] inputs;
+    private double[][] outputs;
+    private int[] labels;
+
+    /**
+     * Creates an empty dataset with the given dimensions, rows are added by
+     * {@link #add(double[], double[], int)}.
+     *
+     * @param inputSize
+     *            the dimension of the input vectors
+     * @param outputSize
+     *            the dimension of the output vectors
+     * @param capacity
+     *            the initial number of rows to be allocated
+     */
+    public DatasetArrays(int inputSize, int outputSize, int capacity) {
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        this.inputs = new double[Math.max(capacity, 1)][];
+        this.outputs = new double[this.inputs.length][];
+        this.labels = new int[this.inputs.length];
+    }
+
+    /**
+     * Reads the given tab-separated text file. The first line is a header and
+     * skipped. Each following line holds the input values, the output values
+     * and the label. Missing values at the end of a line are zero.
+     *
+     * @param filename
+     *            the name of the file
+     * @param inputSize
+     *            the dimension of the input vectors
+     * @param outputSize
+     *            the dimension of the output vectors
+     * @return the dataset
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static DatasetArrays load(String filename, int inputSize,
+            int outputSize) throws IOException {
+        DatasetArrays dataset = new DatasetArrays(inputSize, outputSize, 1024);
+        BufferedReader br = new BufferedReader(new FileReader(filename));
+        try {
+            String line = br.readLine(); // header
+            while ((line = br.readLine()) != null) {
+                double[] input = new double[inputSize];
+                double[] output = new double[outputSize];
+                int label = parseLine(line, input, output);
+                dataset.add(input, output, label);
+            }
+        } finally {
+            br.close();
+        }
+        dataset.trim();
+        return dataset;
+    }
+
+    /**
+     * Parses one line of the tab-separated text format.
+     *
+     * @param line
+     *            the line holding the input values, the output values and the
+     *            label
+     * @param input
+     *            the array to store the input values in
+     * @param output
+     *            the array to store the output values in
+     * @return the label, or zero if missing
+     */
+    static int parseLine(String line, double[] input, double[] output) {
+        String[] values = line.split("\t");
+        int label = 0;
+        for (int i = 0; i < values.length; i++) {
+            double value = Double.parseDouble(values[i]);
+            if (i < input.length) {
+                input[i] = value;
+            } else if (i < input.length + output.length) {
+                output[i - input.length] = value;
+            } else if (i == input.length + output.length) {
+                label = (int) value;
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Adds a row to this dataset. The given arrays are stored without copying.
+     *
+     * @param input
+     *            the input vector
+     * @param output
+     *            the output vector
+     * @param label
+     *            the label
+     */
+    public void add(double[] input, double[] output, int label) {
+        if (this.rows == this.inputs.length) {
+            this.resize(Math.max(2 * this.rows, 1));
+        }
+        this.inputs[this.rows] = input;
+        this.outputs[this.rows] = output;
+        this.labels[this.rows] = label;
+        this.rows++;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getRows()
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInputSize()
+     */
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutputSize()
+     */
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInput(int)
+     */
+    public double[] getInput(int row) {
+        return this.inputs[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutput(int)
+     */
+    public double[] getOutput(int row) {
+        return this.outputs[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInput(int, double[])
+     */
+    public double[] getInput(int row, double[] input) {
+        return this.inputs[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutput(int, double[])
+     */
+    public double[] getOutput(int row, double[] output) {
+        return this.outputs[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getLabel(int)
+     */
+    public int getLabel(int row) {
+        return this.labels[row];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInputs()
+     */
+    public double[][] getInputs() {
+        this.trim();
+        return this.inputs;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getMemoryUsage()
+     */
+    public long getMemoryUsage() {
+        long bytes = 3 * ARRAY_HEADER_BYTES + this.inputs.length
+                * (2L * REFERENCE_BYTES + 4);
+        // double arrays need no padding, as the header is a multiple of 8
+        bytes += this.rows
+                * (2L * ARRAY_HEADER_BYTES + 8L * (this.inputSize + this.outputSize));
+        return bytes;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        long rawBytes = this.rows * (8L * (this.inputSize + this.outputSize) + 4);
+        return "dataset{rows=" + this.rows + ", in=" + this.inputSize
+                + ", out=" + this.outputSize + ", memory="
+                + (this.getMemoryUsage() >> 10) + " KiB, raw data="
+                + (rawBytes >> 10) + " KiB}";
+    }
+
+    /**
+     * Shrinks the row arrays to the number of rows. Later calls return
+     * immediately, unless rows were added.
+     */
+    public void trim() {
+        if (this.inputs.length != this.rows) {
+            this.resize(this.rows);
+        }
+    }
+
+    /**
+     * Copies the rows into arrays of the given capacity.
+     *
+     * @param capacity
+     *            the new number of allocated rows
+     */
+    private void resize(int capacity) {
+        double[][] newInputs = new double[capacity][];
+        double[][] newOutputs = new double[capacity][];
+        int[] newLabels = new int[capacity];
+        System.arraycopy(this.inputs, 0, newInputs, 0, this.rows);
+        System.arraycopy(this.outputs, 0, newOutputs, 0, this.rows);
+        System.arraycopy(this.labels, 0, newLabels, 0, this.rows);
+        this.inputs = newInputs;
+        this.outputs = newOutputs;
+        this.labels = newLabels;
+    }
+}
@@ -0,0 +1,425 @@
+package xcsf;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * {@link Dataset} read from a binary file through
+ * {@link FileChannel#map(FileChannel.MapMode, long, long)}. Opening a file
+ * only reads the header, rows are decoded on access from the operating
+ * system's page cache. Thus, the dataset is available without parsing and
+ * requires almost no heap memory, even for files larger than the heap.
+ * <p>
+ * The file starts with a header of {@link #HEADER_BYTES} bytes: the magic
+ * number, the format version, the input size, the output size (all
+ * <code>int</code>), the number of rows (<code>long</code>), the label column
+ * (<code>int</code>, <tt>-1</tt> if there are no labels) and the number of
+ * columns per row (<code>int</code>). The rows follow as <code>double</code>
+ * columns: the inputs, the outputs and the label. All values are little
+ * endian.
+ * <p>
+ * The {@link #main(String[])} method converts the tab-separated text format
+ * read by {@link DatasetArrays#load(String, int, int)} into this format.
+ */
+public class DatasetMapped implements Dataset {
+
+    /**
+     * The number of header bytes.
+     */
+    public final static int HEADER_BYTES = 32;
+    // the file starts with the bytes "DSCX"
+    private final static int MAGIC = 0x58435344;
+    private final static int VERSION = 1;
+    // size of the in-heap buffer for writing, in rows
+    private final static int WRITE_BUFFER_ROWS = 4096;
+
+    private int rows;
+    private int inputSize;
+    private int outputSize;
+    private int labelColumn;
+    private int columns;
+    // the mapped rows, each segment holds rowsPerSegment rows (a single
+    // mapping is limited to 2GB)
+    private DoubleBuffer[] segments;
+    private int rowsPerSegment;
+
+    /**
+     * Private constructor, use {@link #open(String)}.
+     */
+    private DatasetMapped() {
+        // empty
+    }
+
+    /**
+     * Opens the given binary dataset file.
+     *
+     * @param filename
+     *            the name of the file
+     * @return the dataset
+     * @throws IOException
+     *             if the file cannot be read or is not a binary dataset
+     */
+    public static DatasetMapped open(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(filename + " is not a binary dataset.");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(filename
+                        + ": unsupported binary dataset version " + version);
+            }
+            DatasetMapped dataset = new DatasetMapped();
+            dataset.inputSize = header.getInt();
+            dataset.outputSize = header.getInt();
+            long rows = header.getLong();
+            dataset.labelColumn = header.getInt();
+            dataset.columns = header.getInt();
+            if (rows > Integer.MAX_VALUE
+                    || dataset.columns < dataset.inputSize + dataset.outputSize
+                    || HEADER_BYTES + rows * dataset.columns * 8 > channel.size()) {
+                throw new IOException(filename
+                        + ": corrupt binary dataset header.");
+            }
+            dataset.rows = (int) rows;
+            // map the rows in segments of at most 2GB
+            long rowBytes = dataset.columns * 8L;
+            dataset.rowsPerSegment = (int) Math.max(1, Integer.MAX_VALUE
+                    / rowBytes);
+            int numSegments = (int) ((rows + dataset.rowsPerSegment - 1)
+                    / dataset.rowsPerSegment);
+            dataset.segments = new DoubleBuffer[numSegments];
+            for (int s = 0; s < numSegments; s++) {
+                long first = (long) s * dataset.rowsPerSegment;
+                long length = Math.min(dataset.rowsPerSegment, rows - first);
+                dataset.segments[s] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * rowBytes, length * rowBytes)
+                        .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            // the mapping remains valid after closing the channel
+            return dataset;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Opens the given binary dataset file and asserts, that it has the given
+     * input and output size.
+     *
+     * @param filename
+     *            the name of the file
+     * @param inputSize
+     *            the expected dimension of the input vectors
+     * @param outputSize
+     *            the expected dimension of the output vectors
+     * @return the dataset
+     * @throws IOException
+     *             if the file cannot be read, is not a binary dataset or has
+     *             different sizes
+     */
+    public static DatasetMapped open(String filename, int inputSize,
+            int outputSize) throws IOException {
+        DatasetMapped dataset = open(filename);
+        if (dataset.inputSize != inputSize || dataset.outputSize != outputSize) {
+            throw new IOException(filename + ": input/output size "
+                    + dataset.inputSize + "/" + dataset.outputSize
+                    + " differs from the configured " + inputSize + "/"
+                    + outputSize);
+        }
+        return dataset;
+    }
+
+    /**
+     * Returns <code>true</code>, if the given file starts with the magic
+     * number of the binary dataset format.
+     *
+     * @param filename
+     *            the name of the file
+     * @return <code>true</code> if the file is a binary dataset;
+     *         <code>false</code> otherwise.
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    public static boolean isBinary(String filename) throws IOException {
+        FileInputStream in = new FileInputStream(filename);
+        try {
+            byte[] magic = new byte[4];
+            if (in.read(magic) != 4) {
+                return false;
+            }
+            return ByteBuffer.wrap(magic).order(ByteOrder.LITTLE_ENDIAN)
+                    .getInt() == MAGIC;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Converts the tab-separated text file <code>source</code> into the binary
+     * file <code>target</code>. The text file is read line by line, such that
+     * files larger than the heap can be converted.
+     *
+     * @param source
+     *            the name of the text file
+     * @param target
+     *            the name of the binary file
+     * @param inputSize
+     *            the dimension of the input vectors
+     * @param outputSize
+     *            the dimension of the output vectors
+     * @return the number of converted rows
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    public static long convert(String source, String target, int inputSize,
+            int outputSize) throws IOException {
+        int columns = inputSize + outputSize + 1;
+        double[] input = new double[inputSize];
+        double[] output = new double[outputSize];
+        ByteBuffer buffer = ByteBuffer.allocate(
+                Math.max(HEADER_BYTES, WRITE_BUFFER_ROWS * columns * 8))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long rows = 0;
+        BufferedReader in = new BufferedReader(new FileReader(source));
+        RandomAccessFile out = new RandomAccessFile(target, "rw");
+        try {
+            FileChannel channel = out.getChannel();
+            channel.truncate(0);
+            // the number of rows is written after conversion
+            channel.position(HEADER_BYTES);
+            String line = in.readLine(); // header
+            while ((line = in.readLine()) != null) {
+                // missing values are zero
+                Arrays.fill(input, 0);
+                Arrays.fill(output, 0);
+                int label = DatasetArrays.parseLine(line, input, output);
+                for (int i = 0; i < inputSize; i++) {
+                    buffer.putDouble(input[i]);
+                }
+                for (int i = 0; i < outputSize; i++) {
+                    buffer.putDouble(output[i]);
+                }
+                buffer.putDouble(label);
+                rows++;
+                if (buffer.remaining() < columns * 8) {
+                    write(channel, buffer);
+                }
+            }
+            write(channel, buffer);
+            // header
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(inputSize);
+            buffer.putInt(outputSize);
+            buffer.putLong(rows);
+            buffer.putInt(inputSize + outputSize);
+            buffer.putInt(columns);
+            channel.position(0);
+            write(channel, buffer);
+        } finally {
+            in.close();
+            out.close();
+        }
+        return rows;
+    }
+
+    /**
+     * Converts a tab-separated text file into the binary format. Arguments:
+     * the text file, the binary file, the input size and the output size. If
+     * the sizes are omitted, the values of {@link XCSFConstants#Inputsize} and
+     * {@link XCSFConstants#Outputsize} from <code>xcsf.ini</code> are used.
+     *
+     * @param args
+     *            the command line arguments
+     * @throws IOException
+     *             if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2 && args.length != 4) {
+            System.out.println("Usage: java "
+                    + DatasetMapped.class.getName()
+                    + " source.txt target.bin [inputSize outputSize]");
+            return;
+        }
+        int inputSize, outputSize;
+        if (args.length == 4) {
+            inputSize = Integer.parseInt(args[2]);
+            outputSize = Integer.parseInt(args[3]);
+        } else {
+            XCSFConstants.load("xcsf.ini");
+            inputSize = XCSFConstants.Inputsize;
+            outputSize = XCSFConstants.Outputsize;
+        }
+        long time = System.currentTimeMillis();
+        long rows = convert(args[0], args[1], inputSize, outputSize);
+        System.out.println("converted " + rows + " rows in "
+                + (System.currentTimeMillis() - time) + "ms: "
+                + open(args[1]));
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getRows()
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInputSize()
+     */
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutputSize()
+     */
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInput(int)
+     */
+    public double[] getInput(int row) {
+        return this.getInput(row, new double[this.inputSize]);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutput(int)
+     */
+    public double[] getOutput(int row) {
+        return this.getOutput(row, new double[this.outputSize]);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInput(int, double[])
+     */
+    public double[] getInput(int row, double[] input) {
+        this.read(row, 0, input);
+        return input;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getOutput(int, double[])
+     */
+    public double[] getOutput(int row, double[] output) {
+        this.read(row, this.inputSize, output);
+        return output;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getLabel(int)
+     */
+    public int getLabel(int row) {
+        if (this.labelColumn < 0) {
+            return 0;
+        }
+        return (int) this.segments[row / this.rowsPerSegment]
+                .get((row % this.rowsPerSegment) * this.columns
+                        + this.labelColumn);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getInputs()
+     */
+    public double[][] getInputs() {
+        double[][] inputs = new double[this.rows][];
+        for (int row = 0; row < this.rows; row++) {
+            inputs[row] = this.getInput(row);
+        }
+        return inputs;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.Dataset#getMemoryUsage()
+     */
+    public long getMemoryUsage() {
+        // the rows are mapped, only the segment buffers are on the heap
+        return 64 + 64L * this.segments.length;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        long mappedBytes = this.rows * this.columns * 8L;
+        return "dataset{rows=" + this.rows + ", in=" + this.inputSize
+                + ", out=" + this.outputSize + ", mapped="
+                + (mappedBytes >> 10) + " KiB, memory="
+                + (this.getMemoryUsage() >> 10) + " KiB}";
+    }
+
+    /**
+     * Copies consecutive columns of the given row.
+     *
+     * @param row
+     *            the row index
+     * @param column
+     *            the first column
+     * @param dest
+     *            the array to fill
+     */
+    void read(int row, int column, double[] dest) {
+        DoubleBuffer segment = this.segments[row / this.rowsPerSegment];
+        int index = (row % this.rowsPerSegment) * this.columns + column;
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = segment.get(index + i);
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the channel and clears the buffer.
+     *
+     * @param channel
+     *            the channel to write to
+     * @param buffer
+     *            the buffer to write
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void write(FileChannel channel, ByteBuffer buffer)
+            throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
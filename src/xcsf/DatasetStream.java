@@ -0,0 +1,324 @@
+package xcsf;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Sequential access to the rows of a dataset file, which is read lazily and
+ * never held in memory as a whole. Text files (see
+ * {@link DatasetArrays#load(String, int, int)}) are read line by line, binary
+ * files (see {@link DatasetMapped}) are read through the mapping, which loads
+ * the accessed pages only. At the end of the file, the next epoch starts at
+ * the first row again.
+ * <p>
+ * For training, the rows are shuffled through a buffer of fixed size: the
+ * next instance is drawn uniformly from the buffer and its slot is refilled
+ * with the next row of the file. Thus, the memory does not depend on the size
+ * of the file. Rows, that are close in the file, are still likely to be close
+ * in time; larger buffers mix better.
+ * <p>
+ * The input and output arrays of {@link #next()} are allocated per row and may
+ * be kept by the caller. {@link #next(double[], double[])} copies the instance
+ * into given arrays without allocation, e.g. for {@link InstancePrefetcher}.
+ * The shuffle uses its own random number generator, seeded from
+ * {@link XCSFUtils.Random} on creation, such that rows can be read by another
+ * thread.
+ *
+ * @see XCSFConstants#streamBufferSize
+ * @see FileRead
+ */
+public class DatasetStream {
+
+    private String filename;
+    private int rows;
+    private int inputSize;
+    private int outputSize;
+    // file access, either reader (text) or mapped (binary) is used
+    private BufferedReader reader;
+    private DatasetMapped mapped;
+    // file row of the next row to be read
+    private int fileRow;
+    private int epoch;
+    // shuffle buffer, null for sequential access
+    private double[][] bufferInputs;
+    private double[][] bufferOutputs;
+    private int[] bufferLabels;
+    private int[] bufferRows;
+    private Random random;
+    // current instance
+    private double[] input;
+    private double[] output;
+    private int label;
+    private int row;
+
+    /**
+     * Opens the given dataset file. If <code>bufferSize</code> is positive,
+     * the rows are shuffled through a buffer of this size (limited to the
+     * number of rows). Otherwise, the rows are returned in file order.
+     *
+     * @param filename
+     *            the name of the text or binary file
+     * @param inputSize
+     *            the dimension of the input vectors
+     * @param outputSize
+     *            the dimension of the output vectors
+     * @param bufferSize
+     *            the number of rows of the shuffle buffer, 0 for file order
+     * @throws IOException
+     *             if the file cannot be read or is empty
+     */
+    public DatasetStream(String filename, int inputSize, int outputSize,
+            int bufferSize) throws IOException {
+        this.filename = filename;
+        this.inputSize = inputSize;
+        this.outputSize = outputSize;
+        if (DatasetMapped.isBinary(filename)) {
+            this.mapped = DatasetMapped.open(filename, inputSize, outputSize);
+            this.rows = this.mapped.getRows();
+        } else {
+            // one pass to count the rows, without parsing
+            BufferedReader counter = new BufferedReader(new FileReader(
+                    filename));
+            try {
+                counter.readLine(); // header
+                while (counter.readLine() != null) {
+                    this.rows++;
+                }
+            } finally {
+                counter.close();
+            }
+            this.openReader();
+        }
+        if (this.rows == 0) {
+            this.close();
+            throw new IOException(filename + " contains no rows.");
+        }
+        if (bufferSize > 0) {
+            int capacity = Math.min(bufferSize, this.rows);
+            this.bufferInputs = new double[capacity][];
+            this.bufferOutputs = new double[capacity][];
+            this.bufferLabels = new int[capacity];
+            this.bufferRows = new int[capacity];
+            for (int i = 0; i < capacity; i++) {
+                this.bufferInputs[i] = new double[inputSize];
+                this.bufferOutputs[i] = new double[outputSize];
+                this.readRow(i);
+            }
+            this.random = new Random((long) (XCSFUtils.Random.uniRand() * Long.MAX_VALUE));
+        }
+    }
+
+    /**
+     * Advances to the next instance.
+     */
+    public void next() {
+        this.next(new double[this.inputSize], new double[this.outputSize]);
+    }
+
+    /**
+     * Advances to the next instance, which is copied into the given arrays.
+     * Afterwards, {@link #getInput()} and {@link #getOutput()} return the
+     * given arrays.
+     *
+     * @param nextInput
+     *            the array for the input of the next instance
+     * @param nextOutput
+     *            the array for the output of the next instance
+     */
+    public void next(double[] nextInput, double[] nextOutput) {
+        try {
+            if (this.bufferInputs == null) {
+                Arrays.fill(nextInput, 0);
+                Arrays.fill(nextOutput, 0);
+                this.label = this.readRow(nextInput, nextOutput);
+                this.row = this.fileRow - 1;
+            } else {
+                int slot = this.random.nextInt(this.bufferInputs.length);
+                System.arraycopy(this.bufferInputs[slot], 0, nextInput, 0,
+                        this.inputSize);
+                System.arraycopy(this.bufferOutputs[slot], 0, nextOutput, 0,
+                        this.outputSize);
+                this.label = this.bufferLabels[slot];
+                this.row = this.bufferRows[slot];
+                this.readRow(slot);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + this.filename
+                    + " at row " + this.fileRow, e);
+        }
+        this.input = nextInput;
+        this.output = nextOutput;
+    }
+
+    /**
+     * Returns the input of the current instance.
+     *
+     * @return the input vector
+     */
+    public double[] getInput() {
+        return this.input;
+    }
+
+    /**
+     * Returns the output of the current instance.
+     *
+     * @return the output vector
+     */
+    public double[] getOutput() {
+        return this.output;
+    }
+
+    /**
+     * Returns the label of the current instance.
+     *
+     * @return the label
+     */
+    public int getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Returns the row of the current instance in the file.
+     *
+     * @return the row index
+     */
+    public int getRow() {
+        return this.row;
+    }
+
+    /**
+     * Returns the dimension of the input vectors.
+     *
+     * @return the input dimension
+     */
+    public int getInputSize() {
+        return this.inputSize;
+    }
+
+    /**
+     * Returns the dimension of the output vectors.
+     *
+     * @return the output dimension
+     */
+    public int getOutputSize() {
+        return this.outputSize;
+    }
+
+    /**
+     * Returns the number of rows in the file.
+     *
+     * @return the number of rows
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Returns the number of completely read passes over the file.
+     *
+     * @return the number of epochs
+     */
+    public int getEpoch() {
+        return this.epoch;
+    }
+
+    /**
+     * Closes the file. Afterwards, {@link #next()} must not be called.
+     */
+    public void close() {
+        if (this.reader != null) {
+            try {
+                this.reader.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.reader = null;
+        }
+        this.mapped = null;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        int buffer = (this.bufferInputs == null) ? 0 : this.bufferInputs.length;
+        // two array headers, two references, label and row per slot
+        long bufferBytes = buffer
+                * (8L * (this.inputSize + this.outputSize) + 48);
+        return "dataset stream{rows=" + this.rows + ", in=" + this.inputSize
+                + ", out=" + this.outputSize + ", buffer=" + buffer
+                + " rows, memory=" + (bufferBytes >> 10) + " KiB, "
+                + (this.mapped != null ? "binary" : "text") + "}";
+    }
+
+    /**
+     * Reads the next row of the file into the given buffer slot.
+     *
+     * @param slot
+     *            the buffer slot
+     * @throws IOException
+     *             if reading fails
+     */
+    private void readRow(int slot) throws IOException {
+        // missing values are zero
+        Arrays.fill(this.bufferInputs[slot], 0);
+        Arrays.fill(this.bufferOutputs[slot], 0);
+        this.bufferLabels[slot] = this.readRow(this.bufferInputs[slot],
+                this.bufferOutputs[slot]);
+        this.bufferRows[slot] = this.fileRow - 1;
+    }
+
+    /**
+     * Reads the next row of the file, the next epoch starts after the last
+     * row.
+     *
+     * @param nextInput
+     *            the array to store the input in
+     * @param nextOutput
+     *            the array to store the output in
+     * @return the label
+     * @throws IOException
+     *             if reading fails
+     */
+    private int readRow(double[] nextInput, double[] nextOutput)
+            throws IOException {
+        if (this.fileRow == this.rows) {
+            this.fileRow = 0;
+            this.epoch++;
+            if (this.reader != null) {
+                this.reader.close();
+                this.openReader();
+            }
+        }
+        int nextLabel;
+        if (this.mapped != null) {
+            this.mapped.read(this.fileRow, 0, nextInput);
+            this.mapped.read(this.fileRow, this.inputSize, nextOutput);
+            nextLabel = this.mapped.getLabel(this.fileRow);
+        } else {
+            String line = this.reader.readLine();
+            if (line == null) {
+                throw new IOException(this.filename + " was truncated.");
+            }
+            nextLabel = DatasetArrays.parseLine(line, nextInput, nextOutput);
+        }
+        this.fileRow++;
+        return nextLabel;
+    }
+
+    /**
+     * Opens the text file and skips the header line.
+     *
+     * @throws IOException
+     *             if the file cannot be read
+     */
+    private void openReader() throws IOException {
+        this.reader = new BufferedReader(new FileReader(this.filename));
+        this.reader.readLine(); // header
+    }
+}
@@ -7,6 +7,14 @@ import java.util.*;
  * Reads the training and test files and makes available training and test 
  * instances per request at each iteration. The values can be
  * loaded from a {@link Properties} file using the {@link #load(String)} method.
+ * The rows are stored in a {@link Dataset} of primitive arrays, the instance
+ * arrays refer to the stored rows without copying and must not be modified.
+ * If {@link XCSFConstants#streamBufferSize} is positive, the files are read
+ * lazily by a {@link DatasetStream} instead, which shuffles the training rows.
+ * With {@link XCSFConstants#prefetchCapacity}, the training rows are read
+ * ahead of time by an {@link InstancePrefetcher}. Streamed and decoded rows of
+ * the learning loop are read into the same arrays, which are valid until the
+ * next instance; evaluations keep several instances and get new arrays per row.
  * 
  * @author Shabnam Nazmi
  */
@@ -18,11 +26,16 @@ public class FileRead {
 	int dataSize;
 	int Dataref;
 	String filename;
-	ArrayList rawData = new ArrayList();
-	ArrayList Data_formatted = new ArrayList();
+	Dataset dataset;
+	DatasetStream stream;
+	InstancePrefetcher prefetcher;
+	// reused instance arrays of the learning loop, null for evaluations
+	double[] bufferX;
+	double[] bufferY;
 	double[] Data_X;
 	double[] Data_Y;
 	int Data_label;
+	int Data_row;
 	Random rand = new Random();
 
 	// getters
@@ -46,12 +59,22 @@ public class FileRead {
 		return Data_label;
 	}
 	
-	public ArrayList getDataset() {
-		return rawData;
+	// row index of the current instance in the data set
+	public int getInstanceRow() {
+		return Data_row;
 	}
 	
-	public ArrayList getDataFormatted() {
-		return Data_formatted;
+	// input vectors of all rows, indexed by row
+	public double[][] getInputs() {
+		if (this.dataset == null) {
+			throw new IllegalStateException("Dataset matching requires an in-memory dataset,"
+					+ " set streamBufferSize = 0 or datasetMatchingType = 0.");
+		}
+		return this.dataset.getInputs();
+	}
+	
+	public Dataset getDataset() {
+		return dataset;
 	}
 	
 	public int getDataSize() {
@@ -79,12 +102,17 @@ public class FileRead {
 		this.Data_Y = y;
 	}
 		
-	public void setDataset(ArrayList Data) {
-		this.rawData = Data;
+	public void setDataset(Dataset Data) {
+		this.closeStream();
+		this.dataset = Data;
+		this.dataSize = Data.getRows();
 	}
 	
-	public void setDataFormatted(ArrayList Data_format) {
-		this.Data_formatted = Data_format;
+	public void setStream(DatasetStream Data) {
+		this.closeStream();
+		this.dataset = null;
+		this.stream = Data;
+		this.dataSize = Data.getRows();
 	}
 	
 	public void setDataRef(int dataref) {
@@ -96,92 +124,112 @@ public class FileRead {
 	}
 	
 	
-	// Read data text file
+	// Read data file, binary files (see DatasetMapped) are mapped instead of parsed
 	public void FileRead(String Filename) throws IOException {		
-		    	
-    	try (BufferedReader br = new BufferedReader(new FileReader(Filename))) {
-    	    String line;
-    	    String[] myString;
-    	    ArrayList rawData = new ArrayList();
-    	    
-    	    line = br.readLine();
-    	    while ((line = br.readLine()) != null) {
-        	    ArrayList dataLine = new ArrayList();
-    	    	myString = line.split("\t");
-    	    	
-    	    	for(int i=0; i < myString.length; i++) {
-    	    		dataLine.add(Double.parseDouble(myString[i]));
-    	    	} 
-    	    	rawData.add(dataLine);  
-    	    this.setDataset(rawData);	
-        	this.dataSize = rawData.size();
-    	    }
-    	}
+		if (DatasetMapped.isBinary(Filename)) {
+			this.setDataset(DatasetMapped.open(Filename, this.getInputsize(), this.getOutputsize()));
+		} else {
+			this.setDataset(DatasetArrays.load(Filename, this.getInputsize(), this.getOutputsize()));
+		}
+		XCSFUtils.println(this.dataset.toString());
 	}
 	
-	// shuffle raw data
-	public void setDataFormatted() {
-		ArrayList rawData = this.getDataset();	
-		//Collections.shuffle(rawData);
-		this.setDataFormatted(rawData);
-		
+	// Open data file for lazy reading, training rows are shuffled
+	public void openStream(String Filename, boolean shuffle) throws IOException {
+		this.setStream(new DatasetStream(Filename, this.getInputsize(), this.getOutputsize(),
+				shuffle ? XCSFConstants.streamBufferSize : 0));
+		XCSFUtils.println(this.stream.toString());
+		// evaluations keep several instances at a time, which the ring does not allow
+		if (shuffle && XCSFConstants.prefetchCapacity > 0) {
+			this.prefetcher = new InstancePrefetcher(this.stream, XCSFConstants.prefetchCapacity);
+		}
 	}
 	
-	// get an input and output vector from the data set
-	public void getInstance() {
-		double [] input = new double[this.getInputsize()];
-		double [] output = new double[this.getOutputsize()];					
-		double [] sample = this.refTracker();	
-		int i = 0;
-		while(i < this.getInputsize()) {
-			input[i] = sample[i];
-			i++;
+	private void closeStream() {
+		if (this.prefetcher != null) {
+			XCSFUtils.println(this.prefetcher.toString());
+			// closes the stream, too
+			this.prefetcher.close();
+			this.prefetcher = null;
+			this.stream = null;
 		}
-		this.setInstanceX(input);
-
-		while(i < inputSize+outputSize) {
-			output[i - this.getInputsize()] = sample[i];
-			i++;
+		if (this.stream != null) {
+			this.stream.close();
+			this.stream = null;
 		}
-		this.setInstanceY(output);
-		this.setLabel((int) sample[inputSize+outputSize]);
-		
 	}
 	
-	public double[] refTracker() {
-		ArrayList data = this.getDataFormatted();
-		List<Double> temp = new ArrayList<Double>();
-		double[] sample = new double [ this.getInputsize() + this.getOutputsize() + 1 ];
-		 
-		if (this.Dataref < this.dataSize) {
-			temp = (List) data.get(this.Dataref);			
-			for (int i = 0; i < temp.size(); i++) {	
-				sample[i] = temp.get(i);
+	// get an input and output vector from the data set, rows are served in
+	// fixed order and start again after the last row
+	public void getInstance() {
+		if (this.prefetcher != null) {
+			this.prefetcher.next();
+			this.Data_row = this.prefetcher.getRow();
+			this.setInstanceX(this.prefetcher.getInput());
+			this.setInstanceY(this.prefetcher.getOutput());
+			this.setLabel(this.prefetcher.getLabel());
+			return;
+		}
+		if (this.stream != null) {
+			if (this.bufferX != null) {
+				this.stream.next(this.bufferX, this.bufferY);
+			} else {
+				this.stream.next();
 			}
-			this.setDataRef(this.Dataref + 1);
-		} 
-		else {
+			this.Data_row = this.stream.getRow();
+			this.setInstanceX(this.stream.getInput());
+			this.setInstanceY(this.stream.getOutput());
+			this.setLabel(this.stream.getLabel());
+			return;
+		}
+		if (this.Dataref >= this.dataSize) {
 			this.setDataRef(0);
-			temp = (List) data.get(this.Dataref);
-			for (int i = 0; i < temp.size(); i++) {			
-				sample[i] = temp.get(i).doubleValue();
-			}
-			this.setDataRef(this.Dataref + 1);
 		}
-		return sample;
+		this.Data_row = this.Dataref;
+		if (this.bufferX != null) {
+			// decoded rows (binary files) are written into the reused arrays
+			this.setInstanceX(this.dataset.getInput(this.Data_row, this.bufferX));
+			this.setInstanceY(this.dataset.getOutput(this.Data_row, this.bufferY));
+		} else {
+			this.setInstanceX(this.dataset.getInput(this.Data_row));
+			this.setInstanceY(this.dataset.getOutput(this.Data_row));
+		}
+		this.setLabel(this.dataset.getLabel(this.Data_row));
+		this.setDataRef(this.Dataref + 1);
 	}
 	
 	public void loadData(Boolean isTrain) {
+		this.loadData(isTrain, isTrain);
+	}
+	
+	// loads the training or test data, streamed training data is shuffled if
+	// requested; evaluations need every row once and in file order and keep
+	// several instances at a time, only the (shuffled) learning loop reuses
+	// the instance arrays
+	public void loadData(Boolean isTrain, boolean shuffle) {
 		String TrainFilename = XCSFConstants.TrainFilename;
 		String TestFilename = XCSFConstants.TestFilename;		
 		this.setInputsize(XCSFConstants.Inputsize);
     	this.setOutoutsize(XCSFConstants.Outputsize);
     	this.setDataRef(0);
+    	if (shuffle) {
+    		this.bufferX = new double[this.getInputsize()];
+    		this.bufferY = new double[this.getOutputsize()];
+    	} else {
+    		this.bufferX = null;
+    		this.bufferY = null;
+    	}
     	   	
-    	if (isTrain) {    	
+    	if (XCSFConstants.streamBufferSize > 0) {
+	    	try {
+				this.openStream(isTrain ? TrainFilename : TestFilename, shuffle);
+			} catch (IOException e) {
+				// TODO Auto-generated catch block
+				e.printStackTrace();
+			}
+    	} else if (isTrain) {    	
 	    	try {
 				this.FileRead(TrainFilename);
-				this.setDataFormatted();
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
@@ -189,16 +237,10 @@ public class FileRead {
     	}else {
 	    	try {
 				this.FileRead(TestFilename);
-				this.setDataFormatted();
 			} catch (IOException e) {
 				// TODO Auto-generated catch block
 				e.printStackTrace();
 			}
     	}    	
 	}
-}   
-
-
-
-
-
+}
@@ -208,9 +208,10 @@ public interface Function {
      * <p>
      * By starting the XCSF thread, XCSF calls the
      * {@link #nextProblemInstance()} method, which blocks until samples are
-     * available. Another thread may call
+     * available. Other threads may call
      * {@link BlockingFunction#addProblemInstance(StateDescriptor)} to make new
-     * samples available in a synchronized way.
+     * samples available. The hand-over is done by a thread-safe queue, no
+     * further synchronization is required.
      * 
      * @author Patrick Stalph
      */
@@ -229,14 +230,9 @@ public interface Function {
          * @param state
          *            the next problem instance to be learned
          */
-        public synchronized void addProblemInstance(StateDescriptor state) {
-            try {
-                this.states.put(state);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-            // nofify waiting Thread (XCSF) that a new state is available.
-            this.notify();
+        public void addProblemInstance(StateDescriptor state) {
+            // the queue is unbounded, thus offer never fails or blocks
+            this.states.offer(state);
         }
 
         // ########## Function interface #####################################
@@ -252,22 +248,16 @@ public interface Function {
          * @see Function#nextProblemInstance()
          * @see BlockingFunction#addProblemInstance(StateDescriptor)
          */
-        public synchronized StateDescriptor nextProblemInstance() {
-            // Object.wait() should be used in a loop.
-            while (states.isEmpty()) {
-                /*
-                 * XCSF has called this method. Since no StateDescriptor is
-                 * available, the Thread will wait until notified by a
-                 * addProblemInstance call from another Thread.
-                 */
+        public StateDescriptor nextProblemInstance() {
+            while (true) {
                 try {
-                    this.wait();
+                    // waits until addProblemInstance is called by another
+                    // thread
+                    return states.take();
                 } catch (InterruptedException e) {
                     e.printStackTrace();
                 }
             }
-            // now states is not empty and this thread (XCSF) is notified.
-            return states.poll();
         }
 
         /*
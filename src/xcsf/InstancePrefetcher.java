@@ -0,0 +1,309 @@
+package xcsf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reads the instances of a {@link DatasetStream} ahead of time in a loader
+ * thread, such that reading and parsing the file is done concurrently to
+ * learning. The loader thread (single producer) copies the instances into the
+ * preallocated slots of a ring buffer, from which the learning thread (single
+ * consumer) takes them without locks and without allocation.
+ * <p>
+ * The ring holds <tt>capacity</tt> instances. If it is full, the loader waits
+ * for the learner (backpressure); if it is empty, the learner waits for the
+ * loader. Waiting threads spin briefly and then park. The number of waits on
+ * both sides and the average queue depth seen by the learner are reported by
+ * {@link #toString()}: frequent learner waits indicate, that reading the data
+ * is the bottleneck.
+ * <p>
+ * The arrays returned by {@link #getInput()} and {@link #getOutput()} belong to
+ * the ring. They are valid until the next call of {@link #next()} and must not
+ * be modified. As the slots are reused, matching results must not be cached
+ * for the arrays (see {@link StateDescriptor#getSequence()}); {@link #main}
+ * checks, that prefetching does not change the learning result.
+ *
+ * @see XCSFConstants#prefetchCapacity
+ */
+public class InstancePrefetcher {
+
+    // number of Thread.yield() calls before a waiting thread parks
+    private final static int SPINS = 64;
+    private final static long PARK_NANOS = 20000;
+
+    private DatasetStream stream;
+    // ring slots, slot of sequence number s is (s & mask)
+    private double[][] inputs;
+    private double[][] outputs;
+    private int[] labels;
+    private int[] rows;
+    private int mask;
+    // next sequence to be written by the loader
+    private final AtomicLong tail = new AtomicLong();
+    // first sequence, that is still used by the learner
+    private final AtomicLong head = new AtomicLong();
+    // loader thread only: last read value of head
+    private long cachedHead;
+    // learner thread only: last read value of tail, the current sequence
+    private long cachedTail;
+    private long current = -1;
+    // metrics, each written by one thread only
+    private volatile long loaderWaits;
+    private long learnerWaits;
+    private long depthSum;
+    private long takes;
+    private volatile Throwable failure;
+    private volatile boolean running = true;
+    private Thread loader;
+
+    /**
+     * Creates the ring buffer and starts the loader thread.
+     *
+     * @param stream
+     *            the stream to read, which must not be accessed by other
+     *            threads afterwards
+     * @param capacity
+     *            the minimum number of buffered instances, rounded up to a
+     *            power of two
+     */
+    public InstancePrefetcher(DatasetStream stream, int capacity) {
+        this.stream = stream;
+        int size = 1;
+        while (size < capacity) {
+            size *= 2;
+        }
+        this.mask = size - 1;
+        this.inputs = new double[size][stream.getInputSize()];
+        this.outputs = new double[size][stream.getOutputSize()];
+        this.labels = new int[size];
+        this.rows = new int[size];
+        this.loader = new Thread(new Runnable() {
+            public void run() {
+                load();
+            }
+        }, "XCSF instance prefetcher");
+        this.loader.setDaemon(true);
+        this.loader.start();
+    }
+
+    /**
+     * Regression check: trains with the given settings without prefetching
+     * and with the capacities 1, 2 and 64, each with and without
+     * {@link XCSFConstants#spatialIndex}, from the same random seed. The
+     * final populations must be equal; small capacities reuse the ring slots
+     * after few instances. Exits with status 1 otherwise.
+     *
+     * @param args
+     *            the settings file (default <tt>xcsf.ini</tt>) and optionally
+     *            the number of learning iterations
+     * @throws IOException
+     *             if the population cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        XCSFConstants.load(args.length > 0 ? args[0] : "xcsf.ini");
+        if (args.length > 1) {
+            XCSFConstants.maxLearningIterations = Integer.parseInt(args[1]);
+        }
+        if (XCSFConstants.streamBufferSize <= 0) {
+            // prefetching requires a streamed training file
+            XCSFConstants.streamBufferSize = 50;
+        }
+        int[] capacities = { 0, 1, 2, 64 };
+        boolean[] spatialIndex = { false, true };
+        File file = File.createTempFile("prefetch", ".txt");
+        file.deleteOnExit();
+        byte[] expected = null;
+        boolean same = true;
+        for (int s = 0; s < spatialIndex.length; s++) {
+            for (int c = 0; c < capacities.length; c++) {
+                XCSFConstants.spatialIndex = spatialIndex[s];
+                XCSFConstants.prefetchCapacity = capacities[c];
+                byte[] written = XCSF.trainPopulation(file);
+                if (expected == null) {
+                    expected = written;
+                }
+                boolean equal = Arrays.equals(expected, written);
+                same &= equal;
+                System.out.println("prefetchCapacity=" + capacities[c]
+                        + ", spatialIndex=" + spatialIndex[s] + ": "
+                        + (equal ? "same population" : "DIFFERENT population"));
+            }
+        }
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Advances to the next instance, waits for the loader if necessary.
+     *
+     * @throws IllegalStateException
+     *             if the loader thread failed to read the stream
+     */
+    public void next() {
+        long sequence = this.current + 1;
+        // release the slot of the previous instance
+        this.head.lazySet(sequence);
+        if (sequence >= this.cachedTail) {
+            this.cachedTail = this.tail.get();
+            if (sequence >= this.cachedTail) {
+                // buffer empty
+                this.learnerWaits++;
+                for (int spins = 0; sequence >= this.cachedTail; spins++) {
+                    if (this.failure != null) {
+                        throw new IllegalStateException("Prefetching failed.",
+                                this.failure);
+                    }
+                    idle(spins);
+                    this.cachedTail = this.tail.get();
+                }
+            }
+        }
+        this.depthSum += this.cachedTail - sequence;
+        this.takes++;
+        this.current = sequence;
+    }
+
+    /**
+     * Returns the input of the current instance.
+     *
+     * @return the input vector
+     */
+    public double[] getInput() {
+        return this.inputs[(int) this.current & this.mask];
+    }
+
+    /**
+     * Returns the output of the current instance.
+     *
+     * @return the output vector
+     */
+    public double[] getOutput() {
+        return this.outputs[(int) this.current & this.mask];
+    }
+
+    /**
+     * Returns the label of the current instance.
+     *
+     * @return the label
+     */
+    public int getLabel() {
+        return this.labels[(int) this.current & this.mask];
+    }
+
+    /**
+     * Returns the row of the current instance in the file.
+     *
+     * @return the row index
+     */
+    public int getRow() {
+        return this.rows[(int) this.current & this.mask];
+    }
+
+    /**
+     * Returns the average number of buffered instances, when the learner
+     * takes the next instance.
+     *
+     * @return the average queue depth
+     */
+    public double getAverageDepth() {
+        return this.takes == 0 ? 0 : (double) this.depthSum / this.takes;
+    }
+
+    /**
+     * Returns the number of times, the learner found the buffer empty and had
+     * to wait.
+     *
+     * @return the number of learner waits
+     */
+    public long getLearnerWaits() {
+        return this.learnerWaits;
+    }
+
+    /**
+     * Returns the number of times, the loader found the buffer full and had
+     * to wait.
+     *
+     * @return the number of loader waits
+     */
+    public long getLoaderWaits() {
+        return this.loaderWaits;
+    }
+
+    /**
+     * Stops the loader thread and closes the stream.
+     */
+    public void close() {
+        this.running = false;
+        LockSupport.unpark(this.loader);
+        try {
+            this.loader.join();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        this.stream.close();
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "prefetch{capacity=" + (this.mask + 1) + ", instances="
+                + this.takes + ", avg. depth="
+                + String.format("%.1f", this.getAverageDepth())
+                + ", learner waits=" + this.learnerWaits + ", loader waits="
+                + this.loaderWaits + "}";
+    }
+
+    /**
+     * Loop of the loader thread: fills the ring until closed.
+     */
+    private void load() {
+        long sequence = this.tail.get();
+        try {
+            while (this.running) {
+                if (sequence - this.cachedHead > this.mask) {
+                    this.cachedHead = this.head.get();
+                    if (sequence - this.cachedHead > this.mask) {
+                        // buffer full
+                        this.loaderWaits++;
+                        for (int spins = 0; sequence - this.cachedHead > this.mask; spins++) {
+                            if (!this.running) {
+                                return;
+                            }
+                            idle(spins);
+                            this.cachedHead = this.head.get();
+                        }
+                    }
+                }
+                int slot = (int) sequence & this.mask;
+                this.stream.next(this.inputs[slot], this.outputs[slot]);
+                this.labels[slot] = this.stream.getLabel();
+                this.rows[slot] = this.stream.getRow();
+                // publish the slot
+                this.tail.lazySet(++sequence);
+            }
+        } catch (Throwable t) {
+            this.failure = t;
+        }
+    }
+
+    /**
+     * Waits shortly: yields for the first spins, parks afterwards.
+     *
+     * @param spins
+     *            the number of unsuccessful checks so far
+     */
+    private static void idle(int spins) {
+        if (spins < SPINS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package xcsf;
 
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
 
 import xcsf.XCSFUtils.Random;
 import xcsf.classifier.Classifier;
+import xcsf.classifier.ConditionRotatingEllipsoid;
 
 /**
  * The MatchSet class extends <code>ClassifierSet</code> and encapsulates
@@ -13,22 +20,36 @@ import xcsf.classifier.Classifier;
  * parallelized matching procedure is available in order to exploit multi-core
  * architectures.
  * <p>
- * IMPORTANT: Experiments are NOT reproducible when using parallel matching! The
- * order of classifiers in the match-set is not deterministic (and match-sets are
- * not sorted after matching), thus following operations that depend on the
- * ordering (e.g. GA selection) are not deterministic as well, although random
- * numbers are generated in a deterministic way (fixed seed).
+ * IMPORTANT: By default, experiments are NOT reproducible when using parallel
+ * matching! The order of classifiers in the match-set is not deterministic (and
+ * match-sets are not sorted after matching), thus following operations that
+ * depend on the ordering (e.g. GA selection) are not deterministic as well,
+ * although random numbers are generated in a deterministic way (fixed seed).
  * <p>
- * If 100% reproducible results are required (e.g. for debugging purposes),
- * there are two possibilities: Turn off parallel matching by setting the
- * threadingThreshold to <tt>Integer.MAX_VALUE</tt> or implement a sorted
- * match-set.
+ * If 100% reproducible results are required (e.g. for debugging purposes or
+ * audits), there are two possibilities: Turn off parallel matching by setting
+ * the threadingThreshold to <tt>Integer.MAX_VALUE</tt> or turn on
+ * {@link XCSFConstants#deterministicMatching}. The latter assigns a fixed
+ * population range to every matching task and concatenates the results in
+ * range order, which yields exactly the order of serial matching.
  * 
  * @author Patrick O. Stalph, Martin V. Butz, Shabnam Nazmi
  */
 public class MatchSet extends ClassifierSet {
 
-    private int adaptationAccuracy;
+    // temporary arrays for block and closest classifier matching to avoid
+    // mem alloc., one workspace per thread
+    private final static ThreadLocal<MatchWorkspace> WORKSPACE = new ThreadLocal<MatchWorkspace>() {
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        protected MatchWorkspace initialValue() {
+            return new MatchWorkspace();
+        }
+    };
 
     // flag that indicates closest classifier matching
     private boolean numClosestMatching;
@@ -38,22 +59,50 @@ public class MatchSet extends ClassifierSet {
     protected Classifier[] popElements;
     // the population size
     protected int popSize;
+    // packed conditions of the population, null if disabled
+    private ConditionStore conditionStore;
 
     // serial single-core matching for population sizes below this threshold
     private int threadingThreshold;
-    // adapt the threshold online depending on matching time estimates
-    private boolean adaptiveThreading = true;
-    // measured computational time for matching in milliseconds
-    private long serialMatchingTime = 0, parallelMatchingTime = 0;
-    // population size, where last adaptation check was done
-    private int lastCheckSize = 0;
-
-    // the farmer and n-1 workers. Not initialized for serial matching.
-    private WorkerThread[] workers;
-    // frequency for matching threads, equals n
-    protected int frequency;
-    // synchronization via initial and final barrier
-    protected CyclicBarrier barrierStart, barrierEnd;
+    // chooses serial or parallel matching online, null for a fixed threshold
+    private ThreadingController controller;
+
+    // minimum number of classifiers matched by one task
+    private final static int MIN_CHUNK_SIZE = 64;
+    // number of chunks per thread, more chunks allow for better balancing
+    private final static int CHUNKS_PER_THREAD = 8;
+    // minimum number of classifiers updated by one task
+    private final static int MIN_UPDATE_CHUNK_SIZE = 4;
+
+    // the matching threads. Not initialized for serial matching.
+    private ForkJoinPool pool;
+    // reproduce the serial order of matching classifiers
+    private boolean deterministic;
+    // deterministic mode: hits of the range starting at index i are stored in
+    // rangeHits[i..i+rangeCounts[i]), the range ends at rangeEnds[i]
+    private Classifier[] rangeHits;
+    private int[] rangeCounts, rangeEnds;
+    // number of classifiers matched or updated by one task, set for each
+    // matching and parallel update
+    private int chunkSize;
+    // hit buffers of all threads that participated in matching so far
+    private final List<HitBuffer> hitBuffers = new ArrayList<HitBuffer>();
+    // the hit buffer of the current thread, registered on first use
+    private final ThreadLocal<HitBuffer> localHits = new ThreadLocal<HitBuffer>() {
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        protected HitBuffer initialValue() {
+            HitBuffer buffer = new HitBuffer();
+            synchronized (hitBuffers) {
+                hitBuffers.add(buffer);
+            }
+            return buffer;
+        }
+    };
 
 	private double[] intersectPrediction;
 
@@ -61,16 +110,31 @@ public class MatchSet extends ClassifierSet {
 
 	private double[] unionPrediction;
 
+    // predictions (member i at offset i * n) and fitness values of all
+    // members, computed only once after the members or their predictions
+    // changed. Sized for the capacity of this set on first use, such that
+    // growing match-sets do not allocate during learning.
+    private double[] memberPredictions = new double[0];
+    // the arrays returned by Classifier.predict, clamped by the fusion
+    private double[][] memberPredictionArrays = new double[0][];
+    private double[] memberFitness = new double[0];
+    // fitness-weighted sum of the member predictions and the fitness range
+    private double[] weightedSum;
+    // result of getWeightedPrediction, array to avoid mem-alloc
+    private double[] weightedPrediction;
+    private double fitnessSum, minFitness, maxFitness;
+    // indicates, that the buffers above correspond to the current members
+    private boolean predictionsValid;
+
     /**
-     * Default constructor creates the match-set and initializes
-     * <code>WorkerThread</code> objects, if desired and if more than one
-     * processor is available.
+     * Default constructor creates the match-set and initializes a
+     * <code>ForkJoinPool</code>, if desired and if more than one processor is
+     * available.
      * <p>
-     * The constructor starts <tt>n-1</tt> <code>WorkerThread</code> (where
-     * <tt>n</tt> is the number of available processors), when using parallel
-     * matching. These threads have to be destroyed properly by calling
-     * {@link MatchSet#shutDownThreads()}, when the match-set is no longer used.
-     * Otherwise these threads lay dormant until the java program terminates.
+     * The pool uses <tt>n</tt> threads (where <tt>n</tt> is the number of
+     * available processors), when using parallel matching. The pool should be
+     * shut down by calling {@link MatchSet#shutDownThreads()}, when the
+     * match-set is no longer used.
      * <p>
      * Note that experiments are NOT reproducible when using parallel matching!
      * See the class description for details.
@@ -87,19 +151,16 @@ public class MatchSet extends ClassifierSet {
         int n = Runtime.getRuntime().availableProcessors();
         if (multithreaded && n > 1) {
             initWorkers(n);
-            this.adaptationAccuracy = Math.max(1, XCSFConstants.maxPopSize / 25);
             if (XCSFConstants.threadingThreshold < 0) {
                 // automatic adaptation
-                this.adaptiveThreading = true;
-                this.threadingThreshold = adaptationAccuracy;
+                this.controller = new ThreadingController(n);
+                this.threadingThreshold = 0;
             } else {
                 // fixed threshold
                 this.threadingThreshold = XCSFConstants.threadingThreshold;
-                this.adaptiveThreading = false;
             }
         } else {
             this.threadingThreshold = Integer.MAX_VALUE;
-            this.adaptiveThreading = false;
         }
     }
 
@@ -117,23 +178,73 @@ public class MatchSet extends ClassifierSet {
     }
 
     /**
-     * Initializes worker threads.
+     * Initializes the pool of matching threads.
      * 
      * @param n
-     *            total number of threads (including main)
+     *            total number of matching threads
      */
     private void initWorkers(int n) {
-        // n processors, 1=farmer/main, 2..n=worker(s)
-        // two synchronization barriers for start & end of matching
-        barrierStart = new CyclicBarrier(n);
-        barrierEnd = new CyclicBarrier(n);
-        // n clusters for n threads
-        frequency = n;
-        // create n-1 worker threads
-        workers = new WorkerThread[n - 1];
-        for (int i = 1; i < n; i++) {
-            workers[i - 1] = new WorkerThread(i);
-            workers[i - 1].start(); // initially dormant.
+        pool = new ForkJoinPool(n);
+        deterministic = XCSFConstants.deterministicMatching;
+        if (deterministic) {
+            rangeHits = new Classifier[XCSFConstants.maxPopSize];
+            rangeCounts = new int[XCSFConstants.maxPopSize];
+            rangeEnds = new int[XCSFConstants.maxPopSize];
+        }
+    }
+
+    /**
+     * Regression check of {@link XCSFConstants#deterministicMatching}: trains
+     * with the given settings using serial matching and using deterministic
+     * parallel matching for every population size (threading threshold 0),
+     * each with and without {@link XCSFConstants#packedConditions}, from the
+     * same random seed. The final populations must be equal. Exits with status
+     * 1 otherwise. Parallel matching requires more than one processor, on a
+     * single core run e.g. with <tt>-XX:ActiveProcessorCount=4</tt>.
+     * 
+     * @param args
+     *            the settings file (default <tt>xcsf.ini</tt>) and optionally
+     *            the number of learning iterations
+     * @throws IOException
+     *             if the population cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        XCSFConstants.load(args.length > 0 ? args[0] : "xcsf.ini");
+        if (args.length > 1) {
+            XCSFConstants.maxLearningIterations = Integer.parseInt(args[1]);
+        }
+        // every state is matched by a pass over the population
+        XCSFConstants.spatialIndex = false;
+        XCSFConstants.datasetMatchingType = 0;
+        XCSFConstants.threadingThreshold = 0;
+        XCSFConstants.deterministicMatching = true;
+        if (Runtime.getRuntime().availableProcessors() < 2) {
+            System.out.println("Warning: only one processor, "
+                    + "matching is serial in all runs.");
+        }
+        boolean[] packedConditions = { false, true };
+        boolean[] multiThreading = { false, true };
+        File file = File.createTempFile("matching", ".txt");
+        file.deleteOnExit();
+        byte[] expected = null;
+        boolean same = true;
+        for (int p = 0; p < packedConditions.length; p++) {
+            for (int m = 0; m < multiThreading.length; m++) {
+                XCSFConstants.packedConditions = packedConditions[p];
+                XCSFConstants.multiThreading = multiThreading[m];
+                byte[] written = XCSF.trainPopulation(file);
+                if (expected == null) {
+                    expected = written;
+                }
+                boolean equal = Arrays.equals(expected, written);
+                same &= equal;
+                System.out.println("multiThreading=" + multiThreading[m]
+                        + ", packedConditions=" + packedConditions[p] + ": "
+                        + (equal ? "same population" : "DIFFERENT population"));
+            }
+        }
+        if (!same) {
+            System.exit(1);
         }
     }
 
@@ -147,11 +258,32 @@ public class MatchSet extends ClassifierSet {
         this.numClosestMatching = numClosestMatching;
     }
 
+    /**
+     * Returns the closest classifier matching (CCM) flag.
+     * 
+     * @return <code>true</code> if closest classifier matching is used
+     */
+    public boolean isNumClosestMatching() {
+        return this.numClosestMatching;
+    }
+
+    /**
+     * Returns the controller, which chooses between serial and parallel
+     * matching, including its timing estimates and decision statistics.
+     * 
+     * @return the threading controller, or <code>null</code> if matching is
+     *         serial or the threading threshold is fixed
+     */
+    ThreadingController getThreadingController() {
+        return this.controller;
+    }
+
     /**
      * Creates the match-set for the <code>currentState</code>. This method
      * chooses the appropriate way for matching (serial, parallel, closest
-     * classifier matching) depending on the current settings. Furthermore, the
-     * method handles the adaptation of the threading threshold, if applicable.
+     * classifier matching, row index, spatial index) depending on the current settings. Furthermore, the
+     * method lets the {@link ThreadingController} choose between serial and
+     * parallel matching, if the threading threshold is adapted automatically.
      * 
      * @param currentState
      *            the state to match
@@ -159,217 +291,319 @@ public class MatchSet extends ClassifierSet {
      *            the population
      */
     public void match(StateDescriptor currentState, Population population) {
-        super.clear();
+        this.clear();
         state = currentState;
         popSize = population.size;
         popElements = population.elements;
-        if (numClosestMatching) {
-            // case1: closest classifier matching
+        conditionStore = population.conditionStore;
+        if (numClosestMatching && population.centerIndex != null) {
+            // case1a: closest classifier matching with the center index
+            population.centerIndex.closest(state,
+                    XCSFConstants.numClosestMatch, this);
+        } else if (numClosestMatching) {
+            // case1b: closest classifier matching
             this.serialClostestClassifierMatching();
-        } else if (adaptiveThreading && popSize - lastCheckSize >= adaptationAccuracy) {
-            // case2: adaptation
-            if (serialMatchingTime == 0) { // estimate serial time
-                serialMatchingTime = -System.nanoTime();
+        } else if (population.rowIndex != null && state.getRow() >= 0) {
+            // case2: lookup of the classifiers matching the dataset row
+            population.rowIndex.match(state.getRow(), this);
+        } else if (population.spatialIndex != null) {
+            // case3: serial matching of the candidates from the spatial index
+            population.spatialIndex.match(state, this);
+        } else if (controller != null) {
+            // case4: adaptive serial or parallel matching
+            int threads = controller.nextThreads();
+            long start = System.nanoTime();
+            if (threads == 1) {
                 this.serialMatching();
-                serialMatchingTime += System.nanoTime();
-            } else { // estimate parallel time and update threshold
-                parallelMatchingTime = -System.nanoTime();
-                this.parallelMatching();
-                parallelMatchingTime += System.nanoTime();
-
-                // now both times are estimated -> compare
-                if (serialMatchingTime < parallelMatchingTime) {
-                    // threading threshold above current size
-                    this.threadingThreshold = popSize + adaptationAccuracy;
-                    lastCheckSize = popSize;
-                    serialMatchingTime = parallelMatchingTime = 0;
-                } else {
-                    // threading threshold below current size
-                    if (XCSFConstants.numberOfExperiments == 1) {
-                        XCSFUtils.println("! parallel matching, if"
-                                + " number of macro classifiers > "
-                                + threadingThreshold);
-                    }
-                    this.adaptiveThreading = false;
-                }
+            } else {
+                this.parallelMatching(threads);
             }
+            controller.record(popSize, System.nanoTime() - start);
         } else if (popSize < threadingThreshold) {
-            // case3: regular serial matching
+            // case5: regular serial matching
             this.serialMatching();
         } else {
-            // case4: parallel matching
-            this.parallelMatching();
+            // case6: parallel matching
+            this.parallelMatching(pool.getParallelism());
+        }
+    }
+
+    /**
+     * Creates the match-sets for a block of states with a single pass over the
+     * population. For every classifier, the inverse transformation of a
+     * {@link ConditionRotatingEllipsoid} is applied to all inputs of the block
+     * at once (a small matrix-matrix product), which reuses the transformation
+     * while it is in the cache. Other conditions are matched state by state.
+     * The resulting match-sets are identical to calling
+     * {@link #match(StateDescriptor, Population)} for every state.
+     * <p>
+     * If closest classifier matching is active for the first match-set or if
+     * the population maintains a row index, all states are matched separately,
+     * because CCM ranks the whole population per state anyways and the row
+     * index needs no pass over the population.
+     * 
+     * @param states
+     *            the states to match
+     * @param matchSets
+     *            the match-sets to fill, one for each state
+     * @param count
+     *            the number of states in the block
+     * @param population
+     *            the population
+     */
+    public static void match(StateDescriptor[] states, MatchSet[] matchSets,
+            int count, Population population) {
+        if (matchSets[0].numClosestMatching
+                || (population.rowIndex != null && states[0].getRow() >= 0)) {
+            for (int b = 0; b < count; b++) {
+                matchSets[b].match(states[b], population);
+            }
+            return;
+        }
+        for (int b = 0; b < count; b++) {
+            matchSets[b].clear();
+            matchSets[b].state = states[b];
+            matchSets[b].popSize = population.size;
+            matchSets[b].popElements = population.elements;
+        }
+        MatchWorkspace workspace = initBlock(states, count);
+        double[] distances = workspace.blockDistance;
+        for (int i = 0; i < population.size; i++) {
+            Classifier cl = population.elements[i];
+            if (cl.getCondition() instanceof ConditionRotatingEllipsoid) {
+                double[][] inverseTransform = ((ConditionRotatingEllipsoid) cl
+                        .getCondition()).getInverseTransform();
+                squaredDistances(workspace, inverseTransform, count);
+                for (int b = 0; b < count; b++) {
+                    if (distances[b] < 1) {
+                        matchSets[b].add(cl);
+                    }
+                }
+            } else {
+                for (int b = 0; b < count; b++) {
+                    if (cl.doesMatch(states[b])) {
+                        matchSets[b].add(cl);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the condition inputs of the given block of states into the
+     * transposed input block of the current thread's workspace, that is
+     * <tt>blockInput[j][b] = states[b].getConditionInput()[j]</tt>.
+     * 
+     * @param states
+     *            the states of the block
+     * @param count
+     *            the number of states in the block
+     * @return the workspace of the current thread
+     */
+    private static MatchWorkspace initBlock(StateDescriptor[] states,
+            int count) {
+        MatchWorkspace workspace = WORKSPACE.get();
+        int dimension = states[0].getConditionInput().length;
+        if (workspace.blockInput == null
+                || workspace.blockInput.length != dimension
+                || workspace.blockInput[0].length < count) {
+            workspace.blockInput = new double[dimension][count];
+            workspace.blockRow = new double[count];
+            workspace.blockDistance = new double[count];
+        }
+        double[][] blockInput = workspace.blockInput;
+        for (int b = 0; b < count; b++) {
+            double[] input = states[b].getConditionInput();
+            for (int j = 0; j < dimension; j++) {
+                blockInput[j][b] = input[j];
+            }
+        }
+        return workspace;
+    }
+
+    /**
+     * Computes the squared distances of the inverse transformed inputs of the
+     * current block to the unit sphere center. The operations for one input
+     * are executed in the same order as
+     * {@link XCSFUtils.Matrix#multiplyExtended(double[][], double[], double[], int)}
+     * , thus the results equal the distances calculated by the condition.
+     * 
+     * @param workspace
+     *            the workspace holding the input block
+     * @param inverseTransform
+     *            the inverse transformation of the condition
+     * @param count
+     *            the number of states in the block
+     */
+    private static void squaredDistances(MatchWorkspace workspace,
+            double[][] inverseTransform, int count) {
+        double[][] blockInput = workspace.blockInput;
+        double[] blockRow = workspace.blockRow;
+        double[] blockDistance = workspace.blockDistance;
+        int n = blockInput.length;
+        for (int i = 0; i < n; i++) {
+            double[] m = inverseTransform[i];
+            double[] x = blockInput[0];
+            for (int b = 0; b < count; b++) {
+                blockRow[b] = m[0] * x[b];
+            }
+            for (int j = 1; j < n; j++) {
+                x = blockInput[j];
+                for (int b = 0; b < count; b++) {
+                    blockRow[b] += m[j] * x[b];
+                }
+            }
+            // translation & squared length
+            for (int b = 0; b < count; b++) {
+                blockRow[b] += m[n];
+                if (i == 0) {
+                    blockDistance[b] = blockRow[b] * blockRow[b];
+                } else {
+                    blockDistance[b] += blockRow[b] * blockRow[b];
+                }
+            }
         }
     }
 
     /**
      * PRBF method:
      * 
-     * Calculates the average fitness-weighted prediction.
+     * Calculates the average fitness-weighted prediction. The member
+     * predictions are computed only once and reused by
+     * {@link #calculateFusedPrediction()}.
      * 
      * @return The fitness-weighted prediction of all classifiers in this
-     *         match-set
+     *         match-set. The array is reused by the next call.
      * @see Classifier#predict(StateDescriptor)
      */
     public double[] getWeightedPrediction() {
-        int i = 0;
-        double[] clPrediction = elements[i].predict(state);
-        int n = clPrediction.length;
-        double clFitness = elements[i].getFitness();
-        double fitnessSum = clFitness;
-        double[] avgPrediction = new double[n];
-        for (int j = 0; j < n; j++) {
-            avgPrediction[j] = clPrediction[j] * clFitness;
-        }
-
-        for (i = 1; i < size; i++) {
-            clPrediction = elements[i].predict(this.state);  // function value prediction of the i'th element given the this.state
-            clFitness = elements[i].getFitness();
-            fitnessSum += clFitness;
-            for (int j = 0; j < n; j++) {
-                avgPrediction[j] += clPrediction[j] * clFitness;   // fitness weighted average prediction of classifiers in match set
-            }
+        evaluatePredictions();
+        int n = weightedSum.length;
+        if (this.weightedPrediction == null
+                || this.weightedPrediction.length != n) {
+            this.weightedPrediction = new double[n];
         }
-        for (i = 0; i < n; i++) {
-            avgPrediction[i] /= fitnessSum;
+        for (int i = 0; i < n; i++) {
+            this.weightedPrediction[i] = weightedSum[i] / fitnessSum;
         }
-        return avgPrediction;
+        return this.weightedPrediction;
     }
     
     /**
      * PRBF method: 
      * 
-     * Calculates the fused prediction.
+     * Calculates the fused prediction. Every member prediction is clamped to
+     * <tt>[0,1]</tt>, in place such that the classifiers keep the clamped
+     * prediction, and weighted by
+     * <tt>alpha = (fitness - minFitness) / (maxFitness - minFitness)</tt>.
+     * The intersection and the union are derived in a single sweep over the
+     * member predictions, which are computed only once (see
+     * {@link #getWeightedPrediction()}).
      * 
-     * @return The fused prediction of all classifiers in this
-     *         match-set
      * @see Classifier#predict(StateDescriptor)
      */
-
     public void calculateFusedPrediction() {
-    	int i = 0;
-        double[] clPrediction = elements[i].predict(state);
-        int n = clPrediction.length;
-        double clFitness = elements[i].getFitness();
-        double[] singlePrediction = new double[n];
-        double alpha = 0;
-
-        this.intersectPrediction = new double[n];
-        this.unionPrediction = new double[n];
-        
-        double[] matchsetFitness = new double[size];
-        for (i = 0; i < size; i++) {
-        	matchsetFitness[i] = elements[i].getFitness();
-        }
-                
-        double maxFitness = matchsetFitness[maxValue(matchsetFitness)];
-        double minFitness = minValue(matchsetFitness);
-        
-        // Initialize alpha
-    	if (maxFitness == minFitness) {
-    		alpha = 1;
-    	}
-    	else {
-        	alpha = (clFitness - minFitness)/(maxFitness - minFitness);
-    	}    
-    	
-    	// Initialize union and intersection
-    	for (int l = 0; l < clPrediction.length; l++) {
-    		if (clPrediction[l] < 0) {
-    			clPrediction[l] = 0.0;
-    		}
-    		if (clPrediction[l] > 1) {
-    			clPrediction[l] = 1.0;
-    		}
-    	}
-        for (int j = 0; j < n; j++) {            	
-        	this.intersectPrediction[j] = Math.min(clPrediction[j], alpha) + 1 - alpha;
-        }      
-        for (int j = 0; j < n; j++) {            	
-        	this.unionPrediction[j] = alpha - Math.min(1 - clPrediction[j], alpha);
-        }
-
-        // Calculate weighted intersection and fuse predictions on match set
-        for (i = 0; i < size; i++) {
-        	clPrediction = elements[i].predict(this.state);
-        	for (int l = 0; l < clPrediction.length; l++) {
-        		if (clPrediction[l] < 0) {
-        			clPrediction[l] = 0.0;
-        		}
-        		if (clPrediction[l] > 1) {
-        			clPrediction[l] = 1.0;
-        		}
-        	}
-        	clFitness = elements[i].getFitness();
-        	if (maxFitness == minFitness) {
-        		alpha = 1;
-        	}
-        	else {
-            	alpha = (clFitness - minFitness)/(maxFitness - minFitness);
-        	}
-        	
-        	double [] tempPrediction = clPrediction;
-        	for (int j = 0; j < n; j++) {
-            	if (clPrediction[j] < 0) {
-            		tempPrediction[j] = 0; 
-            	}
-            	else if(clPrediction[j] > 1) {
-            		tempPrediction[j] = 1;
-            	}
-            	singlePrediction[j] = Math.min(tempPrediction[j], alpha) + 1 - alpha; 
-        		if (singlePrediction[j] < 0) {
-        			System.out.println("wait!");
-        		}
-            }
-        	
-            for (int j = 0; j < n; j++)	{
-            	if(singlePrediction[j] < this.intersectPrediction[j]) {
-                	this.intersectPrediction[j] = singlePrediction[j];
-                }  	
-            }          
-        }
-        
-        // Calculate weighted union and fuse predictions on match set
-        for (i = 1; i < size; i++) {
-        	clPrediction = elements[i].predict(this.state);
-        	for (int l = 0; l < clPrediction.length; l++) {
-        		if (clPrediction[l] < 0) {
-        			clPrediction[l] = 0.0;
-        		}
-        		if (clPrediction[l] > 1) {
-        			clPrediction[l] = 1.0;
-        		}
-        	}
-        	clFitness = elements[i].getFitness();
-        	if (maxFitness == minFitness) {
-        		alpha = 1;
-        	}
-        	else {
-            	alpha = (clFitness - minFitness)/(maxFitness - minFitness);
-        	}
-        	double [] tempPrediction = clPrediction;
-            for (int j = 0; j < n; j++) {   
-            	if (clPrediction[j] < 0) {
-            		tempPrediction[j] = 0; 
-            	}
-            	else if(clPrediction[j] > 1) {
-            		tempPrediction[j] = 1;
-            	}
-            	singlePrediction[j] = alpha - Math.min(1 - tempPrediction[j], alpha);
-        		if (singlePrediction[j] > 1) {
-        			System.out.println("wait!");
-        		}
+        evaluatePredictions();
+        int n = weightedSum.length;
+        if (this.intersectPrediction == null
+                || this.intersectPrediction.length != n) {
+            this.intersectPrediction = new double[n];
+            this.unionPrediction = new double[n];
+        }
+        for (int i = 0; i < size; i++) {
+            double alpha;
+            if (maxFitness == minFitness) {
+                alpha = 1;
+            } else {
+                alpha = (memberFitness[i] - minFitness)
+                        / (maxFitness - minFitness);
             }
-            
+            int offset = i * n;
+            double[] stored = memberPredictionArrays[i];
             for (int j = 0; j < n; j++) {
-                if(singlePrediction[j] > this.unionPrediction[j]) {
-                	this.unionPrediction[j] = singlePrediction[j];
-                }                
+                double p = memberPredictions[offset + j];
+                if (p < 0) {
+                    p = 0.0;
+                } else if (p > 1) {
+                    p = 1.0;
+                }
+                // the classifier's prediction is clamped in place, as before
+                stored[j] = p;
+                // weighted intersection and union
+                double intersect = Math.min(p, alpha) + 1 - alpha;
+                double union = alpha - Math.min(1 - p, alpha);
+                if (i == 0 || intersect < this.intersectPrediction[j]) {
+                    this.intersectPrediction[j] = intersect;
+                }
+                if (i == 0 || union > this.unionPrediction[j]) {
+                    this.unionPrediction[j] = union;
+                }
             }
         }
-        
         this.consistencyIdx = this.intersectPrediction[maxValue(this.intersectPrediction)];
-        //this.consistencyIdx = maxValue(this.intersectPrediction);
+    }
+
+    /**
+     * Computes the prediction and fitness of every member once, together with
+     * the fitness-weighted sum of the predictions and the fitness range. The
+     * results are kept until the members change or are updated.
+     */
+    private void evaluatePredictions() {
+        if (predictionsValid) {
+            return;
+        }
+        if (memberFitness.length < elements.length) {
+            memberPredictionArrays = new double[elements.length][];
+            memberFitness = new double[elements.length];
+        }
+        for (int i = 0; i < size; i++) {
+            double[] clPrediction = elements[i].predict(this.state);
+            int n = clPrediction.length;
+            if (memberPredictions.length != n * elements.length) {
+                memberPredictions = new double[n * elements.length];
+            }
+            System.arraycopy(clPrediction, 0, memberPredictions, i * n, n);
+            memberPredictionArrays[i] = clPrediction;
+            double clFitness = elements[i].getFitness();
+            memberFitness[i] = clFitness;
+            if (i == 0) {
+                if (weightedSum == null || weightedSum.length != n) {
+                    weightedSum = new double[n];
+                }
+                for (int j = 0; j < n; j++) {
+                    weightedSum[j] = clPrediction[j] * clFitness;
+                }
+                fitnessSum = clFitness;
+                minFitness = clFitness;
+                maxFitness = Double.NEGATIVE_INFINITY;
+            } else {
+                // fitness weighted average prediction of the match set
+                for (int j = 0; j < n; j++) {
+                    weightedSum[j] += clPrediction[j] * clFitness;
+                }
+                fitnessSum += clFitness;
+                // the minimum is NaN, if any fitness is NaN
+                if (Double.isNaN(clFitness)) {
+                    minFitness = Double.NaN;
+                } else if (clFitness < minFitness) {
+                    minFitness = clFitness;
+                }
+            }
+            if (clFitness > maxFitness) {
+                maxFitness = clFitness;
+            }
+        }
+        predictionsValid = true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#clear()
+     */
+    void clear() {
+        super.clear();
+        predictionsValid = false;
     }
     
     /**
@@ -483,24 +717,45 @@ public class MatchSet extends ClassifierSet {
             }
             // and finally add the new classifier
             population.add(newCl);
+            predictionsValid = false;
         }
     }
 
     /**
      * Increases experience, updates prediction, predictionError,
      * setSizeEstimate and fitness of each classifier in this match-set.
+     * <p>
+     * For match-sets of at least
+     * {@link XCSFConstants#updateThreadingThreshold} classifiers, the first
+     * update runs in parallel on the matching threads. Since every classifier
+     * is updated independently and the sums for the second update are
+     * calculated afterwards in match-set order, the results equal the serial
+     * update.
      * 
      * @see Classifier#update1(StateDescriptor)
      * @see Classifier#update2(double, int)
      */
     void updateClassifiers() {
+        // update1: experience, prediction and predictionError
+        if (pool != null && size >= XCSFConstants.updateThreadingThreshold) {
+            chunkSize = Math.max(MIN_UPDATE_CHUNK_SIZE, size
+                    / (CHUNKS_PER_THREAD * pool.getParallelism()));
+            if (state.isSparse()) {
+                // dense predictions expand the sparse input lazily, which
+                // must not happen concurrently: expand it before forking
+                state.getPredictionInput();
+            }
+            pool.invoke(new UpdateTask(0, size));
+        } else {
+            for (int i = 0; i < size; i++) {
+                elements[i].update1(state);
+            }
+        }
+        // calculate accuracySum & numerositySum for update2
         double accuracySum = 0;
         int numerositySum = 0;
-        // update1: experience, prediction and predictionError
         for (int i = 0; i < size; i++) {
             Classifier cl = elements[i];
-            cl.update1(state);
-            // calculate accuracySum & numerositySum for update2
             accuracySum += cl.getAccuracy() * cl.getNumerosity();
             numerositySum += cl.getNumerosity();
         }
@@ -508,6 +763,7 @@ public class MatchSet extends ClassifierSet {
         for (int i = 0; i < size; i++) {
             elements[i].update2(accuracySum, numerositySum);
         }
+        predictionsValid = false;
     }
 
     /**
@@ -517,6 +773,11 @@ public class MatchSet extends ClassifierSet {
      *            the set of classifiers, that is checked for matching
      */
     private void serialMatching() {
+        if (conditionStore != null) {
+            // ---[ packed matching kernel ]---
+            conditionStore.match(state, popElements, this);
+            return;
+        }
         // ---[ standard matching ]---
         for (int i = 0; i < popSize; i++) {
             Classifier cl = popElements[i];
@@ -532,9 +793,17 @@ public class MatchSet extends ClassifierSet {
      * @author Martin V. Butz
      */
     private void serialClostestClassifierMatching() {
-        Classifier[] clSetHelp = new Classifier[popSize];
-        int[] nums = new int[popSize];
-        double[] votes = new double[popSize];
+        MatchWorkspace workspace = WORKSPACE.get();
+        if (workspace.closestSet == null
+                || workspace.closestSet.length < popSize) {
+            int capacity = Math.max(popSize, XCSFConstants.maxPopSize);
+            workspace.closestSet = new Classifier[capacity];
+            workspace.closestNums = new int[capacity];
+            workspace.closestVotes = new double[capacity];
+        }
+        Classifier[] clSetHelp = workspace.closestSet;
+        int[] nums = workspace.closestNums;
+        double[] votes = workspace.closestVotes;
         for (int i = 0; i < popSize; i++) {
             clSetHelp[i] = popElements[i];
             votes[i] = clSetHelp[i].getActivity(state);
@@ -546,66 +815,71 @@ public class MatchSet extends ClassifierSet {
         for (int i = 0; i < firstNum; i++) {
             this.add(clSetHelp[i]);
         }
+        // release references
+        Arrays.fill(clSetHelp, 0, popSize, null);
     }
 
     /**
-     * Implements the parallel matching by dividing the population into
-     * <tt>n</tt> clusters, where the calling thread works on the first cluster,
-     * while <tt>n-1</tt> worker threads work on their own clusters without
-     * synchronization. The only two synchronization points needed are at the
-     * beginning (all threads have to be ready) and at the end (all threads have
-     * finished their job).
+     * Implements the parallel matching on a <code>ForkJoinPool</code>. The
+     * population is recursively split into contiguous chunks, which are matched
+     * by the threads of the pool. Idle threads steal pending chunks from busy
+     * threads, such that the work is balanced even if matching costs differ
+     * among the chunks.
      * <p>
-     * A visual representation of the matching process is depicted below, where
-     * dots <tt>..</tt> represent an active thread state, underscores
-     * <tt>__</tt> represent sleeping state. An asterisk <tt>*</tt> is a
-     * synchronization point, e.g. a <code>CyclicBarrier</code>.
+     * Matching classifiers are not added to this set directly, which would
+     * require synchronization for every hit. Instead, every thread collects
+     * its hits in its own {@link HitBuffer}, and the buffers are merged into
+     * this set once all chunks are done. In deterministic mode, each chunk
+     * writes its hits into its own range of a shared array instead, and the
+     * ranges are concatenated in population order.
      * 
      * <pre>
      * Threads     | Time line
-     * ------------+----------------------------------
-     *  main       | ..prepare work..*..matching..*..continue
-     *  worker-1   | ________________*..matching..*__________
-     *  ...        | ________________*..matching..*__________
-     *  worker-n-1 | ________________*..matching..*__________
+     * ------------+------------------------------------------
+     *  main       | ..prepare work..*_______________*..merge..continue
+     *  worker-1   | ________________*..chunk..chunk.*__________________
+     *  ...        | ________________*..chunk..steal.*__________________
+     *  worker-n   | ________________*..chunk..chunk.*__________________
      * </pre>
      * 
-     * The clustering is simply done by assigning each thread a frequency (e.g.
-     * the number of processors) and an offset such that the main thread matches
-     * every <tt>n</tt> classifiers, while worker-i matches every <tt>n</tt>
-     * plus offset <tt>i</tt> classifiers.
+     * If fewer threads than the pool size are requested, the population is
+     * split into one chunk per thread, such that the remaining threads of the
+     * pool stay idle.
      * 
-     * @author Patrick Stalph
+     * @param threads
+     *            the number of threads to use
      */
-    private void parallelMatching() {
-        try {
-            // state1: synchronize with workers
-            barrierStart.await();
-            // state2: farmer and all workers are ready
-
-            // state2: farmer does parallel matching
-            for (int i = 0; i < popSize; i += frequency) {
-                if (popElements[i].doesMatch(state)) {
-                    add(popElements[i]);// synchronized
-                }
+    private void parallelMatching(int threads) {
+        if (threads < pool.getParallelism()) {
+            chunkSize = Math.max(MIN_CHUNK_SIZE, (popSize + threads - 1)
+                    / threads);
+        } else {
+            chunkSize = Math.max(MIN_CHUNK_SIZE, popSize
+                    / (CHUNKS_PER_THREAD * threads));
+        }
+        pool.invoke(new MatchingTask(0, popSize));
+        if (deterministic) {
+            // concatenate the ranges in population order
+            for (int from = 0; from < popSize; from = rangeEnds[from]) {
+                System.arraycopy(rangeHits, from, elements, size,
+                        rangeCounts[from]);
+                size += rangeCounts[from];
+            }
+            return;
+        }
+        // merge thread-local hits
+        synchronized (hitBuffers) {
+            for (HitBuffer buffer : hitBuffers) {
+                System.arraycopy(buffer.hits, 0, elements, size, buffer.size);
+                size += buffer.size;
+                buffer.size = 0;
             }
-
-            // state2: synchronize with workers
-            barrierEnd.await();
-            // state1: farmer and all workers are done
-
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } catch (BrokenBarrierException e) {
-            e.printStackTrace();
         }
     }
 
     /**
-     * Interrupts all running worker threads and indicates that this matchset is
-     * no longer used. Calls to this method lead to a graceful shutdown of
-     * additionally created threads. These threads would lie dormant (daemons),
-     * if not interrupted. Calls to {@link XCSF#runSingleExperiment()} include a
+     * Shuts down the pool of matching threads and indicates that this matchset
+     * is no longer used. Calls to {@link XCSF#runSingleExperiment()} include a
      * call to this method after learning is finished in order to free
      * resources.
      * <p>
@@ -615,107 +889,166 @@ public class MatchSet extends ClassifierSet {
      * @throws InterruptedException
      */
     void shutDownThreads() throws InterruptedException {
-        for (WorkerThread w : workers) {
-            w.interrupt(); // results in InterruptedException for workers
-            w.join(); // wait for the worker to exit
-            w = null;
-        }
-        this.workers = null;
-        this.barrierStart = null;
-        this.barrierEnd = null;
+        if (pool != null) {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+            this.pool = null;
+        }
         // safety: turn off parallel matching
         this.threadingThreshold = Integer.MAX_VALUE;
-        this.adaptiveThreading = false;
+        this.controller = null;
     }
 
     /**
-     * This worker class implements a thread responsible for matching one
-     * cluster of the population. Creating my own threads and synchronizing with
-     * the main thread is faster than using <code>java.util.concurrent</code>
-     * thread pools.
-     * 
-     * @author Patrick Stalph
+     * Matches a contiguous range of the population. Ranges larger than the
+     * chunk size are split into two subtasks, which may be stolen by idle
+     * threads of the pool.
      */
-    class WorkerThread extends Thread {
+    private class MatchingTask extends RecursiveAction {
 
-        private int offset;
+        private static final long serialVersionUID = 1L;
+
+        private int from, to;
 
         /**
          * Default constructor.
          * 
-         * @param offset
+         * @param from
+         *            the first population index (inclusive)
+         * @param to
+         *            the last population index (exclusive)
          */
-        public WorkerThread(int offset) {
-            super("MatchingWorker-" + offset);
-            this.offset = offset;
-            /*
-             * Allows for sloppy shutdown. If not set to daemon, the JVM does
-             * not exit until this thread dies.
-             */
-            this.setDaemon(true);
+        MatchingTask(int from, int to) {
+            this.from = from;
+            this.to = to;
         }
 
         /*
          * (non-Javadoc)
          * 
-         * @see java.lang.Thread#run()
+         * @see java.util.concurrent.RecursiveAction#compute()
          */
-        public void run() {
-            try {
-                for (;;) { // infinite daemon loop until interrupted
-
-                    // state1: synchronize with farmer
-                    barrierStart.await();
-                    // state2: farmer and all workers are ready
-
-                    // state2: worker does parallel matching
-                    for (int i = offset; i < popSize; i += frequency) {
-                        if (popElements[i].doesMatch(state)) {
-                            add(popElements[i]);// synchronized
-                        }
-                    }
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                HitBuffer buffer = localHits.get();
+                if (deterministic) {
+                    // hits of this range fit into [from, to)
+                    rangeCounts[from] = buffer.match(from, to, rangeHits, from)
+                            - from;
+                    rangeEnds[from] = to;
+                } else {
+                    buffer.size = buffer.match(from, to, buffer.hits,
+                            buffer.size);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new MatchingTask(from, mid), new MatchingTask(mid,
+                        to));
+            }
+        }
+    }
+
+    /**
+     * Applies {@link Classifier#update1(StateDescriptor)} to a contiguous
+     * range of this match-set. Ranges larger than the chunk size are split
+     * into two subtasks, which may be stolen by idle threads of the pool.
+     */
+    private class UpdateTask extends RecursiveAction {
 
-                    // state2: synchronize with farmer
-                    barrierEnd.await();
-                    // state1: farmer and all workers are done.
-                    // farmer (main) continues with updates & co,
-                    // while workers get some rest.
+        private static final long serialVersionUID = 1L;
+
+        private int from, to;
+
+        /**
+         * Default constructor.
+         * 
+         * @param from
+         *            the first match-set index (inclusive)
+         * @param to
+         *            the last match-set index (exclusive)
+         */
+        UpdateTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    elements[i].update1(state);
                 }
-            } catch (InterruptedException e) {
-                return; // shutdown
-            } catch (BrokenBarrierException e) {
-                e.printStackTrace();
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new UpdateTask(from, mid), new UpdateTask(mid, to));
             }
         }
     }
 
-    // /**
-    // * Tried to write a faster code...
-    // * <p>
-    // * Result: MyBarrier is NOT faster than <code>CyclicBarrier</code>. Thus,
-    // we
-    // * don't use it.
-    // *
-    // * @author Patrick Stalph
-    // */
-    // protected static class MyBarrier {
-    //
-    // private int parties;
-    // private int count = 0;
-    //
-    // public MyBarrier(int parties) {
-    // this.parties = parties;
-    // }
-    //
-    // public synchronized void await() throws InterruptedException,
-    // BrokenBarrierException {
-    // count++;
-    // if (count == parties) {
-    // count = 0;
-    // this.notifyAll();
-    // } else {
-    // this.wait();
-    // }
-    // }
-    // }
+    /**
+     * Collects the matching classifiers found by one thread. Each buffer is
+     * used by a single thread only, thus no synchronization is needed. In
+     * deterministic mode, only the temporary arrays of the buffer are used.
+     */
+    private class HitBuffer {
+
+        private Classifier[] hits = new Classifier[XCSFConstants.maxPopSize];
+        private int size = 0;
+        // temporary arrays for the packed matching kernel
+        private double[] distance, row;
+
+        /**
+         * Appends all matching classifiers within the given range of the
+         * population to the <code>destination</code> array.
+         * 
+         * @param from
+         *            the first population index (inclusive)
+         * @param to
+         *            the last population index (exclusive)
+         * @param destination
+         *            the array to append the matching classifiers to
+         * @param numHits
+         *            the number of classifiers already contained in
+         *            <code>destination</code>
+         * @return the new number of classifiers in <code>destination</code>
+         */
+        int match(int from, int to, Classifier[] destination, int numHits) {
+            if (conditionStore != null) {
+                if (distance == null) {
+                    distance = new double[ConditionStore.BLOCK_SIZE];
+                    row = new double[ConditionStore.BLOCK_SIZE];
+                }
+                return conditionStore.match(state, popElements, from, to,
+                        destination, numHits, distance, row);
+            }
+            for (int i = from; i < to; i++) {
+                if (popElements[i].doesMatch(state)) {
+                    destination[numHits++] = popElements[i];
+                }
+            }
+            return numHits;
+        }
+    }
+
+    /**
+     * Temporary arrays of block matching and closest classifier matching.
+     * Each thread uses its own workspace (see {@link MatchSet#WORKSPACE}),
+     * such that match-sets can be filled concurrently, e.g. by several
+     * <code>XCSF</code> instances. The arrays are allocated on first use.
+     */
+    private static class MatchWorkspace {
+
+        // transposed condition inputs of a block, row and squared distance
+        // of the inverse transformed inputs
+        private double[][] blockInput;
+        private double[] blockRow, blockDistance;
+        // candidates, numerosities and activities of CCM
+        private Classifier[] closestSet;
+        private int[] closestNums;
+        private double[] closestVotes;
+    }
 }
@@ -37,6 +37,8 @@ public class PerformanceEvaluator {
     private int[] matchSetNumerositySum;
     private int experiment;
     private double[][][] avgPerformance;
+    // rows of the current experiment, published to avgPerformance when filled
+    private double[][] performanceRows;
     private double[][] testPredictionError;
 
     /**
@@ -88,12 +90,20 @@ public class PerformanceEvaluator {
      */
     void evaluate(Population population, MatchSet matchSet, int iteration, double[] noiselessFunctionValue, double[] functionPrediction) {
         // during the exploitTrial: store error, match-set size & numerosity-sum
-        double error[] = new double[functionPrediction.length];
+        int index = (iteration - 1) % XCSFConstants.averageExploitTrials;
+        double error[] = this.predictionError[index];
+        if (error == null || error.length != functionPrediction.length) {
+            // first trial, later trials reuse the array
+            error = new double[functionPrediction.length];
+            this.predictionError[index] = error;
+        }
+        if (iteration == 1) {
+            // allocated in advance, such that evaluations do not allocate
+            this.performanceRows = new double[this.avgPerformance[experiment].length][11 + functionPrediction.length];
+        }
         for (int i = 0; i < functionPrediction.length; i++) {
             error[i] = Math.abs(noiselessFunctionValue[i] - functionPrediction[i]);
         }
-        int index = (iteration - 1) % XCSFConstants.averageExploitTrials;
-        this.predictionError[index] = error;
         this.matchSetSize[index] = matchSet.size;
         this.matchSetNumerositySum[index] = 0;
         for (int i = 0; i < matchSet.size; i++) {
@@ -103,9 +113,10 @@ public class PerformanceEvaluator {
         // if one trial is completed, evaluate the average performance.
         if (index == XCSFConstants.averageExploitTrials - 1) {
             // iteration is multiple of avgExplTrials, e.g. 500, 1000...
-            this.avgPerformance[experiment][iteration / XCSFConstants.averageExploitTrials - 1] = evaluatePerformance(population);
+            int row = iteration / XCSFConstants.averageExploitTrials - 1;
+            this.avgPerformance[experiment][row] = evaluatePerformance(population, this.performanceRows[row]);
             // print performance
-            if (XCSFConstants.numberOfExperiments == 1) {
+            if (XCSFConstants.numberOfExperiments == 1 && XCSFConstants.verbose) {
                 XCSFUtils.println(performanceToString(iteration, this.avgPerformance[experiment][iteration / XCSFConstants.averageExploitTrials - 1]));
             }
         } else if (iteration == 1 && XCSFConstants.numberOfExperiments == 1) {
@@ -268,34 +279,36 @@ public class PerformanceEvaluator {
      * 
      * @param population
      *            the population to evaluate
-     * @return a double array containing several performance values
+     * @param performance
+     *            the zero-initialized array to fill
+     * @return the given array containing several performance values
      * @see #getHeader()
      */
-    private double[] evaluatePerformance(Population population) {
+    private double[] evaluatePerformance(Population population,
+            double[] performance) {
         int outputDim = this.predictionError[0].length;
 
         // ---[ avg prediction error, matchSetSize & -numerositySum ]---
-        double[] avgPredError = new double[outputDim];
+        // 12-?) avg prediction error per dimension
         double avgMatchSetSize = 0;
         double avgMatchSetNumerositySum = 0;
         for (int expl = 0; expl < this.predictionError.length; expl++) {
             for (int dim = 0; dim < outputDim; dim++) {
-                avgPredError[dim] += this.predictionError[expl][dim];
+                performance[11 + dim] += this.predictionError[expl][dim];
             }
             avgMatchSetSize += this.matchSetSize[expl];
             avgMatchSetNumerositySum += this.matchSetNumerositySum[expl];
         }
         for (int dim = 0; dim < outputDim; dim++) {
-            avgPredError[dim] /= XCSFConstants.averageExploitTrials;
+            performance[11 + dim] /= XCSFConstants.averageExploitTrials;
         }
         avgMatchSetSize /= XCSFConstants.averageExploitTrials;
         avgMatchSetNumerositySum /= XCSFConstants.averageExploitTrials;
 
         // ---[ calculate values ]---
-        double[] performance = new double[11 + outputDim];
         // 1) avg prediction error (sum over all dim)
         for (int dim = 0; dim < outputDim; dim++) {
-            performance[0] += avgPredError[dim];
+            performance[0] += performance[11 + dim];
         }
         // 2) population size
         performance[1] = population.size;
@@ -335,11 +348,6 @@ public class PerformanceEvaluator {
         performance[8] /= popNumerositySum;
         performance[9] /= popNumerositySum;
         performance[10] /= popNumerositySum;
-
-        // 12-?) avg prediction error per dimension
-        for (int dim = 0; dim < outputDim; dim++) {
-            performance[11 + dim] = avgPredError[dim];
-        }
         return performance;
     }
 
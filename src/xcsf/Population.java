@@ -57,11 +57,158 @@ public class Population extends ClassifierSet {
         }
     };
 
+    // optional index to prune matching candidates, null if disabled
+    SpatialIndex spatialIndex;
+    // optional packed copy of the conditions for matching, null if disabled
+    ConditionStore conditionStore;
+    // optional index from dataset rows to matching classifiers, null if unused
+    RowMatchIndex rowIndex;
+    // optional index over the condition centers for CCM, null if disabled
+    CenterIndex centerIndex;
+
     /**
      * Default constructor creates an empty population.
      */
     public Population() {
         super();
+        if (XCSFConstants.spatialIndex) {
+            this.spatialIndex = new SpatialIndex();
+        }
+        if (XCSFConstants.packedConditions) {
+            this.conditionStore = new ConditionStore(elements.length);
+        }
+        if (XCSFConstants.closestMatchingIndex) {
+            this.centerIndex = new CenterIndex();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#add(xcsf.classifier.Classifier)
+     */
+    synchronized void add(Classifier classifier) {
+        super.add(classifier);
+        if (spatialIndex != null) {
+            spatialIndex.add(classifier);
+        }
+        if (conditionStore != null) {
+            conditionStore.add(classifier);
+        }
+        if (rowIndex != null) {
+            rowIndex.add(classifier);
+        }
+        if (centerIndex != null) {
+            centerIndex.add(classifier);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#remove(int)
+     */
+    void remove(int index) {
+        Classifier removed = get(index);
+        super.remove(index);
+        if (spatialIndex != null) {
+            spatialIndex.remove(removed);
+        }
+        if (rowIndex != null) {
+            rowIndex.remove(removed);
+        }
+        if (centerIndex != null) {
+            centerIndex.remove(removed);
+        }
+        if (conditionStore != null) {
+            conditionStore.remove(index);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#remove(int[])
+     */
+    void remove(int[] indices) {
+        for (int index : indices) {
+            if (spatialIndex != null) {
+                spatialIndex.remove(get(index));
+            }
+            if (rowIndex != null) {
+                rowIndex.remove(get(index));
+            }
+            if (centerIndex != null) {
+                centerIndex.remove(get(index));
+            }
+        }
+        super.remove(indices); // sorts the indices
+        if (conditionStore != null) {
+            conditionStore.remove(indices);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#clear()
+     */
+    void clear() {
+        super.clear();
+        if (spatialIndex != null) {
+            spatialIndex.clear();
+        }
+        if (conditionStore != null) {
+            conditionStore.clear();
+        }
+        if (rowIndex != null) {
+            rowIndex.clear();
+        }
+        if (centerIndex != null) {
+            centerIndex.clear();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.ClassifierSet#sort(java.util.Comparator)
+     */
+    void sort(Comparator<Classifier> comparator) {
+        super.sort(comparator);
+        if (spatialIndex != null) {
+            spatialIndex.resequence(elements, size);
+        }
+        if (conditionStore != null) {
+            conditionStore.rebuild(elements, size);
+        }
+        if (rowIndex != null) {
+            rowIndex.rebuild(elements, size);
+        }
+    }
+
+    /**
+     * Creates an index from the rows of the given dataset to the matching
+     * classifiers of this population, which is kept up to date until this
+     * method is called with <code>null</code>. States that refer to a dataset
+     * row (see {@link StateDescriptor#setRow(int)}) are then matched by a
+     * lookup of the row.
+     * 
+     * @param inputs
+     *            the condition inputs of all dataset rows, or
+     *            <code>null</code> to discard the index
+     * @return the new index, or <code>null</code>
+     */
+    RowMatchIndex indexRows(double[][] inputs) {
+        if (inputs == null) {
+            rowIndex = null;
+        } else {
+            rowIndex = new RowMatchIndex(inputs);
+            for (int i = 0; i < size; i++) {
+                rowIndex.add(elements[i]);
+            }
+        }
+        return rowIndex;
     }
 
     /**
@@ -128,7 +275,7 @@ public class Population extends ClassifierSet {
                     indices[i++] = index;
                 }
             }
-            super.remove(indices);
+            remove(indices);
         }
     }
 
@@ -143,7 +290,7 @@ public class Population extends ClassifierSet {
             return;
         }
         // sorting the population based on experience & predictionError
-        super.sort(COMPACTION_COMPARATOR);
+        sort(COMPACTION_COMPARATOR);
         // now the first element has lowest error
         // least elements are inexperienced
 
@@ -157,7 +304,7 @@ public class Population extends ClassifierSet {
                 if (clHigh.getCondition().doesMatch(reference)) {
                     // clLow subsumes clHigh
                     clLow.addNumerosity(clHigh.getNumerosity());
-                    super.remove(j);
+                    remove(j);
                     j--; // don't miss element after deletion index
                 }
             }
@@ -0,0 +1,245 @@
+package xcsf;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import xcsf.classifier.Classifier;
+
+/**
+ * Inverted index from the rows of a finite dataset to the classifiers that
+ * match them. For every row, the matching classifiers are kept in population
+ * order, thus a match-set is a simple copy of the row's list and equals the
+ * result of serial matching.
+ * <p>
+ * The index is updated incrementally by the population: adding a classifier
+ * matches its condition against all rows once, removing a classifier removes
+ * it from the rows it matched. Sorting the population rebuilds the lists
+ * without re-matching.
+ * <p>
+ * The memory requirement grows with the sum of all match-set sizes over the
+ * dataset, which is reported by {@link #getMemoryUsage()}.
+ */
+class RowMatchIndex {
+
+    // approximate memory requirements in bytes
+    private final static int REFERENCE_BYTES = 4;
+    private final static int ARRAY_HEADER_BYTES = 16;
+    private final static int ENTRY_BYTES = 64;
+    // initial capacity of a single row
+    private final static int INITIAL_ROW_CAPACITY = 8;
+
+    // the condition inputs of the dataset rows
+    private double[][] inputs;
+    // rows[r][0..rowSizes[r]) are the classifiers matching row r
+    private Classifier[][] rows;
+    private int[] rowSizes;
+
+    // registered classifiers
+    private IdentityHashMap<Classifier, Entry> entries = new IdentityHashMap<Classifier, Entry>();
+    private long nextSequence = 0;
+
+    // temporary array to avoid mem alloc.
+    private int[] tmpRows;
+
+    /**
+     * Default constructor creates an empty index for the given dataset.
+     *
+     * @param inputs
+     *            the condition inputs of all dataset rows
+     */
+    RowMatchIndex(double[][] inputs) {
+        this.inputs = inputs;
+        this.rows = new Classifier[inputs.length][];
+        this.rowSizes = new int[inputs.length];
+        this.tmpRows = new int[inputs.length];
+    }
+
+    /**
+     * Registers the given classifier at the end of the population order.
+     *
+     * @param classifier
+     *            the classifier to add
+     */
+    void add(Classifier classifier) {
+        Entry entry = new Entry(nextSequence++, matchRows(classifier));
+        entries.put(classifier, entry);
+        for (int r : entry.matchedRows) {
+            insert(r, rowSizes[r], classifier);
+        }
+    }
+
+    /**
+     * Unregisters the given classifier.
+     *
+     * @param classifier
+     *            the classifier to remove
+     */
+    void remove(Classifier classifier) {
+        Entry entry = entries.remove(classifier);
+        if (entry == null) {
+            return;
+        }
+        for (int r : entry.matchedRows) {
+            Classifier[] list = rows[r];
+            int n = rowSizes[r];
+            for (int i = n - 1; i >= 0; i--) {
+                if (list[i] == classifier) {
+                    System.arraycopy(list, i + 1, list, i, n - i - 1);
+                    list[--rowSizes[r]] = null;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-orders all rows according to the given population order. The
+     * conditions are not matched again.
+     *
+     * @param elements
+     *            the population elements
+     * @param size
+     *            the population size
+     */
+    void rebuild(Classifier[] elements, int size) {
+        Arrays.fill(rowSizes, 0);
+        for (int i = 0; i < size; i++) {
+            Entry entry = entries.get(elements[i]);
+            entry.sequence = i;
+            for (int r : entry.matchedRows) {
+                rows[r][rowSizes[r]++] = elements[i];
+            }
+        }
+        nextSequence = size;
+    }
+
+    /**
+     * Removes all classifiers from this index.
+     */
+    void clear() {
+        entries.clear();
+        for (int r = 0; r < rows.length; r++) {
+            if (rows[r] != null) {
+                Arrays.fill(rows[r], 0, rowSizes[r], null);
+            }
+        }
+        Arrays.fill(rowSizes, 0);
+        nextSequence = 0;
+    }
+
+    /**
+     * Copies the classifiers matching the given row into the
+     * <code>matchSet</code>.
+     *
+     * @param row
+     *            the dataset row
+     * @param matchSet
+     *            the (empty) matchset to fill
+     */
+    void match(int row, MatchSet matchSet) {
+        int n = rowSizes[row];
+        if (n > 0) {
+            System.arraycopy(rows[row], 0, matchSet.elements, matchSet.size, n);
+            matchSet.size += n;
+        }
+    }
+
+    /**
+     * Returns the approximate memory requirement of this index, assuming
+     * compressed object references.
+     *
+     * @return the approximate number of bytes used by this index
+     */
+    long getMemoryUsage() {
+        long bytes = (long) rows.length
+                * (REFERENCE_BYTES + ARRAY_HEADER_BYTES + 4);
+        for (Classifier[] list : rows) {
+            if (list != null) {
+                bytes += (long) list.length * REFERENCE_BYTES;
+            }
+        }
+        for (Entry entry : entries.values()) {
+            bytes += ENTRY_BYTES + 4L * entry.matchedRows.length;
+        }
+        return bytes;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        long links = 0;
+        for (int n : rowSizes) {
+            links += n;
+        }
+        return "row index{rows=" + rows.length + ", classifiers="
+                + entries.size() + ", avg. matches per row="
+                + (rows.length == 0 ? 0 : (double) links / rows.length)
+                + ", memory=" + (getMemoryUsage() / 1024) + "KB}";
+    }
+
+    /**
+     * Matches the condition of the given classifier against all rows.
+     *
+     * @param classifier
+     *            the classifier to match
+     * @return the ascending indices of the matched rows
+     */
+    private int[] matchRows(Classifier classifier) {
+        int n = 0;
+        for (int r = 0; r < inputs.length; r++) {
+            if (classifier.getCondition().doesMatch(inputs[r])) {
+                tmpRows[n++] = r;
+            }
+        }
+        return Arrays.copyOf(tmpRows, n);
+    }
+
+    /**
+     * Inserts the classifier into the list of the given row.
+     *
+     * @param row
+     *            the dataset row
+     * @param index
+     *            the position within the row
+     * @param classifier
+     *            the classifier to insert
+     */
+    private void insert(int row, int index, Classifier classifier) {
+        Classifier[] list = rows[row];
+        int n = rowSizes[row];
+        if (list == null) {
+            list = rows[row] = new Classifier[INITIAL_ROW_CAPACITY];
+        } else if (n == list.length) {
+            list = rows[row] = Arrays.copyOf(list, 2 * list.length);
+        }
+        System.arraycopy(list, index, list, index + 1, n - index);
+        list[index] = classifier;
+        rowSizes[row]++;
+    }
+
+    /**
+     * The position of a registered classifier in the population order and the
+     * dataset rows it matches.
+     */
+    private static class Entry {
+
+        private long sequence;
+        private int[] matchedRows;
+
+        /**
+         * Default constructor.
+         *
+         * @param sequence
+         *            the position in the population order
+         * @param matchedRows
+         *            the ascending indices of the matched rows
+         */
+        Entry(long sequence, int[] matchedRows) {
+            this.sequence = sequence;
+            this.matchedRows = matchedRows;
+        }
+    }
+}
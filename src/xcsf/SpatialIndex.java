@@ -0,0 +1,350 @@
+package xcsf;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+
+import xcsf.classifier.Classifier;
+import xcsf.classifier.Condition;
+
+/**
+ * Uniform grid over the input space that is used to prune matching candidates.
+ * Each classifier is registered in all grid cells that overlap with the
+ * axis-aligned bounding box of its condition (see
+ * {@link Condition#getBoundingBox(double[], double[])}). For matching, only the
+ * classifiers registered in the cell of the current input are checked exactly.
+ * <p>
+ * The grid spans at most {@link #MAX_GRID_DIMENSIONS} input dimensions (the
+ * first ones), further dimensions are not used for pruning. Inputs and boxes
+ * outside of the input space boundaries are clamped to the border cells.
+ * <p>
+ * The match-set produced by this index is identical (including the order) to
+ * the serial matching of the whole population, because every classifier
+ * carries a sequence number that reflects its position in the population.
+ */
+class SpatialIndex {
+
+    // only the first dimensions are gridded to limit the number of cells
+    private final static int MAX_GRID_DIMENSIONS = 3;
+    // the desired number of cells, that is cellsPerDimension^gridDimensions
+    private final static int NUM_CELLS = 512;
+    // safety margin for rounding errors at the boundary of a condition
+    private final static double MARGIN = 1e-9;
+    // initial capacity of a single cell
+    private final static int INITIAL_CELL_CAPACITY = 8;
+
+    /**
+     * Sorts entries by their sequence number, i.e. by population order.
+     */
+    private final static Comparator<Entry> SEQUENCE_COMPARATOR = new Comparator<Entry>() {
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.util.Comparator#compare(Object, Object)
+         */
+        public int compare(Entry e1, Entry e2) {
+            return e1.sequence < e2.sequence ? -1
+                    : (e1.sequence == e2.sequence ? 0 : 1);
+        }
+    };
+
+    // grid layout, initialized with the first classifier
+    private int gridDimensions;
+    private int cellsPerDimension;
+    private double cellWidth;
+    private Entry[][] cells;
+    private int[] cellSizes;
+
+    // registered classifiers
+    private IdentityHashMap<Classifier, Entry> entries = new IdentityHashMap<Classifier, Entry>();
+    private long nextSequence = 0;
+
+    // temporary arrays to avoid mem alloc.
+    private double[] tmpLower, tmpUpper;
+    private int[] tmpCursor;
+    private Entry[] hits = new Entry[XCSFConstants.maxPopSize];
+
+    // statistics for pruning effectiveness
+    private long queries, candidates, matches, populationSum;
+
+    /**
+     * Registers the given classifier at the end of the population order.
+     *
+     * @param classifier
+     *            the classifier to add
+     */
+    void add(Classifier classifier) {
+        Condition condition = classifier.getCondition();
+        if (cells == null) {
+            initGrid(condition.getCenter().length);
+        }
+        Entry entry = new Entry(classifier, nextSequence++);
+        condition.getBoundingBox(tmpLower, tmpUpper);
+        for (int d = 0; d < gridDimensions; d++) {
+            entry.lowCell[d] = cellIndex(tmpLower[d] - MARGIN);
+            entry.highCell[d] = cellIndex(tmpUpper[d] + MARGIN);
+        }
+        entries.put(classifier, entry);
+        // register in all overlapping cells
+        System.arraycopy(entry.lowCell, 0, tmpCursor, 0, gridDimensions);
+        do {
+            insert(linearIndex(tmpCursor), entry);
+        } while (nextCell(tmpCursor, entry));
+    }
+
+    /**
+     * Unregisters the given classifier.
+     *
+     * @param classifier
+     *            the classifier to remove
+     */
+    void remove(Classifier classifier) {
+        Entry entry = entries.remove(classifier);
+        if (entry == null) {
+            return;
+        }
+        System.arraycopy(entry.lowCell, 0, tmpCursor, 0, gridDimensions);
+        do {
+            delete(linearIndex(tmpCursor), entry);
+        } while (nextCell(tmpCursor, entry));
+    }
+
+    /**
+     * Assigns new sequence numbers according to the given population order.
+     * Must be called, whenever the population is re-ordered.
+     *
+     * @param elements
+     *            the population elements
+     * @param size
+     *            the population size
+     */
+    void resequence(Classifier[] elements, int size) {
+        for (int i = 0; i < size; i++) {
+            entries.get(elements[i]).sequence = i;
+        }
+        nextSequence = size;
+    }
+
+    /**
+     * Removes all classifiers from this index. Statistics are retained.
+     */
+    void clear() {
+        entries.clear();
+        if (cellSizes != null) {
+            Arrays.fill(cellSizes, 0);
+        }
+        nextSequence = 0;
+    }
+
+    /**
+     * Adds all classifiers that match the given state to the
+     * <code>matchSet</code>, in the same order as they appear in the
+     * population.
+     *
+     * @param state
+     *            the state to match
+     * @param matchSet
+     *            the (empty) matchset to fill
+     */
+    void match(StateDescriptor state, MatchSet matchSet) {
+        queries++;
+        populationSum += entries.size();
+        if (cells == null) {
+            return;
+        }
+        double[] input = state.getConditionInput();
+        for (int d = 0; d < gridDimensions; d++) {
+            tmpCursor[d] = cellIndex(input[d]);
+        }
+        int cell = linearIndex(tmpCursor);
+        Entry[] list = cells[cell];
+        int n = cellSizes[cell];
+        int numHits = 0;
+        for (int i = 0; i < n; i++) {
+            if (list[i].classifier.doesMatch(state)) {
+                hits[numHits++] = list[i];
+            }
+        }
+        candidates += n;
+        matches += numHits;
+        // restore population order
+        Arrays.sort(hits, 0, numHits, SEQUENCE_COMPARATOR);
+        for (int i = 0; i < numHits; i++) {
+            matchSet.add(hits[i].classifier);
+            hits[i] = null;
+        }
+    }
+
+    /**
+     * Returns the average number of exactly checked classifiers per matching
+     * classifier. A value of one indicates perfect pruning.
+     *
+     * @return the candidate/true-match ratio
+     */
+    double getCandidateRatio() {
+        return matches == 0 ? 0 : (double) candidates / matches;
+    }
+
+    /**
+     * Returns the fraction of the population that is skipped by this index,
+     * i.e. not checked exactly, averaged over all queries.
+     *
+     * @return the fraction of pruned classifiers
+     */
+    double getPruningRate() {
+        return populationSum == 0 ? 0 : 1.0 - (double) candidates
+                / populationSum;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "spatial index{queries=" + queries + ", candidates/matches="
+                + getCandidateRatio() + ", pruned=" + getPruningRate() + "}";
+    }
+
+    /**
+     * Initializes the grid for the given input dimension.
+     *
+     * @param dimension
+     *            the dimension of the condition input
+     */
+    private void initGrid(int dimension) {
+        gridDimensions = Math.min(dimension, MAX_GRID_DIMENSIONS);
+        cellsPerDimension = Math.max(1, (int) Math.round(Math.pow(NUM_CELLS,
+                1.0 / gridDimensions)));
+        cellWidth = (Condition.UPPER_BOUND - Condition.LOWER_BOUND)
+                / cellsPerDimension;
+        int numCells = 1;
+        for (int d = 0; d < gridDimensions; d++) {
+            numCells *= cellsPerDimension;
+        }
+        cells = new Entry[numCells][];
+        cellSizes = new int[numCells];
+        tmpLower = new double[dimension];
+        tmpUpper = new double[dimension];
+        tmpCursor = new int[gridDimensions];
+    }
+
+    /**
+     * Returns the (clamped) cell index of the given value.
+     *
+     * @param value
+     *            the coordinate
+     * @return the cell index in <tt>[0, cellsPerDimension-1]</tt>
+     */
+    private int cellIndex(double value) {
+        int index = (int) ((value - Condition.LOWER_BOUND) / cellWidth);
+        if (index < 0 || value < Condition.LOWER_BOUND) {
+            return 0;
+        } else if (index >= cellsPerDimension) {
+            return cellsPerDimension - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Converts the given grid coordinates into a linear cell index.
+     *
+     * @param cursor
+     *            the grid coordinates
+     * @return the linear cell index
+     */
+    private int linearIndex(int[] cursor) {
+        int index = 0;
+        for (int d = gridDimensions - 1; d >= 0; d--) {
+            index = index * cellsPerDimension + cursor[d];
+        }
+        return index;
+    }
+
+    /**
+     * Advances the cursor to the next cell within the bounds of the entry.
+     *
+     * @param cursor
+     *            the current grid coordinates
+     * @param entry
+     *            the entry defining the cell range
+     * @return <code>false</code>, if all cells were visited
+     */
+    private boolean nextCell(int[] cursor, Entry entry) {
+        for (int d = 0; d < gridDimensions; d++) {
+            if (cursor[d] < entry.highCell[d]) {
+                cursor[d]++;
+                return true;
+            }
+            cursor[d] = entry.lowCell[d];
+        }
+        return false;
+    }
+
+    /**
+     * Appends the entry to the given cell.
+     *
+     * @param cell
+     *            the linear cell index
+     * @param entry
+     *            the entry to insert
+     */
+    private void insert(int cell, Entry entry) {
+        Entry[] list = cells[cell];
+        if (list == null) {
+            list = cells[cell] = new Entry[INITIAL_CELL_CAPACITY];
+        } else if (cellSizes[cell] == list.length) {
+            list = cells[cell] = Arrays.copyOf(list, 2 * list.length);
+        }
+        list[cellSizes[cell]++] = entry;
+    }
+
+    /**
+     * Removes the entry from the given cell. The order within a cell is not
+     * preserved.
+     *
+     * @param cell
+     *            the linear cell index
+     * @param entry
+     *            the entry to delete
+     */
+    private void delete(int cell, Entry entry) {
+        Entry[] list = cells[cell];
+        int last = --cellSizes[cell];
+        for (int i = 0; i <= last; i++) {
+            if (list[i] == entry) {
+                list[i] = list[last];
+                list[last] = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * A registered classifier together with its position in the population
+     * order and the range of grid cells it overlaps.
+     */
+    private class Entry {
+
+        private Classifier classifier;
+        private long sequence;
+        private int[] lowCell;
+        private int[] highCell;
+
+        /**
+         * Default constructor.
+         *
+         * @param classifier
+         *            the registered classifier
+         * @param sequence
+         *            the position in the population order
+         */
+        Entry(Classifier classifier, long sequence) {
+            this.classifier = classifier;
+            this.sequence = sequence;
+            this.lowCell = new int[gridDimensions];
+            this.highCell = new int[gridDimensions];
+        }
+    }
+}
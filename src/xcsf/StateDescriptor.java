@@ -1,21 +1,41 @@
 package xcsf;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Handles the state description for double valued input states. Basically a
  * collection of input and output arrays of a <code>Function</code>. This class
- * also allows for separation of condition and prediction inputs.
+ * also allows for separation of condition and prediction inputs. The
+ * prediction input may be given in sparse form (indices and values of the
+ * nonzero entries), which is used by predictions implementing
+ * {@link xcsf.classifier.SparsePrediction}.
+ * <p>
+ * Each state carries a unique sequence number, which identifies the instance
+ * in the matching caches of the conditions. The input arrays may be reused by
+ * the caller for later instances (e.g. by {@link #set(double[], double[])}),
+ * but must not be modified while the state is in use.
  * 
  * @see xcsf.Function#nextProblemInstance()
  * @author Patrick O. Stalph, Martin V. Butz
  */
 public class StateDescriptor {
 
+    // source of the sequence numbers, shared by all threads
+    private final static AtomicLong SEQUENCES = new AtomicLong(
+            xcsf.classifier.Condition.NO_SEQUENCE);
+
     private boolean sameInput;
     private double[] conditionInput;
     private double[] predictionInput;
+    // sparse prediction input, null for dense states
+    private int[] predictionIndices;
+    private double[] predictionValues;
+    private int predictionDimension;
     private double[] output;
+    // index of the dataset row, -1 if unknown
+    private int row = -1;
+    private long sequence;
 
     /**
      * Default constructor, if the same input is used for condition and
@@ -46,7 +66,40 @@ public class StateDescriptor {
         this.conditionInput = conditionInput;
         this.predictionInput = predictionInput;
         this.output = output;
+        this.predictionDimension = predictionInput.length;
+        this.sameInput = false;
+        this.sequence = SEQUENCES.incrementAndGet();
+    }
+
+    /**
+     * Alternative constructor for sparse prediction inputs, e.g. wide feature
+     * vectors with few nonzero entries. The prediction input is given by the
+     * indices and values of its nonzero entries.
+     * 
+     * @param conditionInput
+     *            the input for classifier matching
+     * @param predictionDimension
+     *            the dimension of the prediction input
+     * @param predictionIndices
+     *            the distinct indices of the nonzero prediction input entries
+     * @param predictionValues
+     *            the values of the nonzero prediction input entries
+     * @param output
+     *            the output of the function for the given input
+     */
+    public StateDescriptor(double[] conditionInput, int predictionDimension,
+            int[] predictionIndices, double[] predictionValues, double[] output) {
+        if (predictionIndices.length != predictionValues.length) {
+            throw new IllegalArgumentException("Sparse input requires the "
+                    + "same number of indices and values.");
+        }
+        this.conditionInput = conditionInput;
+        this.predictionDimension = predictionDimension;
+        this.predictionIndices = predictionIndices;
+        this.predictionValues = predictionValues;
+        this.output = output;
         this.sameInput = false;
+        this.sequence = SEQUENCES.incrementAndGet();
     }
 
     /**
@@ -61,14 +114,65 @@ public class StateDescriptor {
     /**
      * Returns the prediction input, if the function specifies different
      * condition and prediction input. Otherwise the condition input is
-     * returned.
+     * returned. A sparse prediction input is expanded to a dense array on the
+     * first call. The expansion is not thread-safe, thus a sparse state that is
+     * shared between threads has to be expanded before.
      * 
      * @return the prediction input.
+     * @see MatchSet#updateClassifiers()
      */
     public double[] getPredictionInput() {
+        if (this.predictionInput == null) {
+            double[] dense = new double[this.predictionDimension];
+            for (int i = 0; i < this.predictionIndices.length; i++) {
+                dense[this.predictionIndices[i]] = this.predictionValues[i];
+            }
+            this.predictionInput = dense;
+        }
         return this.predictionInput;
     }
 
+    /**
+     * Returns the dimension of the prediction input without expanding a sparse
+     * prediction input.
+     * 
+     * @return the dimension of the prediction input
+     */
+    public int getPredictionInputDimension() {
+        return this.predictionDimension;
+    }
+
+    /**
+     * Returns <code>true</code>, if the prediction input is given in sparse
+     * form.
+     * 
+     * @return <code>true</code>, if the prediction input is sparse;
+     *         <code>false</code> otherwise.
+     */
+    public boolean isSparse() {
+        return this.predictionIndices != null;
+    }
+
+    /**
+     * Returns the indices of the nonzero prediction input entries.
+     * 
+     * @return the indices, or <code>null</code> if the prediction input is
+     *         dense
+     */
+    public int[] getPredictionIndices() {
+        return this.predictionIndices;
+    }
+
+    /**
+     * Returns the values of the nonzero prediction input entries.
+     * 
+     * @return the values, or <code>null</code> if the prediction input is
+     *         dense
+     */
+    public double[] getPredictionValues() {
+        return this.predictionValues;
+    }
+
     /**
      * Returns the function output, that is <tt>f(input)</tt>.
      * 
@@ -78,6 +182,18 @@ public class StateDescriptor {
         return this.output;
     }
 
+    /**
+     * Returns the sequence number of this instance, which is unique among all
+     * states and renewed by {@link #set(double[], double[])}. Conditions cache
+     * their matching results for this number instead of the input array.
+     * 
+     * @return the sequence number
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public long getSequence() {
+        return this.sequence;
+    }
+
     /**
      * Returns <code>true</code> if the function input is used for matching and
      * prediction. Returns <code>false</code> if there are different inputs for
@@ -90,6 +206,50 @@ public class StateDescriptor {
         return this.sameInput;
     }
 
+    /**
+     * Reuses this state for the given input and output, as if created by
+     * {@link #StateDescriptor(double[], double[])}. This avoids the allocation
+     * of a new state per learning iteration.
+     * 
+     * @param input
+     *            the input for matching and prediction
+     * @param output
+     *            the output of the function for the given <code>input</code>
+     */
+    public void set(double[] input, double[] output) {
+        this.conditionInput = input;
+        this.predictionInput = input;
+        this.predictionIndices = null;
+        this.predictionValues = null;
+        this.predictionDimension = input.length;
+        this.output = output;
+        this.sameInput = true;
+        this.row = -1;
+        this.sequence = SEQUENCES.incrementAndGet();
+    }
+
+    /**
+     * Returns the index of the dataset row this state was created from.
+     * 
+     * @return the row index, or <tt>-1</tt> if the state does not refer to a
+     *         row of a registered dataset
+     */
+    public int getRow() {
+        return this.row;
+    }
+
+    /**
+     * Sets the index of the dataset row this state was created from, which
+     * allows classifiers to match by row lookup.
+     * 
+     * @param row
+     *            the row index, or <tt>-1</tt> if unknown
+     * @see xcsf.classifier.Classifier#setDatasetInputs(double[][])
+     */
+    public void setRow(int row) {
+        this.row = row;
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -99,6 +259,12 @@ public class StateDescriptor {
         if (this.sameInput) {
             return "input=" + Arrays.toString(this.conditionInput)
                     + ", output=" + Arrays.toString(this.output);
+        } else if (this.isSparse()) {
+            return "conInput=" + Arrays.toString(this.conditionInput)
+                    + ", preInput(" + this.predictionDimension + ")="
+                    + Arrays.toString(this.predictionIndices) + ":"
+                    + Arrays.toString(this.predictionValues) + ", output="
+                    + Arrays.toString(this.output);
         } else {
             return "conInput=" + Arrays.toString(this.conditionInput)
                     + ", preInput=" + Arrays.toString(this.predictionInput)
@@ -0,0 +1,247 @@
+package xcsf;
+
+/**
+ * Online controller that decides, for every matching, whether the population
+ * is matched serially or in parallel and how many threads are used. The
+ * candidates are serial matching (one thread) and parallel matching with
+ * <tt>2, 4, 8, ...</tt> threads up to the size of the pool.
+ * <p>
+ * For every candidate, the controller maintains an exponential moving average
+ * of the matching time per classifier in nanoseconds, measured by
+ * <code>System.nanoTime()</code>. Usually, the candidate with the lowest
+ * estimate is selected. The other candidates are sampled again after
+ * {@link #EXPLORATION_INTERVAL} decisions, multiplied by their cost relative to
+ * the best candidate (at most {@link #MAX_INTERVAL_FACTOR}), which bounds the
+ * time spent on slow candidates. Thus, the estimates follow drifting costs,
+ * e.g. when the population grows during learning or shrinks during
+ * compaction. The controller switches, as soon as another candidate is cheaper
+ * by more than {@link #HYSTERESIS}.
+ * <p>
+ * A candidate is sampled for {@link #EXPLORATION_BURST} consecutive decisions.
+ * The first matching after a change of the candidate is not recorded, because
+ * its time is distorted by threads that are still spinning or waking up.
+ * Samples are limited to {@link #MAX_SAMPLE_FACTOR} times the current
+ * estimate, such that rare outliers (e.g. due to preemption or garbage
+ * collection) do not dominate the moving average. A coarse clock may report
+ * zero elapsed time, hence every sample is counted as at least one
+ * nanosecond: a zero estimate would never grow beyond the sample limit and
+ * would make the relative costs of the candidates undefined.
+ * <p>
+ * The estimates are only valid for the population size they were measured
+ * at, because the parallel overhead does not depend on the size. Since the
+ * population size changes slowly compared to the sampling rate, the moving
+ * averages keep track of the crossover point anyways.
+ */
+class ThreadingController {
+
+    /** minimum number of decisions between two samples of a candidate */
+    final static int EXPLORATION_INTERVAL = 100;
+    /** maximum stretch of the exploration interval for slow candidates */
+    final static double MAX_INTERVAL_FACTOR = 20;
+    /** number of consecutive decisions for a sampled candidate */
+    final static int EXPLORATION_BURST = 3;
+    /** maximum ratio of a single sample to the current estimate */
+    final static double MAX_SAMPLE_FACTOR = 4;
+    /** relative cost advantage required to switch to another candidate */
+    final static double HYSTERESIS = 0.05;
+    // weight of a new sample in the moving averages
+    private final static double SMOOTHING = 0.1;
+
+    // candidate thread counts, the first one is serial matching
+    private final int[] threadCounts;
+    // moving average of the nanoseconds per classifier, per candidate
+    private final double[] costs;
+    // number of samples per candidate
+    private final long[] samples;
+    // the decision count, when each candidate was sampled last
+    private final long[] lastSample;
+
+    // the candidate with the lowest estimate
+    private int best = 0;
+    // the candidate of the last and of the previous decision
+    private int selected = 0, previous = 0;
+    // remaining decisions of the current exploration burst
+    private int burst = 0;
+
+    // statistics
+    private long decisions, explorations, switches;
+
+    /**
+     * Default constructor.
+     *
+     * @param maxThreads
+     *            the maximum number of matching threads
+     */
+    ThreadingController(int maxThreads) {
+        int n = 1;
+        for (int t = 2; t < maxThreads; t *= 2) {
+            n++;
+        }
+        if (maxThreads > 1) {
+            n++;
+        }
+        threadCounts = new int[n];
+        threadCounts[0] = 1;
+        for (int i = 1; i < n - 1; i++) {
+            threadCounts[i] = 2 * threadCounts[i - 1];
+        }
+        threadCounts[n - 1] = maxThreads;
+        costs = new double[n];
+        samples = new long[n];
+        lastSample = new long[n];
+    }
+
+    /**
+     * Decides how the next matching is executed. The measured time has to be
+     * reported to {@link #record(int, long)} afterwards.
+     *
+     * @return the number of threads, <tt>1</tt> indicates serial matching
+     */
+    int nextThreads() {
+        decisions++;
+        previous = selected;
+        if (burst > 0) {
+            burst--;
+        } else {
+            selected = best;
+            for (int i = 0; i < threadCounts.length; i++) {
+                // slow candidates are sampled less often
+                double ratio = costs[best] > 0 ? costs[i] / costs[best] : 1.0;
+                double interval = EXPLORATION_INTERVAL
+                        * Math.min(MAX_INTERVAL_FACTOR, Math.max(1.0, ratio));
+                if (samples[i] == 0 || i != best
+                        && decisions - lastSample[i] >= interval) {
+                    selected = i;
+                    burst = EXPLORATION_BURST - 1;
+                    explorations++;
+                    break;
+                }
+            }
+        }
+        lastSample[selected] = decisions;
+        return threadCounts[selected];
+    }
+
+    /**
+     * Updates the estimate of the last decision.
+     *
+     * @param classifiers
+     *            the number of matched classifiers
+     * @param nanos
+     *            the elapsed time in nanoseconds
+     */
+    void record(int classifiers, long nanos) {
+        if (classifiers <= 0 || selected != previous) {
+            return;
+        }
+        // at least the resolution of System.nanoTime(), see class doc
+        double cost = (double) Math.max(nanos, 1) / classifiers;
+        if (samples[selected]++ == 0) {
+            costs[selected] = cost;
+        } else {
+            cost = Math.min(cost, MAX_SAMPLE_FACTOR * costs[selected]);
+            costs[selected] += SMOOTHING * (cost - costs[selected]);
+        }
+        int newBest = best;
+        for (int i = 0; i < threadCounts.length; i++) {
+            if (samples[i] > 0 && costs[i] < costs[newBest]
+                    && costs[i] < (1 - HYSTERESIS) * costs[best]) {
+                newBest = i;
+            }
+        }
+        if (newBest != best) {
+            best = newBest;
+            switches++;
+        }
+    }
+
+    /**
+     * Returns the number of threads currently considered fastest.
+     *
+     * @return the number of threads, <tt>1</tt> indicates serial matching
+     */
+    int getBestThreads() {
+        return threadCounts[best];
+    }
+
+    /**
+     * Returns the candidate thread counts.
+     *
+     * @return a copy of the candidate thread counts
+     */
+    int[] getThreadCounts() {
+        return threadCounts.clone();
+    }
+
+    /**
+     * Returns the current estimate for the given number of threads.
+     *
+     * @param threads
+     *            one of the candidate thread counts
+     * @return the moving average of the nanoseconds per classifier, or
+     *         <tt>NaN</tt> if no sample was taken
+     */
+    double getCostEstimate(int threads) {
+        for (int i = 0; i < threadCounts.length; i++) {
+            if (threadCounts[i] == threads) {
+                return samples[i] == 0 ? Double.NaN : costs[i];
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Returns the number of decisions made so far.
+     *
+     * @return the number of decisions
+     */
+    long getDecisionCount() {
+        return decisions;
+    }
+
+    /**
+     * Returns the number of decisions that sampled a candidate other than the
+     * best one.
+     *
+     * @return the number of exploration steps
+     */
+    long getExplorationCount() {
+        return explorations;
+    }
+
+    /**
+     * Returns how often the best candidate changed.
+     *
+     * @return the number of switches
+     */
+    long getSwitchCount() {
+        return switches;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        StringBuffer sb = new StringBuffer("threading{best=");
+        sb.append(getBestThreads());
+        sb.append(", decisions=");
+        sb.append(decisions);
+        sb.append(", explorations=");
+        sb.append(explorations);
+        sb.append(", switches=");
+        sb.append(switches);
+        sb.append(", ns/classifier=[");
+        for (int i = 0; i < threadCounts.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(threadCounts[i]);
+            sb.append(":");
+            sb.append(samples[i] == 0 ? "-" : String.format("%.1f", costs[i]));
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+}
@@ -1,17 +1,26 @@
 package xcsf;
 
 
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
 import java.text.DecimalFormat;
 import java.util.Collection;
 import java.util.Vector;
 
+import com.sun.management.ThreadMXBean;
+
 //import xcsf.classifier.FileRead;
+import xcsf.classifier.Classifier;
+import xcsf.classifier.Prediction;
 import xcsf.classifier.PredictionLinearRLS;
+import xcsf.classifier.PredictionLinearRLSCompact;
 import xcsf.classifier.PredictionQuadraticRLS;
+import xcsf.classifier.PredictionSparseRLS;
 
 /**
  * The main XCSF class coordinates the learning process and listeners. A typical
@@ -40,6 +49,9 @@ public class XCSF {
     private Function function;
     // list of registered listeners
     private Vector<XCSFListener> listeners = new Vector<XCSFListener>();
+    // number of instances matched at once during evaluation
+    private final static int BATCH_SIZE = 64;
+
     // keeps track of learning performance, including avg. error and pop. size
     private PerformanceEvaluator performanceEvaluator;
 	private xcsf.FileRead read;
@@ -142,44 +154,22 @@ public class XCSF {
         MatchSet matchSet = new MatchSet(XCSFConstants.doNumClosestMatch, XCSFConstants.multiThreading);
         EvolutionaryComp evolutionaryComponent = new EvolutionaryComp();
         this.performanceEvaluator.nextExperiment();
+        if (XCSFConstants.datasetMatchingType == 1) {
+            Classifier.setDatasetInputs(this.read.getInputs());
+        } else if (XCSFConstants.datasetMatchingType == 2) {
+            population.indexRows(this.read.getInputs());
+        }
         
+        // the state is reused in every iteration
+        StateDescriptor State = null;
         // -----[ main loop ]-----
         for (int iteration = 1; iteration <= XCSFConstants.maxLearningIterations; iteration++) {
-            // 1) get next problem instance            
-             this.read.getInstance();
-             StateDescriptor State = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
-                        
-            // 2) match & cover if necessary
-            matchSet.match(State, population);// most computational time here
-            matchSet.ensureStateCoverage(population, iteration);
-            // 3) evaluate performance
-            double[] functionPrediction = matchSet.getWeightedPrediction();                               
-          
-            double[] funcValue = read.getInstanceY();
-            
-            this.performanceEvaluator.evaluate(population, matchSet, iteration, funcValue, functionPrediction);
-            // 4) update matching classifiers
-            matchSet.updateClassifiers();
-            // 5) evolution
-            if (iteration <= XCSFConstants.maxLearningIterations-read.getDataSize()) {
-            	evolutionaryComponent.evolve(population, matchSet, State, iteration);
-            }
-
-            // inform listeners
-            if (!listeners.isEmpty()) {
-                double[][] performance = this.performanceEvaluator.getCurrentExperimentPerformance();
-                for (XCSFListener l : listeners) {
-                    l.stateChanged(iteration, population, matchSet, State, performance);
-                }
-            }
+            State = this.learn(iteration, State, population, matchSet, evolutionaryComponent);
 
             // reset rls prediction at next iteration?
-            if ((XCSFConstants.predictionType.equalsIgnoreCase(PredictionLinearRLS.class.getName()) || XCSFConstants.predictionType
-                    .equalsIgnoreCase(PredictionQuadraticRLS.class.getName())) && iteration + 1 == 
+            if (isResettableRLS() && iteration + 1 == 
                     (int) (XCSFConstants.resetRLSPredictionsAfterSteps * XCSFConstants.maxLearningIterations)) {
-                for (int i = 0; i < population.size; i++) {
-                    ((PredictionLinearRLS) population.elements[i].getPrediction()).resetGainMatrix();
-                }
+                resetGainMatrices(population);
             }
 
             // start compaction at next iteration?
@@ -195,6 +185,10 @@ public class XCSF {
                 }
             }
         } // ---[ end loop ]------
+        // evaluation states carry no row index, thus release the bitsets
+        if (XCSFConstants.datasetMatchingType == 1) {
+            Classifier.setDatasetInputs(null);
+        }
         
         
         /**
@@ -207,7 +201,7 @@ public class XCSF {
         
         System.out.println("Starting the PRBF population evaluation on training data...");
         Boolean isTrain = true;
-    	this.read.loadData(isTrain);
+    	this.read.loadData(isTrain, false);
         XCSFConstants cons = new XCSFConstants();
         cons.setAvgExploitTrials(this.read.getDataSize());
         double[] error = new double[this.read.getOutputsize()];
@@ -218,58 +212,77 @@ public class XCSF {
         writer.println("Correct\tPredicted");
         
         DecimalFormat df = new DecimalFormat("#.###");
+
+        StateDescriptor[] batchStates = new StateDescriptor[BATCH_SIZE];
+        int[] batchLabels = new int[BATCH_SIZE];
+        MatchSet[] batchSets = new MatchSet[BATCH_SIZE];
+        for (int b = 0; b < BATCH_SIZE; b++) {
+            batchSets[b] = new MatchSet(matchSet.isNumClosestMatching());
+        }
         
         int noMatchCount = 0;
-        for (int iteration = 0; iteration < this.read.getDataSize(); iteration++) {       	       	
-        	this.read.getInstance();
-            StateDescriptor State = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
-            matchSet.match(State, population);
-
-            if (matchSet.size == 0) {
-            	//System.out.println("no match!");
-            	noMatchCount ++;
-            	continue;            	
-            }else {
-            	double[] functionPrediction = matchSet.getWeightedPrediction();
+        for (int first = 0; first < this.read.getDataSize(); first += BATCH_SIZE) {
+            // match a block of instances with one pass over the population
+            int count = Math.min(BATCH_SIZE, this.read.getDataSize() - first);
+            for (int b = 0; b < count; b++) {
+                this.read.getInstance();
+                batchStates[b] = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
+                batchLabels[b] = this.read.getInstanceLabel();
+                if (population.rowIndex != null) {
+                    batchStates[b].setRow(this.read.getInstanceRow());
+                }
+            }
+            MatchSet.match(batchStates, batchSets, count, population);
+
+            for (int b = 0; b < count; b++) {
+                MatchSet batchSet = batchSets[b];
+
+                if (batchSet.size == 0) {
+                	//System.out.println("no match!");
+                	noMatchCount ++;
+                	continue;            	
+                }else {
+                	double[] functionPrediction = batchSet.getWeightedPrediction();
             	
-            	for (int i = 0; i < functionPrediction.length; i++) {
-            		if (functionPrediction[i] < 0) {
-            			functionPrediction[i] = 0.0;
-            		}
-            		if (functionPrediction[i] > 1) {
-            			functionPrediction[i] = 1.0;
-            		}
-            	}
+                	for (int i = 0; i < functionPrediction.length; i++) {
+                		if (functionPrediction[i] < 0) {
+                			functionPrediction[i] = 0.0;
+                		}
+                		if (functionPrediction[i] > 1) {
+                			functionPrediction[i] = 1.0;
+                		}
+                	}
                 
-                matchSet.calculateFusedPrediction();
-                double[] intersectPrediction = matchSet.getIntersectPrediction();
-                double[] unionPrediction = matchSet.getUnionPrediction();
-                double consistencyIdx = matchSet.getConsistencyIdx();
-                double[] fusedPrediction;
+                    batchSet.calculateFusedPrediction();
+                    double[] intersectPrediction = batchSet.getIntersectPrediction();
+                    double[] unionPrediction = batchSet.getUnionPrediction();
+                    double consistencyIdx = batchSet.getConsistencyIdx();
+                    double[] fusedPrediction;
                 
-                if (consistencyIdx < 0.1) {
-                	System.out.println("Inconsistent sources...switches to union combination.");
-                	fusedPrediction = unionPrediction;
-                }
-                else {
-                	fusedPrediction = intersectPrediction;
-                }
-                crispDecision = matchSet.maxValue(fusedPrediction);
-                if (crispDecision == this.read.getInstanceLabel()) {
-                	correcPrediction ++;
-                }
-                writer.print(Integer.toString(this.read.getInstanceLabel()));
-                writer.print("\t");
-                writer.println(Integer.toString(crispDecision));
+                    if (consistencyIdx < 0.1) {
+                    	System.out.println("Inconsistent sources...switches to union combination.");
+                    	fusedPrediction = unionPrediction;
+                    }
+                    else {
+                    	fusedPrediction = intersectPrediction;
+                    }
+                    crispDecision = batchSet.maxValue(fusedPrediction);
+                    if (crispDecision == batchLabels[b]) {
+                    	correcPrediction ++;
+                    }
+                    writer.print(Integer.toString(batchLabels[b]));
+                    writer.print("\t");
+                    writer.println(Integer.toString(crispDecision));
 
 
-                double[] funcValue = read.getInstanceY();
+                    double[] funcValue = batchStates[b].getOutput();
                             
-                for (int it = 0;it < this.read.getOutputsize(); it++) {
-                	error[it] += Math.abs(functionPrediction[it] - funcValue[it]);
-                	errorPi[it] += Math.abs(fusedPrediction[it] - funcValue[it]);
-                }
-            }           
+                    for (int it = 0;it < this.read.getOutputsize(); it++) {
+                    	error[it] += Math.abs(functionPrediction[it] - funcValue[it]);
+                    	errorPi[it] += Math.abs(fusedPrediction[it] - funcValue[it]);
+                    }
+                }           
+            }
         }
         
         double aveError = 0;
@@ -291,6 +304,12 @@ public class XCSF {
         System.out.println(noMatchCount);
         
         writer.close();
+
+        if (population.rowIndex != null) {
+            XCSFUtils.println(population.rowIndex.toString());
+            // the test data consists of different rows
+            population.indexRows(null);
+        }
         
         /**
          * PRBF method:
@@ -313,62 +332,71 @@ public class XCSF {
         String formatted;
         
         noMatchCount = 0;
-        for (int iteration = 0; iteration < this.read.getDataSize(); iteration++) {       	       	
-        	this.read.getInstance();
-            StateDescriptor State = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
-            matchSet.match(State, population);
-
-            if (matchSet.size == 0) {
-            	//System.out.println("no match!");
-            	noMatchCount ++;
-            	continue;            	
-            }else {
-            	double[] functionPrediction = matchSet.getWeightedPrediction();
+        for (int first = 0; first < this.read.getDataSize(); first += BATCH_SIZE) {
+            // match a block of instances with one pass over the population
+            int count = Math.min(BATCH_SIZE, this.read.getDataSize() - first);
+            for (int b = 0; b < count; b++) {
+                this.read.getInstance();
+                batchStates[b] = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
+                batchLabels[b] = this.read.getInstanceLabel();
+            }
+            MatchSet.match(batchStates, batchSets, count, population);
+
+            for (int b = 0; b < count; b++) {
+                MatchSet batchSet = batchSets[b];
+
+                if (batchSet.size == 0) {
+                	//System.out.println("no match!");
+                	noMatchCount ++;
+                	continue;            	
+                }else {
+                	double[] functionPrediction = batchSet.getWeightedPrediction();
             	
-            	for (int i = 0; i < functionPrediction.length; i++) {
-            		if (functionPrediction[i] < 0) {
-            			functionPrediction[i] = 0.0;
-            		}
-            		if (functionPrediction[i] > 1) {
-            			functionPrediction[i] = 1.0;
-            		}
-            	}
+                	for (int i = 0; i < functionPrediction.length; i++) {
+                		if (functionPrediction[i] < 0) {
+                			functionPrediction[i] = 0.0;
+                		}
+                		if (functionPrediction[i] > 1) {
+                			functionPrediction[i] = 1.0;
+                		}
+                	}
                 
-                matchSet.calculateFusedPrediction();
-                double[] intersectPrediction = matchSet.getIntersectPrediction();
-                double[] unionPrediction = matchSet.getUnionPrediction();
-                double consistencyIdx = matchSet.getConsistencyIdx();
-                double[] fusedPrediction;
+                    batchSet.calculateFusedPrediction();
+                    double[] intersectPrediction = batchSet.getIntersectPrediction();
+                    double[] unionPrediction = batchSet.getUnionPrediction();
+                    double consistencyIdx = batchSet.getConsistencyIdx();
+                    double[] fusedPrediction;
                 
-                if (consistencyIdx < 0.1) {
-                	System.out.println("Inconsistent sources...switches to union combination.");
-                	fusedPrediction = unionPrediction;
-                }
-                else {
-                	fusedPrediction = intersectPrediction;
-                }
-                crispDecision = matchSet.maxValue(fusedPrediction);
-                if (crispDecision == this.read.getInstanceLabel()) {
-                	correcPrediction ++;
-                }
-                writer2.print(Integer.toString(this.read.getInstanceLabel()));
-                writer2.print("\t");
-                writer2.print(Integer.toString(crispDecision));
-                writer2.print("\t[");
-                formatted = df.format(fusedPrediction[0]);
-                writer2.print(formatted);
-                writer2.print(", ");
-                formatted = df.format(fusedPrediction[1]);
-                writer2.print(formatted);
-                writer2.println("]");
-
-                double[] funcValue = read.getInstanceY();
+                    if (consistencyIdx < 0.1) {
+                    	System.out.println("Inconsistent sources...switches to union combination.");
+                    	fusedPrediction = unionPrediction;
+                    }
+                    else {
+                    	fusedPrediction = intersectPrediction;
+                    }
+                    crispDecision = batchSet.maxValue(fusedPrediction);
+                    if (crispDecision == batchLabels[b]) {
+                    	correcPrediction ++;
+                    }
+                    writer2.print(Integer.toString(batchLabels[b]));
+                    writer2.print("\t");
+                    writer2.print(Integer.toString(crispDecision));
+                    writer2.print("\t[");
+                    formatted = df.format(fusedPrediction[0]);
+                    writer2.print(formatted);
+                    writer2.print(", ");
+                    formatted = df.format(fusedPrediction[1]);
+                    writer2.print(formatted);
+                    writer2.println("]");
+
+                    double[] funcValue = batchStates[b].getOutput();
                             
-                for (int it = 0;it < this.read.getOutputsize(); it++) {
-                	error[it] += Math.abs(functionPrediction[it] - funcValue[it]);
-                	errorPi[it] += Math.abs(fusedPrediction[it] - funcValue[it]);
-                }
-            }           
+                    for (int it = 0;it < this.read.getOutputsize(); it++) {
+                    	error[it] += Math.abs(functionPrediction[it] - funcValue[it]);
+                    	errorPi[it] += Math.abs(fusedPrediction[it] - funcValue[it]);
+                    }
+                }           
+            }
         }
         
         aveError = 0;
@@ -392,6 +420,14 @@ public class XCSF {
         
         writer2.close();
 
+        if (population.spatialIndex != null) {
+            XCSFUtils.println(population.spatialIndex.toString());
+        }
+        if (matchSet.getThreadingController() != null
+                && XCSFConstants.numberOfExperiments == 1) {
+            XCSFUtils.println(matchSet.getThreadingController().toString());
+        }
+
         // make sure that child threads are closed.
         try {
             matchSet.shutDownThreads();
@@ -409,30 +445,39 @@ public class XCSF {
     	Boolean isTrain = false;
     	this.read.loadData(isTrain);
     	
-    	MatchSet matchSet = new MatchSet(XCSFConstants.doNumClosestMatch, XCSFConstants.multiThreading);
     	this.performanceEvaluator = new PerformanceEvaluator();
     	this.performanceEvaluator.setTestPredErrorSize(read.getDataSize(), read.getOutputsize());
 
     	
-    	for (int iteration = 0; iteration <= read.getDataSize()-1; iteration++) {
-    		this.read.getInstance();
-            StateDescriptor State = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
-            double[] funcValue = read.getInstanceY();
-            
-            matchSet.match(State, population);
-            double[] functionPrediction = matchSet.getWeightedPrediction();
-                                    
-            if ((XCSFConstants.predictionType.equalsIgnoreCase(PredictionLinearRLS.class.getName()) || XCSFConstants.predictionType
-                    .equalsIgnoreCase(PredictionQuadraticRLS.class.getName())) && iteration + 1 == 
-                    (int) (XCSFConstants.resetRLSPredictionsAfterSteps * XCSFConstants.maxLearningIterations)) {
-                for (int i = 0; i < population.size; i++) {
-                    ((PredictionLinearRLS) population.elements[i].getPrediction()).resetGainMatrix();
-                }
-            }
-            
-            if (!listeners.isEmpty()) {
-            	this.performanceEvaluator.testPredictionErr(iteration, funcValue, functionPrediction);
-            }
+    	StateDescriptor[] batchStates = new StateDescriptor[BATCH_SIZE];
+    	MatchSet[] batchSets = new MatchSet[BATCH_SIZE];
+    	for (int b = 0; b < BATCH_SIZE; b++) {
+    	    batchSets[b] = new MatchSet(XCSFConstants.doNumClosestMatch);
+    	}
+    	for (int first = 0; first < read.getDataSize(); first += BATCH_SIZE) {
+    	    // match a block of instances with one pass over the population
+    	    int count = Math.min(BATCH_SIZE, read.getDataSize() - first);
+    	    for (int b = 0; b < count; b++) {
+    	        this.read.getInstance();
+    	        batchStates[b] = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
+    	    }
+    	    MatchSet.match(batchStates, batchSets, count, population);
+
+    	    for (int b = 0; b < count; b++) {
+    	        int iteration = first + b;
+    	        MatchSet matchSet = batchSets[b];
+    	        double[] funcValue = batchStates[b].getOutput();
+    	        double[] functionPrediction = matchSet.getWeightedPrediction();
+
+    	        if (isResettableRLS() && iteration + 1 == 
+    	                (int) (XCSFConstants.resetRLSPredictionsAfterSteps * XCSFConstants.maxLearningIterations)) {
+    	            resetGainMatrices(population);
+    	        }
+
+    	        if (!listeners.isEmpty()) {
+    	            this.performanceEvaluator.testPredictionErr(iteration, funcValue, functionPrediction);
+    	        }
+    	    }
        	}
     	
     	double[] testError = this.performanceEvaluator.testPerformance(read.getDataSize());
@@ -440,6 +485,99 @@ public class XCSF {
     }
     
     
+    /**
+     * Runs a single learning iteration: matches the next problem instance,
+     * covers, evaluates the performance, updates the match-set, evolves and
+     * informs the listeners. The iteration is a method of its own rather than
+     * the body of the main loop, such that the JIT compiles it as a whole
+     * instead of by on-stack replacement of the long running loop, which
+     * occasionally allocated on the learning thread (see {@link #main}).
+     * 
+     * @param iteration
+     *            the current iteration
+     * @param state
+     *            the state of the previous iteration, which is reused, or
+     *            <code>null</code> in the first iteration
+     * @param population
+     *            the current population
+     * @param matchSet
+     *            the match-set, which is reused
+     * @param evolutionaryComponent
+     *            the evolutionary component
+     * @return the state of this iteration
+     */
+    private StateDescriptor learn(int iteration, StateDescriptor state,
+            Population population, MatchSet matchSet,
+            EvolutionaryComp evolutionaryComponent) {
+        // 1) get next problem instance
+        this.read.getInstance();
+        if (state == null) {
+            state = new StateDescriptor(this.read.getInstanceX(), this.read.getInstanceY());
+        } else {
+            state.set(this.read.getInstanceX(), this.read.getInstanceY());
+        }
+        if (XCSFConstants.datasetMatchingType != 0) {
+            state.setRow(this.read.getInstanceRow());
+        }
+
+        // 2) match & cover if necessary
+        matchSet.match(state, population);// most computational time here
+        matchSet.ensureStateCoverage(population, iteration);
+        // 3) evaluate performance
+        double[] functionPrediction = matchSet.getWeightedPrediction();
+        double[] funcValue = read.getInstanceY();
+        this.performanceEvaluator.evaluate(population, matchSet, iteration, funcValue, functionPrediction);
+        // 4) update matching classifiers
+        matchSet.updateClassifiers();
+        // 5) evolution
+        if (iteration <= XCSFConstants.maxLearningIterations-read.getDataSize()) {
+        	evolutionaryComponent.evolve(population, matchSet, state, iteration);
+        }
+
+        // inform listeners
+        if (!listeners.isEmpty()) {
+            double[][] performance = this.performanceEvaluator.getCurrentExperimentPerformance();
+            for (int l = 0; l < listeners.size(); l++) {
+                listeners.get(l).stateChanged(iteration, population, matchSet, state, performance);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Returns true, if the configured prediction type supports resetting its
+     * RLS gain matrix.
+     * 
+     * @return true, if the gain matrices can be reset
+     */
+    private static boolean isResettableRLS() {
+        return XCSFConstants.predictionType.equalsIgnoreCase(PredictionLinearRLS.class.getName())
+                || XCSFConstants.predictionType.equalsIgnoreCase(PredictionQuadraticRLS.class.getName())
+                || XCSFConstants.predictionType.equalsIgnoreCase(PredictionLinearRLSCompact.class.getName())
+                || XCSFConstants.predictionType.equalsIgnoreCase(PredictionSparseRLS.class.getName());
+    }
+
+    /**
+     * Resets the RLS gain matrices of all classifiers in the population.
+     * 
+     * @param population
+     *            the population
+     */
+    private static void resetGainMatrices(Population population) {
+        for (int i = 0; i < population.size; i++) {
+            Prediction prediction = population.elements[i].getPrediction();
+            if (prediction instanceof PredictionLinearRLS) {
+                ((PredictionLinearRLS) prediction).resetGainMatrix();
+            } else if (prediction instanceof PredictionQuadraticRLS) {
+                ((PredictionQuadraticRLS) prediction).resetGainMatrix();
+            } else if (prediction instanceof PredictionLinearRLSCompact) {
+                ((PredictionLinearRLSCompact) prediction).resetGainMatrix();
+            } else if (prediction instanceof PredictionSparseRLS) {
+                ((PredictionSparseRLS) prediction).resetGainMatrix();
+            }
+        }
+    }
+
     /**
      * Returns mean and variance values of the final iteration represented in a
      * tab-separated String.
@@ -496,6 +634,117 @@ public class XCSF {
         return sb.toString();
     }
 
+    /**
+     * Trains a population from {@link XCSFConstants#initialSeed} with the
+     * current settings and returns it as written by
+     * {@link Population#writePopulation(File)}. The regression checks compare
+     * the results of different settings byte by byte.
+     * 
+     * @param file
+     *            the file to write the population to
+     * @return the written population
+     * @throws IOException
+     *             if the population cannot be written
+     */
+    static byte[] trainPopulation(File file) throws IOException {
+        XCSFUtils.Random.setSeed(XCSFConstants.initialSeed);
+        FileRead read = new FileRead();
+        read.loadData(true);
+        new XCSF(read).runSingleExperiment().writePopulation(file);
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Allocation check: trains with the given settings and reads the bytes
+     * allocated by the learning thread (see
+     * {@link ThreadMXBean#getCurrentThreadAllocatedBytes()})
+     * around every iteration of the second half, the first half being the
+     * warm-up. Exits with status 1, if any measured iteration allocates.
+     * <p>
+     * Not measured are the iterations, in which the GA ran or covering
+     * created a classifier (some member of the match-set has the timestamp of
+     * the iteration), in which a classifier is updated for the first time
+     * (its RLS gain matrix is allocated lazily), and the iterations after the
+     * RLS reset and after the start of compaction. Printing the performance
+     * report allocates, thus {@link XCSFConstants#verbose} is switched off.
+     * Parallel matching and updates create their fork/join subtasks in every
+     * iteration, thus {@link XCSFConstants#multiThreading} is switched off.
+     * <p>
+     * The result is deterministic with the interpreter or the client compiler
+     * only (<tt>-XX:TieredStopAtLevel=1</tt>). With the server compiler, the
+     * VM occasionally allocates a few hundred bytes on the learning thread,
+     * when compiled code hits an uncommon trap and falls back to the
+     * interpreter.
+     * 
+     * @param args
+     *            the settings file (default <tt>xcsf.ini</tt>) and optionally
+     *            the number of learning iterations
+     * @throws IOException
+     *             if the results cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        XCSFConstants.load(args.length > 0 ? args[0] : "xcsf.ini");
+        if (args.length > 1) {
+            XCSFConstants.maxLearningIterations = Integer.parseInt(args[1]);
+        }
+        XCSFConstants.verbose = false;
+        XCSFConstants.multiThreading = false;
+        final int warmUp = XCSFConstants.maxLearningIterations / 2;
+        final int resetStep = (int) (XCSFConstants.resetRLSPredictionsAfterSteps
+                * XCSFConstants.maxLearningIterations);
+        final int compactionStep = (int) (XCSFConstants.startCompaction
+                * XCSFConstants.maxLearningIterations);
+        final ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        // measured, allocating and skipped iterations
+        final int[] counts = new int[3];
+        XCSFUtils.Random.setSeed(XCSFConstants.initialSeed);
+        FileRead read = new FileRead();
+        read.loadData(true);
+        XCSF xcsf = new XCSF(read);
+        xcsf.addListener(new XCSFListener() {
+            private long allocated;
+
+            public void nextExperiment(int experiment, String functionName) {
+                // ignore
+            }
+
+            public void stateChanged(int iteration, Population population,
+                    MatchSet matchSet, StateDescriptor state,
+                    double[][] performance) {
+                long bytes = threads.getCurrentThreadAllocatedBytes()
+                        - this.allocated;
+                if (iteration > warmUp) {
+                    boolean skip = iteration == resetStep
+                            || iteration == compactionStep;
+                    for (int i = 0; i < matchSet.size && !skip; i++) {
+                        Classifier cl = matchSet.elements[i];
+                        skip = cl.getTimestamp() == iteration
+                                || cl.getExperience() == 1;
+                    }
+                    if (skip) {
+                        counts[2]++;
+                    } else {
+                        counts[0]++;
+                        if (bytes != 0) {
+                            counts[1]++;
+                            System.out.println("iteration " + iteration
+                                    + ": " + bytes + " bytes");
+                        }
+                    }
+                }
+                this.allocated = threads.getCurrentThreadAllocatedBytes();
+            }
+        });
+        xcsf.runSingleExperiment();
+        System.out.println(counts[0] + " iterations measured, " + counts[1]
+                + " allocating, " + counts[2] + " skipped (GA, covering, "
+                + "first updates, RLS reset, compaction start)");
+        if (counts[1] > 0) {
+            System.exit(1);
+        }
+    }
+
     /**
      * Registers the given listener. Listeners are informed about changes at the
      * end of every iteration in XCSF.
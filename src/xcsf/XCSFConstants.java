@@ -6,8 +6,13 @@ import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.Properties;
 
+import xcsf.classifier.ConditionGivensEllipsoid;
 import xcsf.classifier.ConditionRotatingEllipsoid;
+import xcsf.classifier.ConditionRotatingEllipsoidCompact;
 import xcsf.classifier.PredictionLinearRLS;
+import xcsf.classifier.PredictionLinearRLSCompact;
+import xcsf.classifier.PredictionSparseRLS;
+import xcsf.classifier.PredictionSqrtRLS;
 
 /**
  * Makes available all kinds of XCSF constants (static). The values can be
@@ -30,6 +35,19 @@ public class XCSFConstants {
 	public static String TestFilename = "test.txt";
 	public static int Inputsize = 2;
 	public static int Outputsize = 3;
+    /**
+     * If positive, the training and test files are read lazily instead of
+     * being loaded into memory, and the training rows are shuffled through a
+     * buffer of this many rows (see {@link DatasetStream}). Requires
+     * datasetMatchingType = 0. Default: 0
+     */
+    public static int streamBufferSize = 0;
+    /**
+     * If positive and {@link #streamBufferSize} is positive, the training rows
+     * are read and parsed ahead of time by a loader thread into a ring buffer
+     * of this many instances (see {@link InstancePrefetcher}). Default: 0
+     */
+    public static int prefetchCapacity = 0;
 	
 	// ---[ Experiments ]----------------------------------------------------
     /**
@@ -61,21 +79,37 @@ public class XCSFConstants {
     /**
      * Indicates the use of multi-threaded matching to speed up the learning
      * time. Note that multi-threaded experiments are not reproducable due to
-     * concurrency.
+     * concurrency, unless {@link #deterministicMatching} is set.
      * 
      * @see MatchSet
      */
     public static boolean multiThreading = true;
+    /**
+     * If set, multi-threaded matching produces the same match-set order as
+     * serial matching, such that experiments with a fixed seed are
+     * reproducible. This requires some additional memory and a final merge
+     * step. Default: false
+     */
+    public static boolean deterministicMatching = false;
     /**
      * If the actual population size is below this threshold, serial single-core
      * matching is applied. If the size is above the threshold, multi-threading
      * is activated. The value can also be set to 'auto' (values less than
-     * zero), which indicates that XCSF automatically adapts the threshold
-     * depending on periodical system time measurements. The latter assures that
-     * XCSF does not waste time with multi-threading, where not appropriate, but
-     * starts multi-threading, when there is a speedup. Default: auto (-1)
+     * zero), which indicates that XCSF continuously measures the matching time
+     * of serial matching and of parallel matching with different numbers of
+     * threads, and uses the fastest variant (see {@link ThreadingController}).
+     * The latter assures that XCSF does not waste time with multi-threading,
+     * where not appropriate, but starts multi-threading, when there is a
+     * speedup. Default: auto (-1)
      */
     public static int threadingThreshold = -1;
+    /**
+     * If multi-threading is enabled and a match-set contains at least this
+     * number of classifiers, the classifiers are updated in parallel by the
+     * matching threads. The results do not depend on this setting, because
+     * every classifier is updated independently. Default: 64
+     */
+    public static int updateThreadingThreshold = 64;
     /**
      * This flag indicates verbose mode, i.e. XCSF writes informative messages
      * about current error and other things to <tt>System.out</tt>.
@@ -99,13 +133,20 @@ public class XCSFConstants {
     public static double epsilon_0 = 0.01;
     /**
      * Specifies, which condition type is used, e.g. rotating hyperellipoids.
+     * {@link ConditionRotatingEllipsoidCompact} stores its state as float to
+     * reduce the memory of large populations. For high-dimensional inputs,
+     * {@link ConditionGivensEllipsoid} rotates by a few Givens rotations only.
      * Default: {@link ConditionRotatingEllipsoid}
      */
     public static String conditionType = ConditionRotatingEllipsoid.class
             .getName();
     /**
      * Specifies the prediction type, for example linear recursive least
-     * squares. Default: {@link PredictionLinearRLS}
+     * squares. For long runs, {@link PredictionSqrtRLS} provides a numerically
+     * stable square-root variant and {@link PredictionLinearRLSCompact} a
+     * float variant for large populations. Wide, sparse prediction inputs are
+     * handled by {@link PredictionSparseRLS}, which uses a diagonal gain
+     * matrix. Default: {@link PredictionLinearRLS}
      */
     public static String predictionType = PredictionLinearRLS.class.getName();
     /**
@@ -120,6 +161,13 @@ public class XCSFConstants {
      * standard condition implementations, the search space has a volume of one.
      */
     public static double coverConditionRange = 0.99;
+    /**
+     * The number of Givens rotations of a {@link ConditionGivensEllipsoid},
+     * which is limited to the number of rotation planes <tt>d(d-1)/2</tt>.
+     * Matching and mutation require <tt>O(d+k)</tt> operations for
+     * <tt>k</tt> rotations. Default: 8
+     */
+    public static int givensRotations = 8;
     /**
      * The learning rate for updating fitness, prediction error, and action set
      * size estimate in XCS's classifiers. Default: 0.1
@@ -167,6 +215,39 @@ public class XCSFConstants {
      * if doNumCloestMatch is set to true; Default: 20
      */
     public static int numClosestMatch = 20;
+    /**
+     * Specifies if closest classifier matching uses a grid index over the
+     * condition centers, which skips classifiers whose activity cannot reach
+     * the closest ones. The match set contains the most active classifiers
+     * sorted by activity, while default closest classifier matching selects
+     * them in a random order. Default: false
+     */
+    public static boolean closestMatchingIndex = false;
+    /**
+     * Specifies if a spatial grid index over the condition bounding boxes is
+     * used to prune the candidates for normal threshold matching. The
+     * resulting match set is identical to serial matching. Default: false
+     */
+    public static boolean spatialIndex = false;
+    /**
+     * Specifies if the inverse transformations of rotating ellipsoidal
+     * conditions are packed into contiguous arrays for faster serial matching.
+     * The resulting match set is identical to default matching. Default: false
+     */
+    public static boolean packedConditions = false;
+    /**
+     * The matching mode for finite training datasets. Default: 0
+     * <ul>
+     * <li>0 = conditions are matched against the input of every instance
+     * <li>1 = every classifier stores a bitset of the dataset rows it matches,
+     * matching becomes a lookup of the current row (one bit per row and
+     * classifier)
+     * <li>2 = the population maintains an index from every dataset row to the
+     * matching classifiers, which is used for learning and for the evaluation
+     * on the training data
+     * </ul>
+     */
+    public static int datasetMatchingType = 0;
 
     // ---[ Evolution Parameters ]-------------------------------------------
     /**
@@ -244,8 +325,8 @@ public class XCSFConstants {
     public static double lambdaRLS = 1;
     /**
      * If set, then after the specified percentage of iterations, all gain
-     * matrizes are reset according to the initial scale factor. Default: starts
-     * with compaction.
+     * matrizes are reset according to the initial scale factor. This does not
+     * apply to {@link PredictionSqrtRLS}. Default: starts with compaction.
      * 
      * @see XCSFConstants#rlsInitScaleFactor
      */
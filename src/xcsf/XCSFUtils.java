@@ -350,10 +350,8 @@ public class XCSFUtils {
             // 1. try to load the class itself
             Class<?> c = Class.forName(className);
             // 2. check, if class implements the desired interface
-            boolean found = false;
-            for (Object ob : c.getInterfaces())
-                found |= ob.equals(implementedInterface);
-            if (!found)
+            // (directly or by an extending interface)
+            if (!implementedInterface.isAssignableFrom(c))
                 throw new IllegalArgumentException("Class " + className
                         + " is not implementing the "
                         + implementedInterface.getSimpleName() + " interface.");
@@ -526,6 +524,144 @@ public class XCSFUtils {
             }
         }
 
+        /**
+         * Returns the number of entries of a packed symmetric matrix of size
+         * <tt>n</tt> by <tt>n</tt>, that is <tt>n*(n+1)/2</tt>. The packed
+         * format stores the upper triangle row by row, i.e. the entry
+         * <tt>(i,j)</tt> with <tt>i&lt;=j</tt> is found at index
+         * <tt>i*n - i*(i-1)/2 + j-i</tt>.
+         * 
+         * @param n
+         *            the size of the matrix
+         * @return the length of the packed array
+         */
+        public static int packedLength(int n) {
+            return n * (n + 1) / 2;
+        }
+
+        /**
+         * Multiplies the symmetric <code>packedMatrix</code> (<tt>n</tt> by
+         * <tt>n</tt>, see {@link #packedLength(int)}) with
+         * <code>srcVector</code> (length <tt>n</tt>) and puts the results into
+         * <code>destination</code> (length <tt>n</tt>). The products are
+         * summed in the same order as by
+         * {@link #multiply(double[][], double[], double[], int)} for the
+         * unpacked matrix, thus the results are identical.
+         * <p>
+         * Note that this method does no checks (null or length) for performance
+         * reasons and does not allocate new double arrays.
+         * 
+         * @param packedMatrix
+         *            the upper triangle of the symmetric matrix
+         * @param srcVector
+         *            the source vector of length <tt>n</tt>
+         * @param destination
+         *            the destination vector of length <tt>n</tt>
+         * @param n
+         *            the size of the matrix
+         */
+        public static void multiplyPacked(double[] packedMatrix,
+                double[] srcVector, double[] destination, int n) {
+            int rowStart = 0; // index of entry (i,i)
+            for (int i = 0; i < n; i++) {
+                // -0.0 is the exact additive identity (also for -0.0)
+                double sum = -0.0;
+                // lower part: entry (i,j) = (j,i) for j < i
+                int index = i; // index of entry (0,i)
+                for (int j = 0; j < i; j++) {
+                    sum += packedMatrix[index] * srcVector[j];
+                    index += n - j - 1;
+                }
+                // upper part: contiguous entries (i,j) for j >= i
+                for (int j = i; j < n; j++) {
+                    sum += packedMatrix[rowStart + j - i] * srcVector[j];
+                }
+                destination[i] = sum;
+                rowStart += n - i;
+            }
+        }
+
+        /**
+         * Applies a symmetric rank-one update to the symmetric
+         * <code>packedMatrix</code> (<tt>n</tt> by <tt>n</tt>, see
+         * {@link #packedLength(int)}), that is
+         * 
+         * <pre>
+         * matrix = (matrix - scale * vector * vector&circ;T) / divisor
+         * </pre>
+         * 
+         * Only the upper triangle is stored, which requires <tt>O(n^2)</tt>
+         * operations and keeps the matrix exactly symmetric.
+         * <p>
+         * Note that this method does no checks (null or length) for performance
+         * reasons and does not allocate new double arrays.
+         * 
+         * @param packedMatrix
+         *            the upper triangle of the symmetric matrix to update
+         * @param vector
+         *            the vector of length <tt>n</tt>
+         * @param scale
+         *            the factor of the rank-one matrix
+         * @param divisor
+         *            the divisor applied to all entries
+         * @param n
+         *            the size of the matrix
+         */
+        public static void symmetricRankOneUpdatePacked(double[] packedMatrix,
+                double[] vector, double scale, double divisor, int n) {
+            int index = 0;
+            for (int i = 0; i < n; i++) {
+                double factor = scale * vector[i];
+                for (int j = i; j < n; j++, index++) {
+                    packedMatrix[index] = (packedMatrix[index] - factor
+                            * vector[j])
+                            / divisor;
+                }
+            }
+        }
+
+        /**
+         * Packs the upper triangle of the symmetric <code>matrix</code> (
+         * <tt>n</tt> by <tt>n</tt>), see {@link #packedLength(int)}.
+         * 
+         * @param matrix
+         *            the symmetric matrix
+         * @param n
+         *            the size of the matrix
+         * @return a new array containing the upper triangle
+         */
+        public static double[] pack(double[][] matrix, int n) {
+            double[] packedMatrix = new double[packedLength(n)];
+            int index = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    packedMatrix[index++] = matrix[i][j];
+                }
+            }
+            return packedMatrix;
+        }
+
+        /**
+         * Unpacks the symmetric <code>packedMatrix</code> (<tt>n</tt> by
+         * <tt>n</tt>), see {@link #packedLength(int)}.
+         * 
+         * @param packedMatrix
+         *            the upper triangle of the symmetric matrix
+         * @param n
+         *            the size of the matrix
+         * @return a new <tt>n</tt> by <tt>n</tt> array containing the matrix
+         */
+        public static double[][] unpack(double[] packedMatrix, int n) {
+            double[][] matrix = new double[n][n];
+            int index = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    matrix[i][j] = matrix[j][i] = packedMatrix[index++];
+                }
+            }
+            return matrix;
+        }
+
     }
 
     /**
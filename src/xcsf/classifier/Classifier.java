@@ -25,8 +25,10 @@ public class Classifier implements Cloneable {
     private static Constructor<?> conditionParser;
     private static Constructor<?> predictionParser;
 
-    // temporary
-    private static double[] tmpCenterDifference;
+    // dataset inputs for match bitsets, null if dataset matching is disabled
+    private static double[][] datasetInputs;
+    // incremented whenever a dataset is registered, invalidates all bitsets
+    private static int datasetVersion = 0;
 
     // classifier fields
     private Condition condition;
@@ -38,6 +40,15 @@ public class Classifier implements Cloneable {
     private double predictionError;
     private int timestamp;
 
+    // derived from predictionError, refreshed whenever it changes
+    private double accuracy;
+    // volume of the condition, computed on demand (NaN = not computed)
+    private double generality = Double.NaN;
+
+    // dataset rows matched by the condition, computed on demand
+    private long[] matchBits;
+    private int matchBitsVersion;
+
     /**
      * Default constructor used for covering. See the {@link MatchSet} class for
      * details on the covering mechanism.
@@ -53,11 +64,9 @@ public class Classifier implements Cloneable {
         this.experience = 0;
         this.setSizeEstimate = 1;
         this.predictionError = XCSFConstants.predictionErrorIni;
+        this.accuracy = this.calculateAccuracy();
         this.timestamp = timestamp;
 
-        // static initializer
-        init(state.getConditionInput().length);
-
         // first call: load constructors for condition/prediction
         if (conditionCoverer == null) {
             conditionCoverer = XCSFUtils.loadConstructor(
@@ -80,7 +89,7 @@ public class Classifier implements Cloneable {
             this.condition = (Condition) conditionCoverer.newInstance(state
                     .getConditionInput());
             this.prediction = (Prediction) predictionCoverer.newInstance(state
-                    .getPredictionInput().length, state.getOutput());
+                    .getPredictionInputDimension(), state.getOutput());
         } catch (IllegalArgumentException e) {
             e.printStackTrace();// cannot happen, signature checked.
         } catch (InstantiationException e) {
@@ -99,21 +108,6 @@ public class Classifier implements Cloneable {
         // empty
     }
 
-    /**
-     * Initializes static arrays, if necessary.
-     * 
-     * @param conditionInputLength
-     *            the dimension of the condition input
-     */
-    private static void init(int conditionInputLength) {
-        // assure correct array length
-        if (tmpCenterDifference == null) {
-            tmpCenterDifference = new double[conditionInputLength];
-        } else if (tmpCenterDifference.length != conditionInputLength) {
-            tmpCenterDifference = new double[conditionInputLength];
-        }
-    }
-
     /**
      * Computes the activity of the <code>Condition</code> for the given
      * <tt>state</tt>.
@@ -123,11 +117,15 @@ public class Classifier implements Cloneable {
      * @return the activity for the <tt>state</tt>
      */
     public double getActivity(StateDescriptor state) {
-        return this.condition.getActivity(state.getConditionInput());
+        return this.condition.getActivity(state.getConditionInput(),
+                state.getSequence());
     }
 
     /**
      * Checks if the <code>Condition</code> matches the given <tt>state</tt>.
+     * If a dataset is registered (see {@link #setDatasetInputs(double[][])})
+     * and the state refers to one of its rows, the bitset of matched rows is
+     * used instead of the condition.
      * 
      * @param state
      *            the state to match
@@ -135,7 +133,64 @@ public class Classifier implements Cloneable {
      *         otherwise.
      */
     public boolean doesMatch(StateDescriptor state) {
-        return this.condition.doesMatch(state.getConditionInput());
+        int row = state.getRow();
+        if (row >= 0 && datasetInputs != null) {
+            return matchesRow(row);
+        }
+        return this.condition.doesMatch(state.getConditionInput(),
+                state.getSequence());
+    }
+
+    /**
+     * Checks if the <code>Condition</code> matches the given row of the
+     * registered dataset. On the first call after creation or modification of
+     * the condition, all rows of the dataset are matched and stored in a
+     * bitset. Subsequent calls are simple lookups.
+     * 
+     * @param row
+     *            the row index in the registered dataset
+     * @return <code>true</code>, if the condition matches the row;
+     *         <code>false</code> otherwise.
+     */
+    public boolean matchesRow(int row) {
+        if (this.matchBits == null || this.matchBitsVersion != datasetVersion) {
+            double[][] inputs = datasetInputs;
+            long[] bits = new long[(inputs.length + 63) >>> 6];
+            for (int r = 0; r < inputs.length; r++) {
+                if (this.condition.doesMatch(inputs[r])) {
+                    bits[r >>> 6] |= 1L << r;
+                }
+            }
+            this.matchBits = bits;
+            this.matchBitsVersion = datasetVersion;
+        }
+        return (this.matchBits[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Discards the values derived from the condition, i.e. the bitset of
+     * matched dataset rows and the generality. Must be called, whenever the
+     * condition is modified from outside of this class.
+     */
+    public void conditionChanged() {
+        this.matchBits = null;
+        this.generality = Double.NaN;
+    }
+
+    /**
+     * Registers the condition inputs of a finite dataset for matching by row
+     * index. Each classifier stores a bitset of the rows its condition
+     * matches, which requires one bit per row and classifier. Registering a
+     * new dataset invalidates all bitsets.
+     * 
+     * @param inputs
+     *            the condition inputs of all rows, or <code>null</code> to
+     *            disable matching by row index
+     * @see StateDescriptor#setRow(int)
+     */
+    public static void setDatasetInputs(double[][] inputs) {
+        datasetInputs = inputs;
+        datasetVersion++;
     }
 
     /**
@@ -149,10 +204,17 @@ public class Classifier implements Cloneable {
         if (state.isSameInput()) {
             double[] input = state.getConditionInput();
             double[] center = this.condition.getCenter();
+            double[] tmpCenterDifference = Workspace.get().centerDifference(
+                    input.length);
             for (int i = 0; i < input.length; i++) {
                 tmpCenterDifference[i] = input[i] - center[i];
             }
             return this.prediction.predict(tmpCenterDifference);
+        } else if (state.isSparse()
+                && this.prediction instanceof SparsePrediction) {
+            // only the nonzero entries of the prediction input
+            return ((SparsePrediction) this.prediction).predict(state
+                    .getPredictionIndices(), state.getPredictionValues());
         } else {
             return this.prediction.predict(state.getPredictionInput());
         }
@@ -169,12 +231,15 @@ public class Classifier implements Cloneable {
         // fitness & predictionError
         double avgPredictionError = (this.predictionError + other.predictionError) / 2.0;
         this.predictionError = other.predictionError = avgPredictionError;
+        this.accuracy = other.accuracy = this.calculateAccuracy();
         double avgfitness = (this.fitness + other.fitness) / 2.0;
         this.fitness = other.fitness = avgfitness;
 
         // predictions & conditions
         this.prediction.crossover(other.prediction);
         this.condition.crossover(other.condition);
+        this.conditionChanged();
+        other.conditionChanged();
     }
 
     /**
@@ -183,6 +248,7 @@ public class Classifier implements Cloneable {
      */
     public void mutation() {
         this.condition.mutation();
+        this.conditionChanged();
     }
 
     /**
@@ -199,10 +265,17 @@ public class Classifier implements Cloneable {
         if (state.isSameInput()) {
             double[] input = state.getConditionInput();
             double[] center = this.condition.getCenter();
+            double[] tmpCenterDifference = Workspace.get().centerDifference(
+                    input.length);
             for (int i = 0; i < input.length; i++) {
                 tmpCenterDifference[i] = input[i] - center[i];
             }
             this.prediction.update(tmpCenterDifference, state.getOutput());
+        } else if (state.isSparse()
+                && this.prediction instanceof SparsePrediction) {
+            ((SparsePrediction) this.prediction).update(state
+                    .getPredictionIndices(), state.getPredictionValues(), state
+                    .getOutput());
         } else {
             this.prediction.update(state.getPredictionInput(), state
                     .getOutput());
@@ -222,6 +295,7 @@ public class Classifier implements Cloneable {
             max = XCSFConstants.beta;
         }
         predictionError += max * (absError - predictionError);
+        this.accuracy = this.calculateAccuracy();
     }
 
     /**
@@ -266,7 +340,13 @@ public class Classifier implements Cloneable {
         clone.setSizeEstimate = this.setSizeEstimate;
         clone.predictionError = this.predictionError
                 * XCSFConstants.predictionErrorReduction;
+        clone.accuracy = clone.calculateAccuracy();
         clone.timestamp = this.timestamp;
+        // the condition is copied, thus the volume is the same
+        clone.generality = this.generality;
+        // bitsets are never modified, thus they can be shared
+        clone.matchBits = this.matchBits;
+        clone.matchBitsVersion = this.matchBitsVersion;
         // modified fields
         clone.fitness = this.fitness / this.numerosity
                 * XCSFConstants.fitnessReduction;
@@ -297,12 +377,23 @@ public class Classifier implements Cloneable {
     }
 
     /**
-     * Determines the current accuracy of the classifier based on its current
-     * prediction error estimate.
+     * Returns the current accuracy of the classifier based on its current
+     * prediction error estimate. The value is cached and refreshed, whenever
+     * the prediction error changes.
      * 
      * @return the current classifier accuracy
      */
     public double getAccuracy() {
+        return this.accuracy;
+    }
+
+    /**
+     * Determines the accuracy of the classifier based on its current
+     * prediction error estimate.
+     * 
+     * @return the accuracy for the current prediction error
+     */
+    private double calculateAccuracy() {
         if (predictionError <= XCSFConstants.epsilon_0) {
             return 1.0;
         } else {
@@ -377,12 +468,16 @@ public class Classifier implements Cloneable {
     /**
      * Determines the generality of this classifiers condition. For
      * <code>Condition</code> implementations that define a geometric shape,
-     * this method returns the volume of the condition.
+     * this method returns the volume of the condition. The value is cached
+     * until the condition changes.
      * 
      * @return the generality of the classifiers condition
      */
     public double getGenerality() {
-        return this.condition.getVolume();
+        if (Double.isNaN(this.generality)) {
+            this.generality = this.condition.getVolume();
+        }
+        return this.generality;
     }
 
     /**
@@ -542,6 +637,7 @@ public class Classifier implements Cloneable {
         cl.setSizeEstimate = Double.parseDouble(splited[i++]);
         cl.timestamp = Integer.parseInt(splited[i++]);
         cl.predictionError = Double.parseDouble(splited[i++]);
+        cl.accuracy = cl.calculateAccuracy();
 
         // condition
         String conditionClass = splited[i++];
@@ -564,9 +660,6 @@ public class Classifier implements Cloneable {
         }
         args[0] = splited[i++].split(splitRegex2);
         cl.prediction = (Prediction) predictionParser.newInstance(args);
-
-        // static initializers
-        init(cl.condition.getCenter().length);
         return cl;
     }
 }
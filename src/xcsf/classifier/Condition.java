@@ -46,11 +46,17 @@ public interface Condition {
     /** upper human readable angle */
     public final static double UPPER_ROTATION_BOUND = 2 * Math.PI;
 
+    /**
+     * Sequence number of inputs, whose matching results are not cached (see
+     * {@link #doesMatch(double[], long)}).
+     */
+    public final static long NO_SEQUENCE = 0;
+
     /**
      * Returns <code>true</code>, if this condition matches the given
      * <code>input</code>, that is if the given point satisfies this condition.
      * Implementations should make use of {@link #getActivity(double[])} to
-     * determine matching.
+     * determine matching. The result is not cached.
      * 
      * @param input
      *            the input to match
@@ -59,6 +65,23 @@ public interface Condition {
      */
     public boolean doesMatch(double[] input);
 
+    /**
+     * Same as {@link #doesMatch(double[])}, but the result is cached for the
+     * given <code>sequence</code> number of the input: subsequent calls of
+     * this method or {@link #getActivity(double[], long)} with the same number
+     * avoid the recalculation. The cache is not keyed on the array, because
+     * input arrays may be reused for other instances.
+     * 
+     * @param input
+     *            the input to match
+     * @param sequence
+     *            the sequence number of the input, see
+     *            {@link xcsf.StateDescriptor#getSequence()}
+     * @return <code>true</code> if this condition matches the given
+     *         <code>input</code>; <code>false</code> otherwise.
+     */
+    public boolean doesMatch(double[] input, long sequence);
+
     /**
      * Calculates the activity of this condition concerning the given
      * <code>input</code>. If the input equals the center of this condition, the
@@ -71,6 +94,20 @@ public interface Condition {
      */
     public double getActivity(double[] input);
 
+    /**
+     * Same as {@link #getActivity(double[])}, but the result is cached for the
+     * given <code>sequence</code> number of the input (see
+     * {@link #doesMatch(double[], long)}).
+     * 
+     * @param input
+     *            the input for this condition
+     * @param sequence
+     *            the sequence number of the input, see
+     *            {@link xcsf.StateDescriptor#getSequence()}
+     * @return the activity of this condition for the given <code>input</code>
+     */
+    public double getActivity(double[] input, long sequence);
+
     /**
      * Compares <code>this</code> condition with the <code>other</code>
      * condition regarding generality. If this condition covers all inputs that
@@ -98,6 +135,45 @@ public interface Condition {
      */
     public double[] getCenter();
 
+    /**
+     * Computes the axis-aligned bounding box of this condition, that is a box
+     * that contains every input matched by this condition. The box is used to
+     * prune matching candidates, thus it must not be smaller than the
+     * condition, but it may be larger.
+     *
+     * @param lower
+     *            on return: the lower corner of the bounding box
+     * @param upper
+     *            on return: the upper corner of the bounding box
+     */
+    public void getBoundingBox(double[] lower, double[] upper);
+
+    /**
+     * Returns the radius of a sphere around the center that contains this
+     * condition, that is the maximum euclidean distance between the center and
+     * any input matched by this condition.
+     *
+     * @return the bounding radius of this condition
+     */
+    public double getBoundingRadius();
+
+    /**
+     * Returns an upper bound for the activity of any condition of this type,
+     * whose bounding radius does not exceed <code>boundingRadius</code>, for
+     * an input at the euclidean distance <code>distance</code> from the
+     * center. Thus, the bound only depends on the type of the condition, not
+     * on this particular instance.
+     *
+     * @param distance
+     *            the euclidean distance between input and center
+     * @param boundingRadius
+     *            the maximum bounding radius
+     * @return the upper bound for the activity
+     * @see #getActivity(double[])
+     * @see #getBoundingRadius()
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius);
+
     /**
      * Checks if this condition equals the <code>other</code> condition.
      * 
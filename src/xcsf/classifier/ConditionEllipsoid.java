@@ -13,19 +13,16 @@ import xcsf.XCSFUtils;
  */
 public class ConditionEllipsoid implements Condition {
 
-    // static array to improve performance.
-    private static double[] tmpArray2;
-
     // center, stretch & engles define location & shape of this hyperellipsoid
     private int dimension;
     private double[] center;
     private double[] stretch;
 
     // to avoid multiple calculations for one state
-    private double[] conditionInput;
+    private long conditionSequence = NO_SEQUENCE;
     private double squareDistance;
-    // to avoid mem-alloc for matching
-    private double[] tmpArray1;
+    // false, if squareDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
 
     /**
      * Default constructor for covering creates a condition, that matches the
@@ -69,14 +66,8 @@ public class ConditionEllipsoid implements Condition {
      */
     private ConditionEllipsoid(int dimension) {
         this.dimension = dimension;
-        tmpArray1 = new double[dimension];
         this.center = new double[dimension];
         this.stretch = new double[dimension];
-        this.tmpArray1 = new double[dimension];
-        // static initializer
-        if (tmpArray2 == null || tmpArray2.length != dimension) {
-            tmpArray2 = new double[dimension];
-        }
     }
 
     /*
@@ -85,9 +76,19 @@ public class ConditionEllipsoid implements Condition {
      * @see xcsf.classifier.Condition#doesMatch(double[])
      */
     public boolean doesMatch(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.squareDistance = calculateRelativeSquaredDistance(input);
-            this.conditionInput = input;
+        return this.doesMatch(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, true);
+            this.exactDistance = this.squareDistance < 1;
+            this.conditionSequence = sequence;
         }
         return this.squareDistance < 1;
     }
@@ -98,9 +99,20 @@ public class ConditionEllipsoid implements Condition {
      * @see xcsf.classifier.Condition#getActivity(double[])
      */
     public double getActivity(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.squareDistance = calculateRelativeSquaredDistance(input);
-            this.conditionInput = input;
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, false);
+            this.exactDistance = true;
+            this.conditionSequence = sequence;
         }
         return Math.exp(-this.squareDistance);
     }
@@ -112,6 +124,7 @@ public class ConditionEllipsoid implements Condition {
      */
     public boolean isMoreGeneral(Condition otherCondition) {
         ConditionEllipsoid other = (ConditionEllipsoid) otherCondition;
+        double[] tmpArray2 = Workspace.get().vector(dimension);
         System.arraycopy(other.center, 0, tmpArray2, 0, dimension);
         // check inclusion for each dimension (and both directions)
         for (int dim = 0; dim < dimension; dim++) {
@@ -119,11 +132,11 @@ public class ConditionEllipsoid implements Condition {
             if (this.center[dim] != other.center[dim]
                     || this.stretch[dim] != other.stretch[dim]) {
                 tmpArray2[dim] += other.stretch[dim];
-                if (calculateRelativeSquaredDistance(tmpArray2) > 1) {
+                if (calculateRelativeSquaredDistance(tmpArray2, false) > 1) {
                     return false;
                 }
                 tmpArray2[dim] -= 2 * other.stretch[dim];
-                if (calculateRelativeSquaredDistance(tmpArray2) > 1) {
+                if (calculateRelativeSquaredDistance(tmpArray2, false) > 1) {
                     return false;
                 }
                 tmpArray2[dim] = other.center[dim];
@@ -254,6 +267,45 @@ public class ConditionEllipsoid implements Condition {
         return this.center;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        for (int i = 0; i < dimension; i++) {
+            lower[i] = center[i] - stretch[i];
+            upper[i] = center[i] + stretch[i];
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // the longest semi-axis
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            if (stretch[i] > radius) {
+                radius = stretch[i];
+            }
+        }
+        return radius;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the relative distance is at least distance / longest semi-axis
+        double relative = distance / boundingRadius;
+        return Math.exp(-relative * relative);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -289,19 +341,28 @@ public class ConditionEllipsoid implements Condition {
      * <li>x > 1 else
      * </ul>
      * 
+     * If <code>rejectEarly</code> is set, the remaining dimensions are
+     * skipped, once the partial sum reaches one, and this lower bound is
+     * returned.
+     * 
      * @param point
      *            the condition input
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for points
+     *            outside of this hyperellipsoid
      * @return the relative distance
      */
-    private double calculateRelativeSquaredDistance(double[] point) {
-        // vector from center -> point, divided by stretch
-        for (int i = 0; i < dimension; i++) {
-            tmpArray1[i] = point[i] - center[i];
-            tmpArray1[i] /= stretch[i];
-        }
+    private double calculateRelativeSquaredDistance(double[] point,
+            boolean rejectEarly) {
         double dist = 0;
         for (int i = 0; i < dimension; i++) {
-            dist += tmpArray1[i] * tmpArray1[i];
+            // vector from center -> point, divided by stretch
+            double x = point[i] - center[i];
+            x /= stretch[i];
+            dist += x * x;
+            if (rejectEarly && dist >= 1) {
+                return dist;
+            }
         }
         return dist;
     }
@@ -0,0 +1,589 @@
+package xcsf.classifier;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import xcsf.XCSFConstants;
+import xcsf.XCSFUtils;
+
+/**
+ * Hyperellipsoidal condition for high-dimensional inputs, that is rotated by a
+ * small number <tt>k</tt> of Givens rotations instead of all
+ * <tt>d(d-1)/2</tt> rotations of {@link ConditionRotatingEllipsoid}. The
+ * ellipsoid is given by
+ * 
+ * <pre>
+ * x = center + R * S * u,   |u| &lt;= 1
+ * R = G(0) * G(1) * ... * G(k-1)
+ * </pre>
+ * 
+ * where <tt>S</tt> is the diagonal stretch and <tt>G(r)</tt> rotates the plane
+ * <tt>(i,j)</tt> of rotation <tt>r</tt> by its angle. Rotating a vector by a
+ * Givens rotation changes two entries only, thus no transformation matrices
+ * are stored: matching requires <tt>O(d+k)</tt> operations and a mutation
+ * recalculates the sine and cosine of the changed angles only.
+ * <p>
+ * The number of rotations is specified by {@link XCSFConstants#givensRotations}
+ * and limited to the number of planes. The planes are drawn at random, when
+ * covering, and are inherited by offspring. Mutation changes the angles and
+ * crossover exchanges whole rotations (plane and angle).
+ */
+public class ConditionGivensEllipsoid implements Condition {
+
+    // safety margin for rounding errors of the bounding sphere test
+    private final static double REJECTION_MARGIN = 1e-9;
+
+    // center, stretch & rotations define location & shape of this ellipsoid
+    private int dimension;
+    private double[] center;
+    private double[] stretch;
+    // rotation r rotates the plane (planes[2r], planes[2r+1]) by angle[r]
+    private int[] planes;
+    private double[] angle;
+    // derived: cosine and sine of the angles
+    private double[] cos;
+    private double[] sin;
+    // longest semi-axis, derived from the stretch
+    private double boundingRadius;
+
+    // to avoid multiple calculations for one state
+    private long conditionSequence = NO_SEQUENCE;
+    private double squareDistance;
+    // false, if squareDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
+
+    /**
+     * Default constructor for covering creates a condition, that matches the
+     * given <code>conditionInput</code>.
+     * 
+     * @param conditionInput
+     *            the input for this condition
+     */
+    public ConditionGivensEllipsoid(double[] conditionInput) {
+        this(conditionInput.length, Math.max(0, Math.min(
+                XCSFConstants.givensRotations, conditionInput.length
+                        * (conditionInput.length - 1) / 2)));
+        // center matches input
+        for (int i = 0; i < dimension; i++) {
+            center[i] = conditionInput[i];
+        }
+        // random stretch between min and min+range
+        for (int i = 0; i < dimension; i++) {
+            stretch[i] = XCSFConstants.minConditionStretch
+                    + XCSFUtils.Random.uniRand()
+                    * XCSFConstants.coverConditionRange;
+        }
+        // random planes and angles
+        for (int r = 0; r < angle.length; r++) {
+            int i = (int) (XCSFUtils.Random.uniRand() * dimension);
+            int j = (int) (XCSFUtils.Random.uniRand() * (dimension - 1));
+            if (j >= i) {
+                j++; // j != i
+            }
+            planes[2 * r] = Math.min(i, j);
+            planes[2 * r + 1] = Math.max(i, j);
+            angle[r] = XCSFUtils.Random.uniRand() * 2.0 * Math.PI;
+        }
+        this.recalculateRotations();
+    }
+
+    /**
+     * Parses the given String array. For details, how this constructor is
+     * called, see {@link Classifier#parse(String, String, String)}.
+     * 
+     * @param args
+     *            the splited String
+     */
+    public ConditionGivensEllipsoid(String[] args) {
+        this(Integer.parseInt(args[0]), Integer.parseInt(args[3]));
+        this.center = XCSFUtils.FileIO.parseDoubleArray(args[1]);
+        this.stretch = XCSFUtils.FileIO.parseDoubleArray(args[2]);
+        if (angle.length > 0) {
+            double[] p = XCSFUtils.FileIO.parseDoubleArray(args[4]);
+            for (int i = 0; i < planes.length; i++) {
+                planes[i] = (int) p[i];
+            }
+            this.angle = XCSFUtils.FileIO.parseDoubleArray(args[5]);
+        }
+        this.recalculateRotations();
+    }
+
+    /**
+     * Private alternative constructor for cloning and parsing.
+     * 
+     * @param dimension
+     *            the dimensionality of this condition
+     * @param rotations
+     *            the number of rotations
+     */
+    private ConditionGivensEllipsoid(int dimension, int rotations) {
+        this.dimension = dimension;
+        this.center = new double[dimension];
+        this.stretch = new double[dimension];
+        this.planes = new int[2 * rotations];
+        this.angle = new double[rotations];
+        this.cos = new double[rotations];
+        this.sin = new double[rotations];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[])
+     */
+    public boolean doesMatch(double[] input) {
+        return this.doesMatch(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, true);
+            this.exactDistance = this.squareDistance < 1;
+            this.conditionSequence = sequence;
+        }
+        return this.squareDistance < 1;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[])
+     */
+    public double getActivity(double[] input) {
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, false);
+            this.exactDistance = true;
+            this.conditionSequence = sequence;
+        }
+        return Math.exp(-this.squareDistance);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#isMoreGeneral(xcsf.classifier.Condition)
+     */
+    public boolean isMoreGeneral(Condition otherCondition) {
+        ConditionGivensEllipsoid other = (ConditionGivensEllipsoid) otherCondition;
+        // as for ConditionRotatingEllipsoid, the end points of the other
+        // semi-axes (center +/- stretch * axis) are mapped into the unit
+        // sphere coordinates of this ellipsoid, which must contain them.
+        Workspace workspace = Workspace.get();
+        double[] offset = workspace.vector(dimension);
+        double[] axis = workspace.axis(dimension);
+        // offset = S^-1 * R^T * (other.center - center)
+        for (int i = 0; i < dimension; i++) {
+            offset[i] = other.center[i] - center[i];
+        }
+        this.rotateInverse(offset);
+        for (int i = 0; i < dimension; i++) {
+            offset[i] /= stretch[i];
+        }
+        for (int dim = 0; dim < dimension; dim++) {
+            // axis = S^-1 * R^T * other.R * other.S * e(dim)
+            Arrays.fill(axis, 0);
+            axis[dim] = other.stretch[dim];
+            other.rotate(axis);
+            this.rotateInverse(axis);
+            double length1 = 0, length2 = 0;
+            for (int i = 0; i < dimension; i++) {
+                double a = axis[i] / stretch[i];
+                // positive unit vector
+                double v = offset[i] + a;
+                length1 += v * v;
+                // negative unit vector
+                v = offset[i] - a;
+                length2 += v * v;
+            }
+            if (length1 > 1 || length2 > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getVolume()
+     */
+    public double getVolume() {
+        double volume = Math.pow(2.0, dimension - 1) / dimension * Math.PI;
+        for (int i = 0; i < dimension; i++) {
+            volume *= stretch[i];
+        }
+        return volume;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#crossover(xcsf.classifier.Condition)
+     */
+    public void crossover(Condition otherCondition) {
+        ConditionGivensEllipsoid other = (ConditionGivensEllipsoid) otherCondition;
+        if (XCSFUtils.Random.uniRand() < XCSFConstants.pX) {
+            // center
+            for (int i = 0; i < dimension; i++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    XCSFUtils.flip(i, this.center, other.center);
+                }
+            }
+            // stretch
+            for (int i = 0; i < dimension; i++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    XCSFUtils.flip(i, this.stretch, other.stretch);
+                }
+            }
+            // rotations, i.e. plane and angle
+            for (int r = 0; r < this.angle.length && r < other.angle.length; r++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    for (int p = 2 * r; p < 2 * r + 2; p++) {
+                        int tmp = this.planes[p];
+                        this.planes[p] = other.planes[p];
+                        other.planes[p] = tmp;
+                    }
+                    XCSFUtils.flip(r, this.angle, other.angle);
+                    XCSFUtils.flip(r, this.cos, other.cos);
+                    XCSFUtils.flip(r, this.sin, other.sin);
+                }
+            }
+            this.boundingRadius = this.getBoundingRadius();
+            other.boundingRadius = other.getBoundingRadius();
+            this.conditionSequence = other.conditionSequence = NO_SEQUENCE;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#mutation()
+     */
+    public void mutation() {
+        double probability = XCSFConstants.pM / (2 * dimension + angle.length);
+        boolean changed = false;
+        // first, mutate the center: relative to shape & size
+        double[] tmpMutation = Workspace.get().mutationVector(dimension);
+        for (int i = 0; i < dimension; i++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                changed = true;
+                // rnd in [-1,1) times stretch
+                tmpMutation[i] = ((2.0 * XCSFUtils.Random.uniRand()) - 1.0)
+                        * stretch[i];
+            } else {
+                tmpMutation[i] = 0;
+            }
+        }
+        if (changed) {
+            // rotate into the shape of the hyperellipsoid
+            this.rotate(tmpMutation);
+            for (int i = 0; i < dimension; i++) {
+                center[i] += tmpMutation[i];
+                if (center[i] < LOWER_BOUND) {
+                    center[i] = LOWER_BOUND;
+                } else if (center[i] > UPPER_BOUND) {
+                    center[i] = UPPER_BOUND;
+                }
+            }
+        }
+
+        // second, mutate the stretch: uni-rnd between 50% and 200% of stretch
+        for (int i = 0; i < dimension; i++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                changed = true;
+                double rnd = 1.0;
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    // enlarge (up to twice the stretch)
+                    rnd += XCSFUtils.Random.uniRand();
+                } else {
+                    // shrink (down to half the stretch)
+                    rnd -= 0.5 * XCSFUtils.Random.uniRand();
+                }
+                // rnd [0.5 : 2]
+                stretch[i] *= rnd; // no bound check necessary
+            }
+        }
+
+        // mutate angles, max 45°
+        for (int r = 0; r < angle.length; r++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                changed = true;
+                // max rotation: PI/4 = 45°
+                double change = XCSFUtils.Random.uniRand() * Math.PI * 0.25;
+                angle[r] += (XCSFUtils.Random.uniRand() < 0.5) ? change
+                        : -change;
+                // stay in (human readable) bounds, although not necessary
+                if (angle[r] < LOWER_ROTATION_BOUND) {
+                    angle[r] += 2 * Math.PI; // +360°
+                } else if (angle[r] > UPPER_ROTATION_BOUND) {
+                    angle[r] -= 2 * Math.PI; // -360°
+                }
+                cos[r] = Math.cos(angle[r]);
+                sin[r] = Math.sin(angle[r]);
+            }
+        }
+        if (changed) {
+            this.boundingRadius = this.getBoundingRadius();
+            this.conditionSequence = NO_SEQUENCE; // reset activity calculation
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#equals(xcsf.classifier.Condition)
+     */
+    public boolean equals(Condition otherCondition) {
+        ConditionGivensEllipsoid other = (ConditionGivensEllipsoid) otherCondition;
+        return Arrays.equals(this.center, other.center)
+                && Arrays.equals(this.stretch, other.stretch)
+                && Arrays.equals(this.planes, other.planes)
+                && Arrays.equals(this.angle, other.angle);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "condition{center" + Arrays.toString(this.center) + " stretch"
+                + Arrays.toString(this.stretch) + " planes"
+                + Arrays.toString(this.planes) + " angles"
+                + Arrays.toString(this.angle) + "}";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#copy()
+     */
+    public Condition reproduce() {
+        ConditionGivensEllipsoid clone = new ConditionGivensEllipsoid(
+                this.dimension, this.angle.length);
+        // copy values
+        System.arraycopy(center, 0, clone.center, 0, dimension);
+        System.arraycopy(stretch, 0, clone.stretch, 0, dimension);
+        System.arraycopy(planes, 0, clone.planes, 0, planes.length);
+        System.arraycopy(angle, 0, clone.angle, 0, angle.length);
+        System.arraycopy(cos, 0, clone.cos, 0, cos.length);
+        System.arraycopy(sin, 0, clone.sin, 0, sin.length);
+        clone.boundingRadius = this.boundingRadius;
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getCenter()
+     */
+    public double[] getCenter() {
+        return this.center;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        // the extent in dimension i is the length of the i'th row of R * S,
+        // which is accumulated column by column
+        double[] axis = Workspace.get().axis(dimension);
+        Arrays.fill(lower, 0);
+        for (int j = 0; j < dimension; j++) {
+            Arrays.fill(axis, 0);
+            axis[j] = stretch[j];
+            this.rotate(axis);
+            for (int i = 0; i < dimension; i++) {
+                lower[i] += axis[i] * axis[i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            double extent = Math.sqrt(lower[i]);
+            lower[i] = center[i] - extent;
+            upper[i] = center[i] + extent;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // the longest semi-axis
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            if (stretch[i] > radius) {
+                radius = stretch[i];
+            }
+        }
+        return radius;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the relative distance is at least distance / longest semi-axis
+        double relative = distance / boundingRadius;
+        return Math.exp(-relative * relative);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#write(java.io.PrintStream,
+     * java.lang.CharSequence)
+     */
+    public void write(PrintStream out, CharSequence separator) {
+        StringBuffer s = new StringBuffer();
+        s.append(this.dimension);
+        s.append(separator);
+        s.append(Arrays.toString(this.center));
+        s.append(separator);
+        s.append(Arrays.toString(this.stretch));
+        s.append(separator);
+        s.append(this.angle.length);
+        s.append(separator);
+        s.append(Arrays.toString(this.planes));
+        s.append(separator);
+        s.append(Arrays.toString(this.angle));
+        out.print(s);
+    }
+
+    /**
+     * Returns the stretch of this condition.
+     * 
+     * @return the stretch
+     */
+    public double[] getStretch() {
+        return this.stretch;
+    }
+
+    /**
+     * Returns the rotation planes of this condition, where rotation
+     * <tt>r</tt> rotates the plane <tt>(planes[2r], planes[2r+1])</tt>.
+     * 
+     * @return the planes
+     */
+    public int[] getPlanes() {
+        return this.planes;
+    }
+
+    /**
+     * Returns the rotation angles of this condition.
+     * 
+     * @return the angles
+     */
+    public double[] getAngles() {
+        return this.angle;
+    }
+
+    /**
+     * Computes the sine and cosine of all angles and the bounding radius.
+     */
+    private void recalculateRotations() {
+        for (int r = 0; r < angle.length; r++) {
+            cos[r] = Math.cos(angle[r]);
+            sin[r] = Math.sin(angle[r]);
+        }
+        this.boundingRadius = getBoundingRadius();
+        this.conditionSequence = NO_SEQUENCE; // reset activity calculation
+    }
+
+    /**
+     * Rotates the given vector in place, i.e. <tt>vector = R * vector</tt>.
+     * 
+     * @param vector
+     *            the vector to rotate
+     */
+    private void rotate(double[] vector) {
+        for (int r = angle.length - 1; r >= 0; r--) {
+            int i = planes[2 * r], j = planes[2 * r + 1];
+            double xi = vector[i], xj = vector[j];
+            vector[i] = cos[r] * xi - sin[r] * xj;
+            vector[j] = sin[r] * xi + cos[r] * xj;
+        }
+    }
+
+    /**
+     * Rotates the given vector in place by the inverse rotation, i.e.
+     * <tt>vector = R^T * vector</tt>.
+     * 
+     * @param vector
+     *            the vector to rotate
+     */
+    private void rotateInverse(double[] vector) {
+        for (int r = 0; r < angle.length; r++) {
+            int i = planes[2 * r], j = planes[2 * r + 1];
+            double xi = vector[i], xj = vector[j];
+            vector[i] = cos[r] * xi + sin[r] * xj;
+            vector[j] = -sin[r] * xi + cos[r] * xj;
+        }
+    }
+
+    /**
+     * This method calculates the distance from the center to <code>point</code>
+     * , where the distance is...
+     * <ul>
+     * <li>0, iff center == point
+     * <li>0 > x > 1, iff this hyperellipsoid contains point
+     * <li>1, iff point lies on the hyperellipsoid surface
+     * <li>x > 1 else
+     * </ul>
+     * 
+     * If <code>rejectEarly</code> is set, the distance to the center is first
+     * compared with the longest semi-axis (bounding sphere) and a lower bound
+     * greater than one is returned for points outside of the sphere.
+     * 
+     * @param point
+     *            the condition input
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for points
+     *            outside of this hyperellipsoid
+     * @return the relative distance
+     */
+    private double calculateRelativeSquaredDistance(double[] point,
+            boolean rejectEarly) {
+        double[] diff = Workspace.get().vector(dimension);
+        double centerDistance = 0;
+        for (int i = 0; i < dimension; i++) {
+            diff[i] = point[i] - center[i];
+            centerDistance += diff[i] * diff[i];
+        }
+        if (rejectEarly) {
+            // margin for rounding errors at the surface
+            double bound = centerDistance / (boundingRadius * boundingRadius);
+            if (bound > 1 + REJECTION_MARGIN) {
+                return bound;
+            }
+        }
+        // ellipsoidal coordinate system -> default coordinate system
+        this.rotateInverse(diff);
+        double dist = 0;
+        for (int i = 0; i < dimension; i++) {
+            double x = diff[i] / stretch[i];
+            dist += x * x;
+        }
+        return dist;
+    }
+}
@@ -19,10 +19,10 @@ public class ConditionRectangle implements Condition {
     private double[] stretch;
 
     // to avoid multiple calculations for one state
-    private double[] conditionInput;
+    private long conditionSequence = NO_SEQUENCE;
     private double maxDistance;
-    // to avoid mem-alloc for matching
-    private double[] tmpArray;
+    // false, if maxDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
 
     /**
      * Default constructor for covering.
@@ -67,7 +67,6 @@ public class ConditionRectangle implements Condition {
         this.dimension = dimension;
         this.center = new double[dimension];
         this.stretch = new double[dimension];
-        this.tmpArray = new double[dimension];
     }
 
     /*
@@ -76,10 +75,20 @@ public class ConditionRectangle implements Condition {
      * @see xcsf.classifier.Condition#doesMatch(double[])
      */
     public boolean doesMatch(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.calculateMaxDistance(input);
-            // store input to avoid overhead
-            this.conditionInput = input;
+        return this.doesMatch(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.calculateMaxDistance(input, true);
+            this.exactDistance = this.maxDistance < 1;
+            // store the sequence number to avoid overhead
+            this.conditionSequence = sequence;
         }
         return this.maxDistance < 1;
     }
@@ -90,10 +99,21 @@ public class ConditionRectangle implements Condition {
      * @see xcsf.classifier.Condition#getActivity(double[])
      */
     public double getActivity(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.calculateMaxDistance(input);
-            // store input to reduce overhead
-            this.conditionInput = input;
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.calculateMaxDistance(input, false);
+            this.exactDistance = true;
+            // store the sequence number to reduce overhead
+            this.conditionSequence = sequence;
         }
         return Math.exp(-this.maxDistance);
     }
@@ -238,6 +258,42 @@ public class ConditionRectangle implements Condition {
         return this.center;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        for (int i = 0; i < dimension; i++) {
+            lower[i] = center[i] - stretch[i];
+            upper[i] = center[i] + stretch[i];
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // distance from the center to a corner
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            radius += stretch[i] * stretch[i];
+        }
+        return Math.sqrt(radius);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the maximum relative distance is at least distance / corner distance
+        return Math.exp(-distance / boundingRadius);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -266,22 +322,27 @@ public class ConditionRectangle implements Condition {
     /**
      * Computes the relative distance to this condition. The distance is zero at
      * the center, one on the border and greater one outside the rectangle.
+     * If <code>rejectEarly</code> is set, the remaining dimensions are
+     * skipped, once a relative distance reaches one.
      * 
      * @param input
      *            the input for this condition
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for inputs
+     *            outside of this hyperrectangle
      */
-    private void calculateMaxDistance(double[] input) {
-        // vector from center -> point, divided by stretch
-        for (int i = 0; i < dimension; i++) {
-            tmpArray[i] = input[i] - center[i];
-            tmpArray[i] /= stretch[i];
-        }
-        // calculate max distance
+    private void calculateMaxDistance(double[] input, boolean rejectEarly) {
         this.maxDistance = 0;
         for (int i = 0; i < dimension; i++) {
-            double relativeDist = Math.abs(tmpArray[i]);
+            // vector from center -> point, divided by stretch
+            double relativeDist = input[i] - center[i];
+            relativeDist /= stretch[i];
+            relativeDist = Math.abs(relativeDist);
             if (relativeDist > this.maxDistance) {
                 this.maxDistance = relativeDist;
+                if (rejectEarly && relativeDist >= 1) {
+                    return;
+                }
             }
         }
     }
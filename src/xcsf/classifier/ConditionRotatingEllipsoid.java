@@ -31,11 +31,8 @@ import xcsf.XCSFUtils;
  */
 public class ConditionRotatingEllipsoid implements Condition {
 
-    // temporary arrays to avoid mem alloc.
-    private static double[] tmpArray2;
-    private static double[][] tmpSingleRotation;
-    private static double[][] tmpTransformation;
-    private static double[][] tmpMatrix;
+    // safety margin for rounding errors of the bounding sphere test
+    private final static double REJECTION_MARGIN = 1e-9;
 
     // center, stretch & engles define location & shape of this hyperellipsoid
     private int dimension;
@@ -47,10 +44,14 @@ public class ConditionRotatingEllipsoid implements Condition {
     private double[][] inverseTransform;
     // flag to indicate changes in center/stretch/angle => recalculate transf.
     private boolean changed;
+    // longest semi-axis, derived together with the transformation matrices
+    private double boundingRadius;
 
     // to avoid multiple calculations for one state
-    private double[] conditionInput;
+    private long conditionSequence = NO_SEQUENCE;
     private double squareDistance;
+    // false, if squareDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
     // to avoid mem-alloc for matching
     private double[] tmpArray1;
 
@@ -63,8 +64,6 @@ public class ConditionRotatingEllipsoid implements Condition {
      */
     public ConditionRotatingEllipsoid(double[] conditionInput) {
         this(conditionInput.length);
-        // static initializer only for covering, not for cloning
-        init(dimension);
 
         // center matches input
         for (int i = 0; i < dimension; i++) {
@@ -94,12 +93,12 @@ public class ConditionRotatingEllipsoid implements Condition {
      */
     public ConditionRotatingEllipsoid(String[] args) {
         this(Integer.parseInt(args[0]));
-        init(this.dimension);
         this.center = XCSFUtils.FileIO.parseDoubleArray(args[1]);
         this.stretch = XCSFUtils.FileIO.parseDoubleArray(args[2]);
         this.angle = XCSFUtils.FileIO.parseDoubleArray(args[3]);
         this.inverseTransform = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
         this.transform = XCSFUtils.FileIO.parse2dDoubleArray(args[5]);
+        this.boundingRadius = getBoundingRadius();
     }
 
     /**
@@ -120,23 +119,150 @@ public class ConditionRotatingEllipsoid implements Condition {
     }
 
     /**
-     * Initializer for static arrays. Called for matching and parsing only, not
-     * for cloning.
+     * Benchmark of the early rejection in {@link #doesMatch(double[])}: for
+     * 5, 10, 15 and 20 input dimensions, random inputs are matched against
+     * covering conditions with random centers, once with the bounding sphere
+     * test and the early exit and once with the full distance. Reports the
+     * fraction of tests that were rejected by the bounding sphere, rejected
+     * by the early exit or computed completely, the multiply-adds per test
+     * and the fastest time per test out of five runs. Exits with status 1,
+     * if any match result differs from the full distance.
+     *
+     * @param args
+     *            the settings file (default <tt>xcsf.ini</tt>), optionally
+     *            the number of conditions and the number of inputs
+     */
+    public static void main(String[] args) {
+        XCSFConstants.load(args.length > 0 ? args[0] : "xcsf.ini");
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 3200;
+        int inputs = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int[] dimensions = { 5, 10, 15, 20 };
+        long tests = (long) size * inputs;
+        boolean same = true;
+        System.out.println("dim match%  sphere%  exit%   full%   "
+                + "madds/test (early/full)  ns/test (early/full)");
+        for (int dim : dimensions) {
+            XCSFUtils.Random.setSeed(XCSFConstants.initialSeed);
+            ConditionRotatingEllipsoid[] conditions = new ConditionRotatingEllipsoid[size];
+            for (int c = 0; c < size; c++) {
+                conditions[c] = new ConditionRotatingEllipsoid(
+                        randomPoint(dim));
+            }
+            double[][] points = new double[inputs][];
+            for (int p = 0; p < inputs; p++) {
+                points[p] = randomPoint(dim);
+            }
+            // rejection statistics, compared with the full distance
+            int fullMultiplyAdds = dim * (dim + 1);
+            long matches = 0, sphere = 0, exit = 0, multiplyAdds = 0;
+            for (int c = 0; c < size; c++) {
+                for (int p = 0; p < inputs; p++) {
+                    ConditionRotatingEllipsoid condition = conditions[c];
+                    boolean match = condition.calculateRelativeSquaredDistance(
+                            points[p], false) < 1;
+                    if (condition.doesMatch(points[p]) != match) {
+                        same = false;
+                    }
+                    int count = condition.countMultiplyAdds(points[p]);
+                    multiplyAdds += count;
+                    if (match) {
+                        matches++;
+                    } else if (count == dim) {
+                        sphere++;
+                    } else if (count < dim + fullMultiplyAdds) {
+                        exit++;
+                    }
+                }
+            }
+            // timings, the first run warms up
+            long early = Long.MAX_VALUE, full = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++) {
+                long earlyMatches = 0, fullMatches = 0;
+                long time = System.nanoTime();
+                for (int c = 0; c < size; c++) {
+                    for (int p = 0; p < inputs; p++) {
+                        if (conditions[c].calculateRelativeSquaredDistance(
+                                points[p], true) < 1) {
+                            earlyMatches++;
+                        }
+                    }
+                }
+                early = Math.min(early, System.nanoTime() - time);
+                time = System.nanoTime();
+                for (int c = 0; c < size; c++) {
+                    for (int p = 0; p < inputs; p++) {
+                        if (conditions[c].calculateRelativeSquaredDistance(
+                                points[p], false) < 1) {
+                            fullMatches++;
+                        }
+                    }
+                }
+                full = Math.min(full, System.nanoTime() - time);
+                same &= earlyMatches == matches && fullMatches == matches;
+            }
+            System.out.println(String.format(
+                    "%3d %6.2f %7.2f %7.2f %7.2f %11.1f / %-11d %8.1f / %.1f",
+                    dim, 100.0 * matches / tests, 100.0 * sphere / tests,
+                    100.0 * exit / tests, 100.0
+                            * (tests - matches - sphere - exit) / tests,
+                    (double) multiplyAdds / tests, fullMultiplyAdds,
+                    (double) early / tests, (double) full / tests));
+        }
+        if (!same) {
+            System.out.println("DIFFERENT match results");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Returns a random point in the input space.
      * 
      * @param dimension
+     *            the dimension of the input space
+     * @return the new point
      */
-    private static void init(int dimension) {
-        if (tmpArray2 == null || tmpArray2.length != dimension) {
-            tmpArray2 = new double[dimension];
-            tmpMatrix = new double[dimension][dimension];
-            tmpTransformation = new double[dimension + 1][dimension + 1];
-            tmpSingleRotation = new double[dimension][dimension];
-            for (int i = 0; i < dimension; i++) {
-                for (int j = 0; j < dimension; j++) {
-                    tmpSingleRotation[i][j] = (i != j) ? 0 : 1;
-                }
+    private static double[] randomPoint(int dimension) {
+        double[] point = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            point[i] = LOWER_BOUND + XCSFUtils.Random.uniRand()
+                    * (UPPER_BOUND - LOWER_BOUND);
+        }
+        return point;
+    }
+
+    /**
+     * Counts the multiply-adds of
+     * {@link #calculateRelativeSquaredDistance(double[], boolean)} with early
+     * rejection for the given point: <tt>d</tt> for the bounding sphere test
+     * and <tt>d+1</tt> for every row of the exact distance.
+     * 
+     * @param point
+     *            the condition input
+     * @return the number of multiply-adds
+     */
+    private int countMultiplyAdds(double[] point) {
+        double centerDistance = 0;
+        for (int i = 0; i < dimension; i++) {
+            double d = point[i] - center[i];
+            centerDistance += d * d;
+        }
+        double bound = centerDistance / (boundingRadius * boundingRadius);
+        if (bound > 1 + REJECTION_MARGIN) {
+            return dimension;
+        }
+        double dist = 0;
+        int rows = 0;
+        while (rows < dimension && dist < 1) {
+            double[] row = inverseTransform[rows];
+            double x = row[0] * point[0];
+            for (int j = 1; j < dimension; j++) {
+                x += row[j] * point[j];
             }
+            x += row[dimension];
+            dist += x * x;
+            rows++;
         }
+        return dimension + rows * (dimension + 1);
     }
 
     /*
@@ -145,9 +271,19 @@ public class ConditionRotatingEllipsoid implements Condition {
      * @see xcsf.classifier.Condition#doesMatch(double[])
      */
     public boolean doesMatch(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.squareDistance = calculateRelativeSquaredDistance(input);
-            this.conditionInput = input;
+        return this.doesMatch(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, true);
+            this.exactDistance = this.squareDistance < 1;
+            this.conditionSequence = sequence;
         }
         return this.squareDistance < 1;
     }
@@ -158,9 +294,20 @@ public class ConditionRotatingEllipsoid implements Condition {
      * @see xcsf.classifier.Condition#getActivity(double[])
      */
     public double getActivity(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.squareDistance = calculateRelativeSquaredDistance(input);
-            this.conditionInput = input;
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, false);
+            this.exactDistance = true;
+            this.conditionSequence = sequence;
         }
         return Math.exp(-this.squareDistance);
     }
@@ -177,6 +324,8 @@ public class ConditionRotatingEllipsoid implements Condition {
         // resulting transformation maps the unit sphere to the
         // other ellipsoid and from the coordinate system of this
         // ellipsoid back to the unit sphere.
+        double[][] tmpTransformation = Workspace.get().transformation(
+                dimension);
         XCSFUtils.Matrix.multiply(this.inverseTransform, other.transform,
                 tmpTransformation, dimension + 1);
 
@@ -268,6 +417,7 @@ public class ConditionRotatingEllipsoid implements Condition {
         }
         // now tmpArray1 contains mutation vector for center
         if (this.changed) {
+            double[] tmpArray2 = Workspace.get().vector(dimension);
             // multiply with transformation matrix without translation part
             XCSFUtils.Matrix.multiply(this.transform, tmpArray1, tmpArray2,
                     dimension);
@@ -373,6 +523,7 @@ public class ConditionRotatingEllipsoid implements Condition {
             System.arraycopy(inverseTransform[i], 0, clone.inverseTransform[i],
                     0, dimension + 1);
         }
+        clone.boundingRadius = this.boundingRadius;
         return clone;
     }
 
@@ -385,6 +536,52 @@ public class ConditionRotatingEllipsoid implements Condition {
         return this.center;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        // the unit sphere is mapped by the transformation, thus the extent
+        // in dimension i is the length of the i'th row (without translation)
+        for (int i = 0; i < dimension; i++) {
+            double extent = 0;
+            for (int j = 0; j < dimension; j++) {
+                extent += transform[i][j] * transform[i][j];
+            }
+            extent = Math.sqrt(extent);
+            lower[i] = center[i] - extent;
+            upper[i] = center[i] + extent;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // the longest semi-axis
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            if (stretch[i] > radius) {
+                radius = stretch[i];
+            }
+        }
+        return radius;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the relative distance is at least distance / longest semi-axis
+        double relative = distance / boundingRadius;
+        return Math.exp(-relative * relative);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -450,11 +647,11 @@ public class ConditionRotatingEllipsoid implements Condition {
      * re-calculation.
      */
     public void recalculateTransformationMatrix() {
-        setInverseTransform(this.inverseTransform, center, stretch, angle,
-                dimension);
-        setTransform(this.transform, center, stretch, angle, dimension);
+        setTransforms(this.transform, this.inverseTransform, center, stretch,
+                angle, dimension);
+        this.boundingRadius = getBoundingRadius();
         this.changed = false;
-        this.conditionInput = null; // reset activity calculation
+        this.conditionSequence = NO_SEQUENCE; // reset activity calculation
     }
 
     /**
@@ -467,23 +664,95 @@ public class ConditionRotatingEllipsoid implements Condition {
      * <li>x > 1 else
      * </ul>
      * 
+     * If <code>rejectEarly</code> is set, the calculation stops as soon as
+     * the point is known to lie outside: first, the distance to the center is
+     * compared with the longest semi-axis (bounding sphere), which requires
+     * <tt>d</tt> instead of <tt>d*(d+1)</tt> multiply-adds. Second, the
+     * squared distance is accumulated row by row and the remaining rows are
+     * skipped, once the partial sum reaches one. In both cases, a lower bound
+     * greater or equal to one is returned.
+     * 
      * @param point
      *            the condition input
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for points
+     *            outside of this hyperellipsoid
      * @return the relative distance
      */
-    private double calculateRelativeSquaredDistance(double[] point) {
+    private double calculateRelativeSquaredDistance(double[] point,
+            boolean rejectEarly) {
+        if (rejectEarly) {
+            double centerDistance = 0;
+            for (int i = 0; i < dimension; i++) {
+                double d = point[i] - center[i];
+                centerDistance += d * d;
+            }
+            // margin for rounding errors at the surface
+            double bound = centerDistance / (boundingRadius * boundingRadius);
+            if (bound > 1 + REJECTION_MARGIN) {
+                return bound;
+            }
+        }
         // use inverse transformation:
         // ellipsoidal coodrinate system -> default coordinate system
-        XCSFUtils.Matrix.multiplyExtended(inverseTransform, point, tmpArray1,
-                dimension);
-        // return sqared distance to the unit-sphere center
+        // (same operations as XCSFUtils.Matrix.multiplyExtended)
         double dist = 0;
         for (int i = 0; i < dimension; i++) {
-            dist += tmpArray1[i] * tmpArray1[i];
+            double[] row = inverseTransform[i];
+            double x = row[0] * point[0];
+            for (int j = 1; j < dimension; j++) {
+                x += row[j] * point[j];
+            }
+            // translation
+            x += row[dimension];
+            // sqared distance to the unit-sphere center
+            dist += x * x;
+            if (rejectEarly && dist >= 1) {
+                return dist;
+            }
         }
         return dist;
     }
 
+    /**
+     * Sets <code>transform</code> and <code>inverseTransform</code> to the
+     * ellipsoidal transformation matrix and its inverse. The sine and cosine of
+     * every angle are computed once for both matrices.
+     * 
+     * @param transform
+     *            the destination matrix of size (<code>dim+1</code> x
+     *            <code>dim+1</code>), which will hold the transformation
+     * @param inverseTransform
+     *            the destination matrix of size (<code>dim+1</code> x
+     *            <code>dim+1</code>), which will hold the inverse
+     *            transformation
+     * @param center
+     *            the center of the ellipsoid
+     * @param stretch
+     *            the stretch of the ellipsoid
+     * @param angle
+     *            the rotation angles of the ellipsoid
+     * @param dim
+     *            the dimension of the coordinate system
+     * @see #setTransform(double[][], double[], double[], double[], double[],
+     *      int)
+     * @see #setInverseTransform(double[][], double[], double[], double[],
+     *      double[], int)
+     */
+    static void setTransforms(double[][] transform,
+            double[][] inverseTransform, double[] center, double[] stretch,
+            double[] angle, int dim) {
+        Workspace workspace = Workspace.get();
+        double[] cos = workspace.cosines(angle.length);
+        double[] sin = workspace.sines(angle.length);
+        for (int a = 0; a < angle.length; a++) {
+            cos[a] = Math.cos(angle[a]);
+            sin[a] = Math.sin(angle[a]);
+        }
+        setInverseTransform(inverseTransform, center, stretch, cos, sin, dim);
+        setTransform(transform, center, stretch, cos, sin, dim);
+    }
+
     /**
      * Sets <code>matrix</code> to the ellipsoidal transformation matrix, i.e. a
      * matrix of size (<code>dim+1</code> x <code>dim+1</code>) with
@@ -497,6 +766,11 @@ public class ConditionRotatingEllipsoid implements Condition {
      * system into the ellipsoidal coordinate system (origin =
      * <code>center</code>, scaled with <code>stretch</code> and rotated by
      * <code>angle</code>).
+     * <p>
+     * A single rotation in the plane <tt>(i,j)</tt> changes the columns
+     * <tt>i</tt> and <tt>j</tt> only, thus it is applied in place with
+     * <tt>O(dim)</tt> operations. The sums are the same as for a full matrix
+     * multiplication, where the remaining products are zero.
      * 
      * @param matrix
      *            the destination matrix of size (<code>dim+1</code> x
@@ -505,13 +779,15 @@ public class ConditionRotatingEllipsoid implements Condition {
      *            the center of the ellipsoid
      * @param stretch
      *            the stretch of the ellipsoid
-     * @param angle
-     *            the rotation angles of the ellipsoid
+     * @param cos
+     *            the cosines of the rotation angles of the ellipsoid
+     * @param sin
+     *            the sines of the rotation angles of the ellipsoid
      * @param dim
      *            the dimension of the coordinate system
      */
     private static void setTransform(double[][] matrix, double[] center,
-            double[] stretch, double[] angle, int dim) {
+            double[] stretch, double[] cos, double[] sin, int dim) {
         // matrix = translation * rotation * stretch
         // 1. set identity & translation
         for (int i = 0; i < dim; i++) {
@@ -527,26 +803,20 @@ public class ConditionRotatingEllipsoid implements Condition {
         matrix[dim][dim] = 1;
 
         // 2. rotation
-        int a = angle.length - 1; // angle index
+        int a = cos.length - 1; // angle index
         for (int i = dim - 1; i >= 0; i--) {
             for (int j = dim - 1; j > i; j--) {
-                // singleRotation == identity at this point.
-                tmpSingleRotation[i][i] = tmpSingleRotation[j][j] = Math
-                        .cos(angle[a]);
-                tmpSingleRotation[i][j] = -Math.sin(angle[a]);
-                tmpSingleRotation[j][i] = -tmpSingleRotation[i][j];
-
-                // multiply transformation with singlerotation
-                XCSFUtils.Matrix.multiply(matrix, tmpSingleRotation, tmpMatrix,
-                        dim);
-                XCSFUtils.Matrix.copyMatrix(tmpMatrix, matrix, dim);
+                // multiply transformation with the single rotation
+                // ( cos -sin )
+                // ( sin  cos ) in rows/columns i and j
+                double c = cos[a], s = sin[a];
+                for (int row = 0; row < dim; row++) {
+                    double[] m = matrix[row];
+                    double mi = m[i], mj = m[j];
+                    m[i] = mi * c + mj * s;
+                    m[j] = mi * -s + mj * c;
+                }
                 a--;
-
-                // reset singleRotation to identity
-                tmpSingleRotation[i][i] = 1.0;
-                tmpSingleRotation[i][j] = 0.0;
-                tmpSingleRotation[j][i] = 0.0;
-                tmpSingleRotation[j][j] = 1.0;
             }
         }
 
@@ -572,6 +842,10 @@ public class ConditionRotatingEllipsoid implements Condition {
      * coordinate system (origin = <code>center</code>, scaled with
      * <code>stretch</code> and rotated by <code>angle</code>) into the default
      * coordinate system (zero origin, identity stretch and no rotation).
+     * <p>
+     * The single rotations are applied in place, see
+     * {@link #setTransform(double[][], double[], double[], double[], double[], int)}
+     * .
      * 
      * @param matrix
      *            the destination matrix of size (<code>dim+1</code> x
@@ -581,13 +855,16 @@ public class ConditionRotatingEllipsoid implements Condition {
      *            the center of the ellipsoid
      * @param stretch
      *            the stretch of the ellipsoid
-     * @param angle
-     *            the rotation angles of the ellipsoid
+     * @param cos
+     *            the cosines of the rotation angles of the ellipsoid
+     * @param sin
+     *            the sines of the rotation angles of the ellipsoid
      * @param dim
      *            the dimension of the coordinate system
      */
-    private static void setInverseTransform(double[][] matrix, double[] center,
-            double[] stretch, double[] angle, int dim) {
+    private static void setInverseTransform(double[][] matrix,
+            double[] center, double[] stretch, double[] cos, double[] sin,
+            int dim) {
         // matrix = stretch^-1 * rotation^-1 * translation^-1
         // 1. set identity & inverse stretch
         for (int i = 0; i < dim; i++) {
@@ -604,23 +881,17 @@ public class ConditionRotatingEllipsoid implements Condition {
         int a = 0; // angle index
         for (int i = 0; i < dim; i++) {
             for (int j = i + 1; j < dim; j++) {
-                // singleRotation == identity at this point.
-                tmpSingleRotation[i][i] = tmpSingleRotation[j][j] = Math
-                        .cos(angle[a]);
-                tmpSingleRotation[i][j] = Math.sin(angle[a]);
-                tmpSingleRotation[j][i] = -tmpSingleRotation[i][j];
-
-                // multiply inverseTransformation with singlerotation
-                XCSFUtils.Matrix.multiply(matrix, tmpSingleRotation, tmpMatrix,
-                        dim);
-                XCSFUtils.Matrix.copyMatrix(tmpMatrix, matrix, dim);
+                // multiply inverseTransformation with the single rotation
+                // (  cos sin )
+                // ( -sin cos ) in rows/columns i and j
+                double c = cos[a], s = sin[a];
+                for (int row = 0; row < dim; row++) {
+                    double[] m = matrix[row];
+                    double mi = m[i], mj = m[j];
+                    m[i] = mi * c + mj * -s;
+                    m[j] = mi * s + mj * c;
+                }
                 a++;
-
-                // reset singleRotation to identity
-                tmpSingleRotation[i][i] = 1.0;
-                tmpSingleRotation[i][j] = 0.0;
-                tmpSingleRotation[j][i] = 0.0;
-                tmpSingleRotation[j][j] = 1.0;
             }
         }
 
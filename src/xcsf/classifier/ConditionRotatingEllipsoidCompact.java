@@ -0,0 +1,609 @@
+package xcsf.classifier;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import xcsf.XCSFConstants;
+import xcsf.XCSFUtils;
+
+/**
+ * Compact variant of {@link ConditionRotatingEllipsoid}, which stores the
+ * stretch, the angles and the transformation matrices as <code>float</code>.
+ * The matrices are stored in flat arrays without the constant last row
+ * <tt>(0,...,0,1)</tt>, i.e. entry <tt>(i,j)</tt> is found at index
+ * <tt>i*(dimension+1)+j</tt>. This reduces the memory requirement of a
+ * condition to less than half, which allows for larger populations.
+ * <p>
+ * The center is kept in double precision (see {@link #getCenter()}). All
+ * computations (transformations, distances, generality) are carried out in
+ * double precision and only the results are rounded to <code>float</code>.
+ * Thus, match results differ from the double precision implementation only
+ * for inputs very close to the surface (relative error of about
+ * <tt>1e-7</tt>).
+ * <p>
+ * Populations are written in the same format as
+ * {@link ConditionRotatingEllipsoid}, including the full matrices. Thus, a
+ * written population can be parsed by both implementations.
+ */
+public class ConditionRotatingEllipsoidCompact implements Condition {
+
+    // safety margin for rounding errors of the bounding sphere test
+    private final static double REJECTION_MARGIN = 1e-6;
+
+    // center, stretch & engles define location & shape of this hyperellipsoid
+    private int dimension;
+    private double[] center;
+    private float[] stretch;
+    private float[] angle;
+    // derived transformation matrices, first dimension rows only
+    private float[] transform;
+    private float[] inverseTransform;
+    // flag to indicate changes in center/stretch/angle => recalculate transf.
+    private boolean changed;
+    // longest semi-axis, derived together with the transformation matrices
+    private double boundingRadius;
+
+    // to avoid multiple calculations for one state
+    private long conditionSequence = NO_SEQUENCE;
+    private double squareDistance;
+    // false, if squareDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
+
+    /**
+     * Default constructor for covering creates a condition, that matches the
+     * given <code>conditionInput</code>.
+     * 
+     * @param conditionInput
+     *            the input for this condition
+     */
+    public ConditionRotatingEllipsoidCompact(double[] conditionInput) {
+        this(conditionInput.length);
+        // center matches input
+        for (int i = 0; i < dimension; i++) {
+            center[i] = conditionInput[i];
+        }
+        // random stretch between min and min+range
+        for (int i = 0; i < dimension; i++) {
+            stretch[i] = (float) (XCSFConstants.minConditionStretch + XCSFUtils.Random
+                    .uniRand()
+                    * XCSFConstants.coverConditionRange);
+        }
+        // random angle
+        for (int i = 0; i < this.angle.length; i++) {
+            angle[i] = (float) (XCSFUtils.Random.uniRand() * 2.0 * Math.PI);
+        }
+
+        // init transformation matrices
+        this.recalculateTransformationMatrix();
+    }
+
+    /**
+     * Parses the given String array. For details, how this constructor is
+     * called, see {@link Classifier#parse(String, String, String)}. The format
+     * equals the one of {@link ConditionRotatingEllipsoid}.
+     * 
+     * @param args
+     *            the splited String
+     */
+    public ConditionRotatingEllipsoidCompact(String[] args) {
+        this(Integer.parseInt(args[0]));
+        this.center = XCSFUtils.FileIO.parseDoubleArray(args[1]);
+        toFloat(XCSFUtils.FileIO.parseDoubleArray(args[2]), this.stretch);
+        toFloat(XCSFUtils.FileIO.parseDoubleArray(args[3]), this.angle);
+        toFloat(XCSFUtils.FileIO.parse2dDoubleArray(args[4]),
+                this.inverseTransform);
+        toFloat(XCSFUtils.FileIO.parse2dDoubleArray(args[5]), this.transform);
+        this.boundingRadius = getBoundingRadius();
+    }
+
+    /**
+     * Private alternative constructor for cloning and parsing.
+     * 
+     * @param dimension
+     *            the dimensionality of this condition
+     */
+    private ConditionRotatingEllipsoidCompact(int dimension) {
+        this.dimension = dimension;
+        this.center = new double[dimension];
+        this.stretch = new float[dimension];
+        this.angle = new float[dimension * (dimension - 1) / 2];
+        // derived: the transformation matrices of this hyperellipsoid
+        this.transform = new float[dimension * (dimension + 1)];
+        this.inverseTransform = new float[dimension * (dimension + 1)];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[])
+     */
+    public boolean doesMatch(double[] input) {
+        return this.doesMatch(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
+     */
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, true);
+            this.exactDistance = this.squareDistance < 1;
+            this.conditionSequence = sequence;
+        }
+        return this.squareDistance < 1;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[])
+     */
+    public double getActivity(double[] input) {
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.squareDistance = calculateRelativeSquaredDistance(input, false);
+            this.exactDistance = true;
+            this.conditionSequence = sequence;
+        }
+        return Math.exp(-this.squareDistance);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#isMoreGeneral(xcsf.classifier.Condition)
+     */
+    public boolean isMoreGeneral(Condition otherCondition) {
+        ConditionRotatingEllipsoidCompact other = (ConditionRotatingEllipsoidCompact) otherCondition;
+        // see ConditionRotatingEllipsoid: this inverse transformation
+        // multiplied with the other transformation maps the unit sphere to
+        // the other ellipsoid in the coordinate system of this ellipsoid.
+        int n = dimension + 1;
+        double[][] tmpTransformation = Workspace.get().transformation(
+                dimension);
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < n; j++) {
+                // last row of the other transformation is (0,...,0,1)
+                double sum = (j == dimension) ? inverseTransform[i * n
+                        + dimension] : 0;
+                for (int k = 0; k < dimension; k++) {
+                    sum += (double) inverseTransform[i * n + k]
+                            * other.transform[k * n + j];
+                }
+                tmpTransformation[i][j] = sum;
+            }
+        }
+
+        // check, if resulting transformation stays in unit sphere,
+        // i.e. length of unit vector for each dim < 1
+        for (int dim = 0; dim < dimension; dim++) {
+            double length1 = 0, length2 = 0;
+            for (int row = 0; row < dimension; row++) {
+                // positive unit vector
+                double v = tmpTransformation[row][dim]
+                        + tmpTransformation[row][dimension];
+                length1 += v * v;
+                // negative unit vector
+                v = -tmpTransformation[row][dim]
+                        + tmpTransformation[row][dimension];
+                length2 += v * v;
+            }
+            if (length1 > 1 || length2 > 1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getVolume()
+     */
+    public double getVolume() {
+        double volume = Math.pow(2.0, dimension - 1) / dimension * Math.PI;
+        for (int i = 0; i < dimension; i++) {
+            volume *= stretch[i];
+        }
+        return volume;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#crossover(xcsf.classifier.Condition)
+     */
+    public void crossover(Condition otherCondition) {
+        ConditionRotatingEllipsoidCompact other = (ConditionRotatingEllipsoidCompact) otherCondition;
+        this.changed = other.changed = false;
+        if (XCSFUtils.Random.uniRand() < XCSFConstants.pX) {
+            // center
+            for (int i = 0; i < dimension; i++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    this.changed = other.changed = true;
+                    XCSFUtils.flip(i, this.center, other.center);
+                }
+            }
+            // stretch
+            for (int i = 0; i < dimension; i++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    this.changed = other.changed = true;
+                    float tmp = this.stretch[i];
+                    this.stretch[i] = other.stretch[i];
+                    other.stretch[i] = tmp;
+                }
+            }
+            // angles
+            for (int i = 0; i < this.angle.length; i++) {
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    this.changed = other.changed = true;
+                    float tmp = this.angle[i];
+                    this.angle[i] = other.angle[i];
+                    other.angle[i] = tmp;
+                }
+            }
+        }
+        // don't check this.changed, because mutation is called anyways!
+        // see last line of mutation() method.
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#mutation()
+     */
+    public void mutation() {
+        double probability = XCSFConstants.pM / (2 * dimension + angle.length);
+        // first, mutate the center: relative to shape & size
+        double[] tmpMutation = Workspace.get().mutationVector(dimension);
+        for (int i = 0; i < dimension; i++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                this.changed = true;
+                // rnd in [-1,1)
+                tmpMutation[i] = (2.0 * XCSFUtils.Random.uniRand()) - 1.0;
+            } else {
+                tmpMutation[i] = 0;
+            }
+        }
+        // now tmpMutation contains mutation vector for center
+        if (this.changed) {
+            int n = dimension + 1;
+            for (int i = 0; i < dimension; i++) {
+                // multiply with transformation matrix without translation
+                double change = transform[i * n] * tmpMutation[0];
+                for (int j = 1; j < dimension; j++) {
+                    change += transform[i * n + j] * tmpMutation[j];
+                }
+                center[i] += change;
+                if (center[i] < LOWER_BOUND) {
+                    center[i] = LOWER_BOUND;
+                } else if (center[i] > UPPER_BOUND) {
+                    center[i] = UPPER_BOUND;
+                }
+            }
+        }
+
+        // second, mutate the stretch: uni-rnd between 50% and 200% of stretch
+        for (int i = 0; i < dimension; i++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                this.changed = true;
+                double rnd = 1.0;
+                if (XCSFUtils.Random.uniRand() < 0.5) {
+                    // enlarge (up to twice the stretch)
+                    rnd += XCSFUtils.Random.uniRand();
+                } else {
+                    // shrink (down to half the stretch)
+                    rnd -= 0.5 * XCSFUtils.Random.uniRand();
+                }
+                // rnd [0.5 : 2]
+                stretch[i] = (float) (stretch[i] * rnd);
+            }
+        }
+
+        // mutate angles, max 45°
+        for (int i = 0; i < angle.length; i++) {
+            if (XCSFUtils.Random.uniRand() < probability) {
+                this.changed = true;
+                // max rotation: PI/4 = 45°
+                double change = XCSFUtils.Random.uniRand() * Math.PI * 0.25;
+                double a = angle[i]
+                        + ((XCSFUtils.Random.uniRand() < 0.5) ? change
+                                : -change);
+                // stay in (human readable) bounds, although not necessary
+                if (a < LOWER_ROTATION_BOUND) {
+                    a += 2 * Math.PI; // +360°
+                } else if (a > UPPER_ROTATION_BOUND) {
+                    a -= 2 * Math.PI; // -360°
+                }
+                angle[i] = (float) a;
+            }
+        }
+        // if anything (center/stretch/angle) is changed: recalulate the matrix
+        if (this.changed) {
+            recalculateTransformationMatrix();
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#equals(xcsf.classifier.Condition)
+     */
+    public boolean equals(Condition otherCondition) {
+        ConditionRotatingEllipsoidCompact other = (ConditionRotatingEllipsoidCompact) otherCondition;
+        for (int i = 0; i < dimension; i++) {
+            if (this.center[i] != other.center[i]
+                    || this.stretch[i] != other.stretch[i]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < this.angle.length; i++) {
+            if (this.angle[i] != other.angle[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "condition{center" + Arrays.toString(this.center) + " stretch"
+                + Arrays.toString(this.stretch) + " angles"
+                + Arrays.toString(this.angle) + "}";
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#copy()
+     */
+    public Condition reproduce() {
+        ConditionRotatingEllipsoidCompact clone = new ConditionRotatingEllipsoidCompact(
+                this.dimension);
+        // copy values
+        System.arraycopy(center, 0, clone.center, 0, dimension);
+        System.arraycopy(stretch, 0, clone.stretch, 0, dimension);
+        System.arraycopy(angle, 0, clone.angle, 0, angle.length);
+        System.arraycopy(transform, 0, clone.transform, 0, transform.length);
+        System.arraycopy(inverseTransform, 0, clone.inverseTransform, 0,
+                inverseTransform.length);
+        clone.boundingRadius = this.boundingRadius;
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getCenter()
+     */
+    public double[] getCenter() {
+        return this.center;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        // the unit sphere is mapped by the transformation, thus the extent
+        // in dimension i is the length of the i'th row (without translation)
+        int n = dimension + 1;
+        for (int i = 0; i < dimension; i++) {
+            double extent = 0;
+            for (int j = 0; j < dimension; j++) {
+                double t = transform[i * n + j];
+                extent += t * t;
+            }
+            extent = Math.sqrt(extent);
+            lower[i] = center[i] - extent;
+            upper[i] = center[i] + extent;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // the longest semi-axis
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            if (stretch[i] > radius) {
+                radius = stretch[i];
+            }
+        }
+        return radius;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the relative distance is at least distance / longest semi-axis
+        double relative = distance / boundingRadius;
+        return Math.exp(-relative * relative);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#write(java.io.PrintStream,
+     * java.lang.CharSequence)
+     */
+    public void write(PrintStream out, CharSequence separator) {
+        StringBuffer s = new StringBuffer();
+        s.append(this.dimension);
+        s.append(separator);
+        s.append(Arrays.toString(this.center));
+        s.append(separator);
+        s.append(Arrays.toString(toDouble(this.stretch)));
+        s.append(separator);
+        s.append(Arrays.toString(toDouble(this.angle)));
+        s.append(separator);
+        s.append(Arrays.deepToString(toMatrix(this.inverseTransform)));
+        s.append(separator);
+        s.append(Arrays.deepToString(toMatrix(this.transform)));
+        out.print(s);
+    }
+
+    /**
+     * Computes the forward and inverse transformations for this rotated
+     * ellipsoid in double precision and stores them as <code>float</code>.
+     */
+    public void recalculateTransformationMatrix() {
+        Workspace workspace = Workspace.get();
+        double[] tmpStretch = workspace.stretch(dimension);
+        double[] tmpAngle = workspace.angles(angle.length);
+        for (int i = 0; i < dimension; i++) {
+            tmpStretch[i] = stretch[i];
+        }
+        for (int i = 0; i < angle.length; i++) {
+            tmpAngle[i] = angle[i];
+        }
+        double[][] tmpTransformation = workspace.transformation(dimension);
+        double[][] tmpInverse = workspace
+                .inverseTransformation(dimension);
+        ConditionRotatingEllipsoid.setTransforms(tmpTransformation,
+                tmpInverse, center, tmpStretch, tmpAngle, dimension);
+        toFloat(tmpInverse, this.inverseTransform);
+        toFloat(tmpTransformation, this.transform);
+        this.boundingRadius = getBoundingRadius();
+        this.changed = false;
+        this.conditionSequence = NO_SEQUENCE; // reset activity calculation
+    }
+
+    /**
+     * Calculates the relative squared distance from the center to
+     * <code>point</code> in double precision, see
+     * {@link ConditionRotatingEllipsoid} for details. The bounding sphere test
+     * uses a larger safety margin to account for the <code>float</code>
+     * precision of the stored stretch.
+     * 
+     * @param point
+     *            the condition input
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for points
+     *            outside of this hyperellipsoid
+     * @return the relative distance
+     */
+    private double calculateRelativeSquaredDistance(double[] point,
+            boolean rejectEarly) {
+        if (rejectEarly) {
+            double centerDistance = 0;
+            for (int i = 0; i < dimension; i++) {
+                double d = point[i] - center[i];
+                centerDistance += d * d;
+            }
+            // margin for rounding errors at the surface
+            double bound = centerDistance / (boundingRadius * boundingRadius);
+            if (bound > 1 + REJECTION_MARGIN) {
+                return bound;
+            }
+        }
+        // use inverse transformation:
+        // ellipsoidal coodrinate system -> default coordinate system
+        int n = dimension + 1;
+        double dist = 0;
+        for (int i = 0, row = 0; i < dimension; i++, row += n) {
+            double x = inverseTransform[row] * point[0];
+            for (int j = 1; j < dimension; j++) {
+                x += inverseTransform[row + j] * point[j];
+            }
+            // translation
+            x += inverseTransform[row + dimension];
+            // sqared distance to the unit-sphere center
+            dist += x * x;
+            if (rejectEarly && dist >= 1) {
+                return dist;
+            }
+        }
+        return dist;
+    }
+
+    /**
+     * Rounds the given values to <code>float</code>.
+     * 
+     * @param source
+     *            the values
+     * @param destination
+     *            the destination array of the same length
+     */
+    private static void toFloat(double[] source, float[] destination) {
+        for (int i = 0; i < destination.length; i++) {
+            destination[i] = (float) source[i];
+        }
+    }
+
+    /**
+     * Rounds the first <tt>dimension</tt> rows of the given extended matrix
+     * to <code>float</code> and stores them in a flat array.
+     * 
+     * @param matrix
+     *            the (<tt>dimension+1</tt> x <tt>dimension+1</tt>) matrix
+     * @param destination
+     *            the flat destination array
+     */
+    private static void toFloat(double[][] matrix, float[] destination) {
+        int n = matrix.length;
+        for (int i = 0, index = 0; i < n - 1; i++) {
+            for (int j = 0; j < n; j++) {
+                destination[index++] = (float) matrix[i][j];
+            }
+        }
+    }
+
+    /**
+     * Converts the given values to <code>double</code>.
+     * 
+     * @param values
+     *            the values
+     * @return a new array containing the values
+     */
+    private static double[] toDouble(float[] values) {
+        double[] result = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = values[i];
+        }
+        return result;
+    }
+
+    /**
+     * Converts the given flat matrix to the extended
+     * (<tt>dimension+1</tt> x <tt>dimension+1</tt>) matrix including the
+     * last row.
+     * 
+     * @param flat
+     *            the first <tt>dimension</tt> rows
+     * @return a new array containing the extended matrix
+     */
+    private double[][] toMatrix(float[] flat) {
+        int n = dimension + 1;
+        double[][] matrix = new double[n][n];
+        for (int i = 0; i < dimension; i++) {
+            for (int j = 0; j < n; j++) {
+                matrix[i][j] = flat[i * n + j];
+            }
+        }
+        matrix[dimension][dimension] = 1;
+        return matrix;
+    }
+}
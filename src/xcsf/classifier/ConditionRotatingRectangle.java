@@ -14,11 +14,8 @@ import xcsf.XCSFUtils;
  */
 public class ConditionRotatingRectangle implements Condition {
 
-    // temporary arrays to avoid mem alloc.
-    private static double[] tmpArray2;
-    private static double[][] tmpSingleRotation;
-    private static double[][] tmpTransformation;
-    private static double[][] tmpMatrix;
+    // safety margin for rounding errors of the bounding sphere test
+    private final static double REJECTION_MARGIN = 1e-9;
 
     // center, stretch & engles define location & shape of this hyperrectangle
     private int dimension;
@@ -30,10 +27,14 @@ public class ConditionRotatingRectangle implements Condition {
     private double[][] inverseTransform;
     // flag to indicate changes in center/stretch/angle => recalculate transf.
     private boolean changed;
+    // distance from center to corner, derived together with the matrices
+    private double boundingRadius;
 
     // to avoid multiple calculations for one state
-    private double[] conditionInput;
+    private long conditionSequence = NO_SEQUENCE;
     private double maxDistance;
+    // false, if maxDistance is only a lower bound (rejected early)
+    private boolean exactDistance;
     // to avoid mem-alloc for matching
     private double[] tmpArray1;
 
@@ -60,8 +61,7 @@ public class ConditionRotatingRectangle implements Condition {
             angle[i] = XCSFUtils.Random.uniRand() * 2.0 * Math.PI;
         }
 
-        // static initializer and transformation matrices for covering only
-        init(dimension);
+        // transformation matrices for covering only
         this.recalculateTransformationMatrix();
     }
 
@@ -79,7 +79,7 @@ public class ConditionRotatingRectangle implements Condition {
         this.angle = XCSFUtils.FileIO.parseDoubleArray(args[3]);
         this.inverseTransform = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
         this.transform = XCSFUtils.FileIO.parse2dDoubleArray(args[5]);
-        init(this.dimension);
+        this.boundingRadius = getBoundingRadius();
     }
 
     /**
@@ -100,36 +100,26 @@ public class ConditionRotatingRectangle implements Condition {
         tmpArray1 = new double[dimension];
     }
 
-    /**
-     * Initializes static arrays, if necessary.
+    /*
+     * (non-Javadoc)
      * 
-     * @param dimension
-     *            the dimensionality of this condition
+     * @see xcsf.classifier.Condition#doesMatch(double[])
      */
-    private static void init(int dimension) {
-        if (tmpArray2 == null || tmpArray2.length != dimension) {
-            tmpArray2 = new double[dimension];
-            tmpMatrix = new double[dimension][dimension];
-            tmpTransformation = new double[dimension + 1][dimension + 1];
-            tmpSingleRotation = new double[dimension][dimension];
-            for (int i = 0; i < dimension; i++) {
-                for (int j = 0; j < dimension; j++) {
-                    tmpSingleRotation[i][j] = (i != j) ? 0 : 1;
-                }
-            }
-        }
+    public boolean doesMatch(double[] input) {
+        return this.doesMatch(input, NO_SEQUENCE);
     }
 
     /*
      * (non-Javadoc)
      * 
-     * @see xcsf.classifier.Condition#doesMatch(double[])
+     * @see xcsf.classifier.Condition#doesMatch(double[], long)
      */
-    public boolean doesMatch(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.calculateMaxDistance(input);
-            // store input to avoid overhead
-            this.conditionInput = input;
+    public boolean doesMatch(double[] input, long sequence) {
+        if (sequence == NO_SEQUENCE || sequence != this.conditionSequence) {
+            this.calculateMaxDistance(input, true);
+            this.exactDistance = this.maxDistance < 1;
+            // store the sequence number to avoid overhead
+            this.conditionSequence = sequence;
         }
         return this.maxDistance < 1;
     }
@@ -140,10 +130,21 @@ public class ConditionRotatingRectangle implements Condition {
      * @see xcsf.classifier.Condition#getActivity(double[])
      */
     public double getActivity(double[] input) {
-        if (!XCSFUtils.arrayEquals(this.conditionInput, input)) {
-            this.calculateMaxDistance(input);
-            // store input to reduce overhead
-            this.conditionInput = input;
+        return this.getActivity(input, NO_SEQUENCE);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivity(double[], long)
+     */
+    public double getActivity(double[] input, long sequence) {
+        if (!this.exactDistance || sequence == NO_SEQUENCE
+                || sequence != this.conditionSequence) {
+            this.calculateMaxDistance(input, false);
+            this.exactDistance = true;
+            // store the sequence number to reduce overhead
+            this.conditionSequence = sequence;
         }
         return Math.exp(-this.maxDistance);
     }
@@ -157,12 +158,14 @@ public class ConditionRotatingRectangle implements Condition {
         ConditionRotatingRectangle other = (ConditionRotatingRectangle) otherCondition;
         // map unit hypercube to other and map that one inverse to
         // hypercube of this rectangle.
+        Workspace workspace = Workspace.get();
+        double[][] tmpTransformation = workspace.transformation(dimension);
         XCSFUtils.Matrix.multiply(this.inverseTransform, other.transform,
                 tmpTransformation, dimension + 1);
 
         // check, if resulting transformation stays in unit cube,
         // i.e. each edge.dimension < 1
-        return checkEdges(0);
+        return checkEdges(0, tmpTransformation, workspace.vector(dimension));
     }
 
     /*
@@ -232,6 +235,7 @@ public class ConditionRotatingRectangle implements Condition {
         }
         // now tmpArray1 contains mutation vector for center
         if (this.changed) {
+            double[] tmpArray2 = Workspace.get().vector(dimension);
             // multiply with transformation matrix without translation part
             XCSFUtils.Matrix.multiply(this.transform, tmpArray1, tmpArray2,
                     dimension);
@@ -338,6 +342,7 @@ public class ConditionRotatingRectangle implements Condition {
             System.arraycopy(inverseTransform[i], 0, clone.inverseTransform[i],
                     0, dimension + 1);
         }
+        clone.boundingRadius = this.boundingRadius;
         return clone;
     }
 
@@ -350,6 +355,48 @@ public class ConditionRotatingRectangle implements Condition {
         return this.center;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingBox(double[], double[])
+     */
+    public void getBoundingBox(double[] lower, double[] upper) {
+        // the unit cube is mapped by the transformation, thus the extent in
+        // dimension i is the absolute sum of the i'th row (w/o translation)
+        for (int i = 0; i < dimension; i++) {
+            double extent = 0;
+            for (int j = 0; j < dimension; j++) {
+                extent += Math.abs(transform[i][j]);
+            }
+            lower[i] = center[i] - extent;
+            upper[i] = center[i] + extent;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getBoundingRadius()
+     */
+    public double getBoundingRadius() {
+        // distance from the center to a corner
+        double radius = 0;
+        for (int i = 0; i < dimension; i++) {
+            radius += stretch[i] * stretch[i];
+        }
+        return Math.sqrt(radius);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see xcsf.classifier.Condition#getActivityUpperBound(double, double)
+     */
+    public double getActivityUpperBound(double distance, double boundingRadius) {
+        // the maximum relative distance is at least distance / corner distance
+        return Math.exp(-distance / boundingRadius);
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -415,11 +462,12 @@ public class ConditionRotatingRectangle implements Condition {
      * re-calculation.
      */
     public void recalculateTransformationMatrix() {
-        setInverseTransform(this.inverseTransform, center, stretch, angle,
-                dimension);
-        setTransform(this.transform, center, stretch, angle, dimension);
+        // same transformations as for rotating ellipsoids
+        ConditionRotatingEllipsoid.setTransforms(this.transform,
+                this.inverseTransform, center, stretch, angle, dimension);
+        this.boundingRadius = getBoundingRadius();
         this.changed = false;
-        this.conditionInput = null; // reset activity calculation
+        this.conditionSequence = NO_SEQUENCE; // reset activity calculation
     }
 
     /**
@@ -428,21 +476,52 @@ public class ConditionRotatingRectangle implements Condition {
      * which is in fact the max. relative distance to the rotated
      * hyperrectangle. Distance is zero at the center, one on the border and
      * greater one outside the rectangle.
+     * <p>
+     * If <code>rejectEarly</code> is set, the calculation stops as soon as
+     * the input is known to lie outside: first, the distance to the center is
+     * compared with the distance to the corners (bounding sphere), which
+     * requires <tt>d</tt> instead of <tt>d*(d+1)</tt> multiply-adds. Second,
+     * the remaining rows are skipped, once a relative distance reaches one. In
+     * both cases, a lower bound greater or equal to one is stored.
      * 
      * @param input
      *            the input for this condition
+     * @param rejectEarly
+     *            <code>true</code>, if a lower bound suffices for inputs
+     *            outside of this hyperrectangle
      */
-    private void calculateMaxDistance(double[] input) {
+    private void calculateMaxDistance(double[] input, boolean rejectEarly) {
+        if (rejectEarly) {
+            double centerDistance = 0;
+            for (int i = 0; i < dimension; i++) {
+                double d = input[i] - center[i];
+                centerDistance += d * d;
+            }
+            // margin for rounding errors at the border
+            double bound = Math.sqrt(centerDistance) / boundingRadius;
+            if (bound > 1 + REJECTION_MARGIN) {
+                this.maxDistance = bound;
+                return;
+            }
+        }
         // use inverse transformation:
         // rectangle coodrinate system -> default coordinate system
-        XCSFUtils.Matrix.multiplyExtended(inverseTransform, input, tmpArray1,
-                dimension);
-        // calculate max distance
+        // (same operations as XCSFUtils.Matrix.multiplyExtended)
         this.maxDistance = 0;
         for (int i = 0; i < dimension; i++) {
-            double relativeDist = Math.abs(tmpArray1[i]);
+            double[] row = inverseTransform[i];
+            double x = row[0] * input[0];
+            for (int j = 1; j < dimension; j++) {
+                x += row[j] * input[j];
+            }
+            // translation
+            x += row[dimension];
+            double relativeDist = Math.abs(x);
             if (relativeDist > this.maxDistance) {
                 this.maxDistance = relativeDist;
+                if (rejectEarly && relativeDist >= 1) {
+                    return;
+                }
             }
         }
     }
@@ -457,10 +536,16 @@ public class ConditionRotatingRectangle implements Condition {
      * 
      * @param dim
      *            The current dimension of the edge to vary
+     * @param tmpTransformation
+     *            the transformation from the unit-hyper-cube into this
+     *            rectangle's coordinate system
+     * @param tmpArray2
+     *            temporary array for the transformed edge
      * @return <code>true</code>, if all edges are contained; <code>false</code>
      *         otherwise.
      */
-    private boolean checkEdges(int dim) {
+    private boolean checkEdges(int dim, double[][] tmpTransformation,
+            double[] tmpArray2) {
         // end of recursion: check edge
         if (dim == dimension) {
             // tmpArray1 contains edge
@@ -476,160 +561,11 @@ public class ConditionRotatingRectangle implements Condition {
         }
         // recursion: try both edges, i.e. 1 & -1 for this dimension
         tmpArray1[dim] = 1;
-        if (!checkEdges(dim + 1)) {
+        if (!checkEdges(dim + 1, tmpTransformation, tmpArray2)) {
             // fast fail
             return false;
         }
         tmpArray1[dim] = -1;
-        return checkEdges(dim + 1);
-    }
-
-    /**
-     * Sets <code>matrix</code> to the rotated rectangular transformation
-     * matrix, i.e. a matrix of size (<code>dim+1</code> x <code>dim+1</code>)
-     * with
-     * 
-     * <pre>
-     * matrix = translationMatrix * rotationMatrix * stretchMatrix
-     * </pre>
-     * 
-     * <p>
-     * The matrix can be used to transform any point from the default coordinate
-     * system into the rotated rectangular coordinate system (origin =
-     * <code>center</code>, scaled with <code>stretch</code> and rotated by
-     * <code>angle</code>).
-     * 
-     * @param matrix
-     *            the destination matrix of size (<code>dim+1</code> x
-     *            <code>dim+1</code>), which will hold the transformation
-     * @param center
-     *            the center of the rectangle
-     * @param stretch
-     *            the stretch of the rectangle
-     * @param angle
-     *            the rotation angles of the rectangle
-     * @param dim
-     *            the dimension of the coordinate system
-     */
-    private static void setTransform(double[][] matrix, double[] center,
-            double[] stretch, double[] angle, int dim) {
-        // matrix = translation * rotation * stretch
-        // 1. set identity & translation
-        for (int i = 0; i < dim; i++) {
-            for (int j = 0; j < dim; j++) {
-                matrix[i][j] = (i != j) ? 0 : 1;
-            }
-            // last column: translation
-            matrix[i][dim] = center[i];
-            // last row: zero
-            matrix[dim][i] = 0;
-        }
-        // last row&column: one
-        matrix[dim][dim] = 1;
-
-        // 2. rotation
-        int a = angle.length - 1; // angle index
-        for (int i = dim - 1; i >= 0; i--) {
-            for (int j = dim - 1; j > i; j--) {
-                // singleRotation == identity at this point.
-                tmpSingleRotation[i][i] = tmpSingleRotation[j][j] = Math
-                        .cos(angle[a]);
-                tmpSingleRotation[i][j] = -Math.sin(angle[a]);
-                tmpSingleRotation[j][i] = -tmpSingleRotation[i][j];
-
-                // multiply inverseTransformation with singlerotation
-                XCSFUtils.Matrix.multiply(matrix, tmpSingleRotation, tmpMatrix,
-                        dim);
-                XCSFUtils.Matrix.copyMatrix(tmpMatrix, matrix, dim);
-                a--;
-
-                // reset singleRotation to identity
-                tmpSingleRotation[i][i] = 1.0;
-                tmpSingleRotation[i][j] = 0.0;
-                tmpSingleRotation[j][i] = 0.0;
-                tmpSingleRotation[j][j] = 1.0;
-            }
-        }
-
-        // 3. stretch
-        for (int i = 0; i < dim; i++) {
-            for (int j = 0; j < dim; j++) {
-                matrix[i][j] *= stretch[j];
-            }
-        }
-    }
-
-    /**
-     * Sets <code>matrix</code> to the inverse rotated-rectangular
-     * transformation matrix, i.e. a matrix of size (<code>dim+1</code> x
-     * <code>dim+1</code>) with
-     * 
-     * <pre>
-     * matrix = inverse stretchMatrix * inverse rotationMatrix * inverse translationMatrix
-     * </pre>
-     * 
-     * <p>
-     * The matrix can be used to transform any point from the rotated
-     * rectangular coordinate system (origin = <code>center</code>, scaled with
-     * <code>stretch</code> and rotated by <code>angle</code>) into the default
-     * coordinate system (zero origin, identity stretch and no rotation).
-     * 
-     * @param matrix
-     *            the destination matrix of size (<code>dim+1</code> x
-     *            <code>dim+1</code>), which will hold the inverse
-     *            transformation
-     * @param center
-     *            the center of the rectangle
-     * @param stretch
-     *            the stretch of the rectangle
-     * @param angle
-     *            the rotation angles of the rectangle
-     * @param dim
-     *            the dimension of the coordinate system
-     */
-    private static void setInverseTransform(double[][] matrix, double[] center,
-            double[] stretch, double[] angle, int dim) {
-        // matrix = stretch^-1 * rotation^-1 * translation^-1
-        // 1. set identity & inverse stretch
-        for (int i = 0; i < dim; i++) {
-            for (int j = 0; j < dim; j++) {
-                matrix[i][j] = (i != j) ? 0 : 1.0 / stretch[i];
-            }
-            // last column & row: zero
-            matrix[i][dim] = matrix[dim][i] = 0;
-        }
-        // last row&column: one
-        matrix[dim][dim] = 1;
-
-        // 2. inverse rotation
-        int a = 0; // angle index
-        for (int i = 0; i < dim; i++) {
-            for (int j = i + 1; j < dim; j++) {
-                // singleRotation == identity at this point.
-                tmpSingleRotation[i][i] = tmpSingleRotation[j][j] = Math
-                        .cos(angle[a]);
-                tmpSingleRotation[i][j] = Math.sin(angle[a]);
-                tmpSingleRotation[j][i] = -tmpSingleRotation[i][j];
-
-                // multiply inverseTransformation with singlerotation
-                XCSFUtils.Matrix.multiply(matrix, tmpSingleRotation, tmpMatrix,
-                        dim);
-                XCSFUtils.Matrix.copyMatrix(tmpMatrix, matrix, dim);
-                a++;
-
-                // reset singleRotation to identity
-                tmpSingleRotation[i][i] = 1.0;
-                tmpSingleRotation[i][j] = 0.0;
-                tmpSingleRotation[j][i] = 0.0;
-                tmpSingleRotation[j][j] = 1.0;
-            }
-        }
-
-        // 3. inverse translation: only last column changes
-        for (int i = 0; i < dim; i++) {
-            for (int j = 0; j < dim; j++) {
-                matrix[i][dim] -= matrix[i][j] * center[j];
-            }
-        }
+        return checkEdges(dim + 1, tmpTransformation, tmpArray2);
     }
 }
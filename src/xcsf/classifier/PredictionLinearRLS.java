@@ -13,16 +13,16 @@ import xcsf.XCSFUtils;
  */
 public class PredictionLinearRLS implements Prediction {
 
-    // arrays for temporary storage to avoid mem alloc.
-    private static double[] tmpExtendedPredInput;
-    private static double[] tmpGainVector;
-    private static double[][] tmpMatrix1;
-    private static double[][] tmpMatrix2;
+    // maximum relative difference to the reference update, see main()
+    private final static double TOLERANCE = 1e-9;
 
     private int inputLength; // dimension of function input + 1 (offset)
     private int predictionLength; // dimension of function output
     private double[][] coefficients; // coefficients of the linear fit
-    private double[][] gainMatrix; // some kind of magic matrix
+    // some kind of magic matrix, packed upper triangle (see
+    // XCSFUtils.Matrix#packedLength). Null represents the initial matrix
+    // rlsInitScaleFactor * I, which is allocated on the first update.
+    private double[] gainMatrix;
     private double[] prediction; // array, to avoid mem-alloc
 
     /**
@@ -38,7 +38,6 @@ public class PredictionLinearRLS implements Prediction {
         this.inputLength = inputLength + 1;
         this.predictionLength = initialPrediction.length;
         this.coefficients = new double[this.predictionLength][this.inputLength];
-        this.gainMatrix = new double[this.inputLength][this.inputLength];
         this.prediction = new double[this.predictionLength];
         // init coefficients
         for (int p = 0; p < this.predictionLength; p++) {
@@ -52,11 +51,8 @@ public class PredictionLinearRLS implements Prediction {
                 this.coefficients[p][i] = 0;
             }
         }
-        // init gainMatrix
-        this.initializeGainMatrix();
-
-        // create temporary arrays
-        init(this.inputLength);
+        // the gainMatrix is initialized on the first update
+        this.gainMatrix = null;
     }
 
     /**
@@ -72,30 +68,295 @@ public class PredictionLinearRLS implements Prediction {
         this.predictionLength = Integer.parseInt(args[1]);
         this.prediction = XCSFUtils.FileIO.parseDoubleArray(args[2]);
         this.coefficients = XCSFUtils.FileIO.parse2dDoubleArray(args[3]);
-        this.gainMatrix = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
-        init(this.inputLength);
+        this.gainMatrix = XCSFUtils.Matrix.pack(XCSFUtils.FileIO
+                .parse2dDoubleArray(args[4]), this.inputLength);
     }
 
     /**
-     * Initializes static arrays, if necessary.
+     * Private empty constructor for efficient cloning.
+     */
+    private PredictionLinearRLS() {
+        // empty
+    }
+
+    /**
+     * Equivalence check and benchmark of the gain matrix update. Linear and
+     * quadratic predictions with <tt>1, 2, 5</tt> and <tt>10</tt> inputs are
+     * updated with random samples, side by side with the former
+     * <tt>O(n^3)</tt> update on full matrices, see
+     * {@link #referenceUpdate(double[][], double[][], double[], double[], double[], double[][], double[][])}
+     * . Afterwards, the largest difference of the gain matrix and of the
+     * coefficients, relative to the largest reference entry, must be below
+     * <tt>1e-9</tt>; otherwise exits with status 1. Then, the time per
+     * update of both variants is reported for <tt>2</tt> to <tt>30</tt>
+     * inputs.
      * 
-     * @param inputLength
-     *            The dimensionality of the prediction output
+     * @param args
+     *            the settings file (default <tt>xcsf.ini</tt>) and optionally
+     *            the number of updates per check
      */
-    private static void init(int inputLength) {
-        if (tmpGainVector == null || tmpGainVector.length != inputLength) {
-            tmpGainVector = new double[inputLength];
-            tmpExtendedPredInput = new double[inputLength];
-            tmpMatrix1 = new double[inputLength][inputLength];
-            tmpMatrix2 = new double[inputLength][inputLength];
+    public static void main(String[] args) {
+        XCSFConstants.load(args.length > 0 ? args[0] : "xcsf.ini");
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int[] checkDimensions = { 1, 2, 5, 10 };
+        int[] benchmarkDimensions = { 2, 5, 10, 15, 20, 25, 30 };
+        boolean[] quadratic = { false, true };
+        boolean same = true;
+        for (int q = 0; q < quadratic.length; q++) {
+            for (int dim : checkDimensions) {
+                XCSFUtils.Random.setSeed(XCSFConstants.initialSeed);
+                Prediction prediction = quadratic[q] ? new PredictionQuadraticRLS(
+                        dim, new double[2])
+                        : new PredictionLinearRLS(dim, new double[2]);
+                double[][] gainMatrix = getGainMatrix(prediction);
+                double[][] coefficients = getCoefficients(prediction);
+                int n = gainMatrix.length;
+                double[] gainVector = new double[n];
+                double[][] tmpMatrix1 = new double[n][n];
+                double[][] tmpMatrix2 = new double[n][n];
+                for (int u = 0; u < updates; u++) {
+                    double[] input = randomInput(dim);
+                    double[] value = targetValue(input);
+                    prediction.predict(input);
+                    prediction.update(input, value);
+                    referenceUpdate(gainMatrix, coefficients, extendInput(
+                            input, quadratic[q], n), value, gainVector,
+                            tmpMatrix1, tmpMatrix2);
+                }
+                double gainError = relativeDifference(
+                        getGainMatrix(prediction), gainMatrix);
+                double coefficientError = relativeDifference(
+                        getCoefficients(prediction), coefficients);
+                boolean equal = gainError < TOLERANCE
+                        && coefficientError < TOLERANCE;
+                same &= equal;
+                System.out.println(String.format(
+                        "%-9s d=%-2d n=%-3d %d updates: gain %.1e, "
+                                + "coefficients %.1e: %s",
+                        quadratic[q] ? "quadratic" : "linear", dim, n,
+                        updates, gainError, coefficientError,
+                        equal ? "same" : "DIFFERENT"));
+            }
+        }
+        System.out.println("us/update   d:  reference -> rank-one");
+        for (int q = 0; q < quadratic.length; q++) {
+            for (int dim : benchmarkDimensions) {
+                XCSFUtils.Random.setSeed(XCSFConstants.initialSeed);
+                Prediction prediction = quadratic[q] ? new PredictionQuadraticRLS(
+                        dim, new double[2])
+                        : new PredictionLinearRLS(dim, new double[2]);
+                double[][] gainMatrix = getGainMatrix(prediction);
+                double[][] coefficients = getCoefficients(prediction);
+                int n = gainMatrix.length;
+                double[] gainVector = new double[n];
+                double[][] tmpMatrix1 = new double[n][n];
+                double[][] tmpMatrix2 = new double[n][n];
+                double[] input = randomInput(dim);
+                double[] extendedInput = extendInput(input, quadratic[q], n);
+                double[] value = targetValue(input);
+                // at least 0.2 seconds per variant
+                long reference = 0, rankOne = 0;
+                int referenceUpdates = 0, rankOneUpdates = 0;
+                long start = System.nanoTime();
+                while (reference < 200000000L) {
+                    referenceUpdate(gainMatrix, coefficients, extendedInput,
+                            value, gainVector, tmpMatrix1, tmpMatrix2);
+                    referenceUpdates++;
+                    reference = System.nanoTime() - start;
+                }
+                start = System.nanoTime();
+                while (rankOne < 200000000L) {
+                    prediction.predict(input);
+                    prediction.update(input, value);
+                    rankOneUpdates++;
+                    rankOne = System.nanoTime() - start;
+                }
+                System.out.println(String.format(
+                        "%-9s %2d: %10.2f -> %.2f",
+                        quadratic[q] ? "quadratic" : "linear", dim,
+                        reference / 1000.0 / referenceUpdates, rankOne
+                                / 1000.0 / rankOneUpdates));
+            }
+        }
+        if (!same) {
+            System.exit(1);
         }
     }
 
     /**
-     * Private empty constructor for efficient cloning.
+     * The former <tt>O(n^3)</tt> update of {@link #update(double[], double[])}
+     * on a full gain matrix, which is the reference for {@link #main(String[])}:
+     * 
+     * <pre>
+     * gainMatrix = (I - gainVector * extendedInput&circ;T) * gainMatrix / lambda
+     * </pre>
+     * 
+     * @param gainMatrix
+     *            the full gain matrix to update
+     * @param coefficients
+     *            the coefficients to update, including the offset weight
+     * @param extendedInput
+     *            the extended prediction input
+     * @param functionValue
+     *            the actual function value
+     * @param gainVector
+     *            temporary vector of length <tt>n</tt>
+     * @param tmpMatrix1
+     *            temporary matrix of size <tt>n</tt> by <tt>n</tt>
+     * @param tmpMatrix2
+     *            temporary matrix of size <tt>n</tt> by <tt>n</tt>
      */
-    private PredictionLinearRLS() {
-        // empty
+    private static void referenceUpdate(double[][] gainMatrix,
+            double[][] coefficients, double[] extendedInput,
+            double[] functionValue, double[] gainVector,
+            double[][] tmpMatrix1, double[][] tmpMatrix2) {
+        int n = extendedInput.length;
+        XCSFUtils.Matrix.multiply(gainMatrix, extendedInput, gainVector, n);
+        double divisor = XCSFConstants.lambdaRLS;
+        for (int i = 0; i < n; i++) {
+            divisor += extendedInput[i] * gainVector[i];
+        }
+        for (int i = 0; i < n; i++) {
+            gainVector[i] /= divisor;
+        }
+        for (int p = 0; p < coefficients.length; p++) {
+            double error = functionValue[p];
+            for (int i = 0; i < n; i++) {
+                error -= coefficients[p][i] * extendedInput[i];
+            }
+            for (int i = 0; i < n; i++) {
+                coefficients[p][i] += error * gainVector[i];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                double tmp = gainVector[i] * extendedInput[j];
+                if (i == j) {
+                    tmpMatrix1[i][j] = 1.0 - tmp;
+                } else {
+                    tmpMatrix1[i][j] = -tmp;
+                }
+            }
+        }
+        XCSFUtils.Matrix.multiply(tmpMatrix1, gainMatrix, tmpMatrix2, n);
+        for (int row = 0; row < n; row++) {
+            for (int col = 0; col < n; col++) {
+                gainMatrix[row][col] = tmpMatrix2[row][col]
+                        / XCSFConstants.lambdaRLS;
+            }
+        }
+    }
+
+    /**
+     * Returns the extended prediction input of a linear or quadratic
+     * prediction, i.e. the offset, the input and, for quadratic predictions,
+     * the products of all input pairs.
+     * 
+     * @param input
+     *            the prediction input
+     * @param quadratic
+     *            <code>true</code> for {@link PredictionQuadraticRLS}
+     * @param n
+     *            the length of the extended input
+     * @return the new extended input
+     */
+    private static double[] extendInput(double[] input, boolean quadratic,
+            int n) {
+        double[] extendedInput = new double[n];
+        extendedInput[0] = XCSFConstants.predictionOffsetValue;
+        int index = 1;
+        for (int i = 0; i < input.length; i++) {
+            extendedInput[index++] = input[i];
+        }
+        for (int i = 0; quadratic && i < input.length; i++) {
+            for (int j = i; j < input.length; j++) {
+                extendedInput[index++] = input[i] * input[j];
+            }
+        }
+        return extendedInput;
+    }
+
+    /**
+     * Returns a random prediction input in <tt>[0,1]</tt>.
+     * 
+     * @param dimension
+     *            the length of the input
+     * @return the new input
+     */
+    private static double[] randomInput(int dimension) {
+        double[] input = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            input[i] = XCSFUtils.Random.uniRand();
+        }
+        return input;
+    }
+
+    /**
+     * Returns a nonlinear, noisy function value with two outputs.
+     * 
+     * @param input
+     *            the function input
+     * @return the new function value
+     */
+    private static double[] targetValue(double[] input) {
+        double sum = 0;
+        for (int i = 0; i < input.length; i++) {
+            sum += input[i];
+        }
+        double noise = 0.01 * XCSFUtils.Random.normRand();
+        return new double[] { Math.sin(sum) + noise, sum * sum - noise };
+    }
+
+    /**
+     * Returns the full gain matrix of a linear or quadratic prediction.
+     * 
+     * @param prediction
+     *            the prediction
+     * @return a new array containing the gain matrix
+     */
+    private static double[][] getGainMatrix(Prediction prediction) {
+        if (prediction instanceof PredictionQuadraticRLS) {
+            return ((PredictionQuadraticRLS) prediction).getGainMatrix();
+        }
+        return ((PredictionLinearRLS) prediction).getGainMatrix();
+    }
+
+    /**
+     * Returns the coefficients of a linear or quadratic prediction, including
+     * the offset weight.
+     * 
+     * @param prediction
+     *            the prediction
+     * @return a new array containing the coefficients
+     */
+    private static double[][] getCoefficients(Prediction prediction) {
+        if (prediction instanceof PredictionQuadraticRLS) {
+            return ((PredictionQuadraticRLS) prediction).getCoefficients(true);
+        }
+        return ((PredictionLinearRLS) prediction).getCoefficients(true);
+    }
+
+    /**
+     * Returns the largest absolute difference of the given matrices, relative
+     * to the largest absolute entry of <code>reference</code>.
+     * 
+     * @param matrix
+     *            the matrix to compare
+     * @param reference
+     *            the reference matrix of the same size
+     * @return the relative difference
+     */
+    private static double relativeDifference(double[][] matrix,
+            double[][] reference) {
+        double difference = 0, scale = 0;
+        for (int i = 0; i < reference.length; i++) {
+            for (int j = 0; j < reference[i].length; j++) {
+                difference = Math.max(difference, Math.abs(matrix[i][j]
+                        - reference[i][j]));
+                scale = Math.max(scale, Math.abs(reference[i][j]));
+            }
+        }
+        return difference / scale;
     }
 
     /*
@@ -124,13 +385,20 @@ public class PredictionLinearRLS implements Prediction {
      */
     public void update(double[] input, double[] functionValue) {
         // PRECONDITION: this.predict(input) was called before.
+        Workspace workspace = Workspace.get();
+        double[] tmpExtendedPredInput = workspace
+                .extendedInput(this.inputLength);
+        double[] tmpGainVector = workspace.gainVector(this.inputLength);
         // extend prediction input
         tmpExtendedPredInput[0] = XCSFConstants.predictionOffsetValue;
         for (int i = 0; i < input.length; i++) {
             tmpExtendedPredInput[i + 1] = input[i];
         }
         // 1. determine gain vector = gainMatrix * extendedPredInput
-        XCSFUtils.Matrix.multiply(this.gainMatrix, tmpExtendedPredInput,
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        XCSFUtils.Matrix.multiplyPacked(this.gainMatrix, tmpExtendedPredInput,
                 tmpGainVector, this.inputLength);
 
         // 2. divide gain vector by lambda + <diffStateExtended, k>
@@ -151,27 +419,14 @@ public class PredictionLinearRLS implements Prediction {
             }
         }
 
-        // 4. update gainMatrix:
-        // gainMatrix = (I - rank1(helpV1, diffStateExt)) * gainMatrix
-        for (int i = 0; i < this.inputLength; i++) {
-            for (int j = 0; j < this.inputLength; j++) {
-                double tmp = tmpGainVector[i] * tmpExtendedPredInput[j];
-                if (i == j) {
-                    tmpMatrix1[i][j] = 1.0 - tmp;
-                } else {
-                    tmpMatrix1[i][j] = -tmp;
-                }
-            }
-        }
-        XCSFUtils.Matrix.multiply(tmpMatrix1, this.gainMatrix, tmpMatrix2,
+        // 4. update gainMatrix and divide its entries by lambda:
+        // gainMatrix = (I - rank1(gainVector, extendedPredInput)) * gainMatrix
+        // Since gainMatrix is symmetric, extendedPredInput^T * gainMatrix
+        // equals divisor * gainVector^T, which yields the symmetric O(n^2)
+        // form gainMatrix -= divisor * gainVector * gainVector^T
+        XCSFUtils.Matrix.symmetricRankOneUpdatePacked(this.gainMatrix,
+                tmpGainVector, divisor, XCSFConstants.lambdaRLS,
                 this.inputLength);
-        // 5. divide gainMatrix entries by lambda
-        for (int row = 0; row < this.inputLength; row++) {
-            for (int col = 0; col < this.inputLength; col++) {
-                this.gainMatrix[row][col] = tmpMatrix2[row][col]
-                        / XCSFConstants.lambdaRLS;
-            }
-        }
     }
 
     /*
@@ -207,8 +462,8 @@ public class PredictionLinearRLS implements Prediction {
         }
         // modified fields
         clone.prediction = new double[this.predictionLength];
-        clone.gainMatrix = new double[this.inputLength][this.inputLength];
-        clone.initializeGainMatrix();
+        // the gainMatrix is initialized on the first update
+        clone.gainMatrix = null;
         return clone;
     }
 
@@ -224,7 +479,7 @@ public class PredictionLinearRLS implements Prediction {
             s += Arrays.toString(coeff);
         }
         s += ", gain=";
-        for (double[] row : this.gainMatrix) {
+        for (double[] row : this.getGainMatrix()) {
             s += Arrays.toString(row);
         }
         return s + "}";
@@ -246,7 +501,7 @@ public class PredictionLinearRLS implements Prediction {
         s.append(separator);
         s.append(Arrays.deepToString(this.coefficients));
         s.append(separator);
-        s.append(Arrays.deepToString(this.gainMatrix));
+        s.append(Arrays.deepToString(this.getGainMatrix()));
         out.print(s.toString());
     }
 
@@ -268,24 +523,50 @@ public class PredictionLinearRLS implements Prediction {
         return coef;
     }
 
+    /**
+     * Returns the gain matrix, e.g. for output or comparison with other RLS
+     * variants.
+     * 
+     * @return a new array containing the gain matrix
+     */
+    public double[][] getGainMatrix() {
+        if (this.gainMatrix == null) {
+            double[][] matrix = new double[this.inputLength][this.inputLength];
+            for (int i = 0; i < this.inputLength; i++) {
+                matrix[i][i] = XCSFConstants.rlsInitScaleFactor;
+            }
+            return matrix;
+        }
+        return XCSFUtils.Matrix.unpack(this.gainMatrix, this.inputLength);
+    }
+
     /**
      * Resets the gain matrix of the RLS part.
      */
     public void resetGainMatrix() {
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        // diagonal entries of the packed upper triangle
+        int index = 0;
         for (int i = 0; i < this.inputLength; i++) {
-            this.gainMatrix[i][i] += XCSFConstants.rlsInitScaleFactor;
+            this.gainMatrix[index] += XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
         }
     }
 
     /**
-     * Initializes the gainMatrix for this RLS prediction.
+     * Initializes the gainMatrix for this RLS prediction, which is called
+     * on the first update. Many classifiers are deleted before their first
+     * update, thus the matrix is not allocated before.
      */
     private void initializeGainMatrix() {
-        for (int row = 0; row < this.gainMatrix.length; row++) {
-            for (int col = 0; col < this.gainMatrix.length; col++) {
-                this.gainMatrix[row][col] = (row != col) ? 0
-                        : XCSFConstants.rlsInitScaleFactor;
-            }
+        this.gainMatrix = new double[XCSFUtils.Matrix
+                .packedLength(this.inputLength)];
+        int index = 0;
+        for (int i = 0; i < this.inputLength; i++) {
+            this.gainMatrix[index] = XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
         }
     }
 }
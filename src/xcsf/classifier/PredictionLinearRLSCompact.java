@@ -0,0 +1,326 @@
+package xcsf.classifier;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import xcsf.XCSFConstants;
+import xcsf.XCSFUtils;
+
+/**
+ * Compact variant of {@link PredictionLinearRLS}, which stores the
+ * coefficients and the gain matrix as <code>float</code> in flat arrays. The
+ * coefficient of output <tt>p</tt> and extended input <tt>i</tt> is found at
+ * index <tt>p*inputLength+i</tt>, the gain matrix is stored as packed upper
+ * triangle (see {@link XCSFUtils.Matrix#packedLength(int)}).
+ * <p>
+ * Predictions and updates are computed in double precision and only the
+ * updated coefficients and gain matrix entries are rounded to
+ * <code>float</code>. The rounding acts like a small perturbation of the
+ * gain matrix, which is kept exactly symmetric by the packed storage.
+ * <p>
+ * Populations are written in the same format as {@link PredictionLinearRLS}.
+ * Thus, a written population can be parsed by both implementations.
+ */
+public class PredictionLinearRLSCompact implements Prediction {
+
+    private int inputLength; // dimension of function input + 1 (offset)
+    private int predictionLength; // dimension of function output
+    private float[] coefficients; // coefficients of the linear fit, flat
+    // packed upper triangle of the gain matrix. Null represents the initial
+    // matrix rlsInitScaleFactor * I, which is allocated on the first update.
+    private float[] gainMatrix;
+    private double[] prediction; // array, to avoid mem-alloc
+
+    /**
+     * Default constructor with given input length and the actual function value
+     * (used as initial prediction).
+     *
+     * @param inputLength
+     *            the length of prediction input
+     * @param initialPrediction
+     *            the initial prediction value
+     */
+    public PredictionLinearRLSCompact(int inputLength,
+            double[] initialPrediction) {
+        this.inputLength = inputLength + 1;
+        this.predictionLength = initialPrediction.length;
+        this.coefficients = new float[this.predictionLength * this.inputLength];
+        this.prediction = new double[this.predictionLength];
+        // init coefficients, first coefficient is the offset
+        if (XCSFConstants.predictionOffsetValue > 0) {
+            for (int p = 0; p < this.predictionLength; p++) {
+                this.coefficients[p * this.inputLength] = (float) initialPrediction[p];
+            }
+        }
+        // the gainMatrix is initialized on the first update
+        this.gainMatrix = null;
+    }
+
+    /**
+     * Parses the given String array. For details, how this constructor is
+     * called, see {@link Classifier#parse(String, String, String)}. The format
+     * equals the one of {@link PredictionLinearRLS}.
+     *
+     * @param args
+     *            the splited String
+     */
+    public PredictionLinearRLSCompact(String[] args) {
+        this();
+        this.inputLength = Integer.parseInt(args[0]);
+        this.predictionLength = Integer.parseInt(args[1]);
+        this.prediction = XCSFUtils.FileIO.parseDoubleArray(args[2]);
+        double[][] coef = XCSFUtils.FileIO.parse2dDoubleArray(args[3]);
+        this.coefficients = new float[this.predictionLength * this.inputLength];
+        for (int p = 0, index = 0; p < this.predictionLength; p++) {
+            for (int i = 0; i < this.inputLength; i++) {
+                this.coefficients[index++] = (float) coef[p][i];
+            }
+        }
+        double[][] gain = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
+        this.gainMatrix = new float[XCSFUtils.Matrix
+                .packedLength(this.inputLength)];
+        for (int i = 0, index = 0; i < this.inputLength; i++) {
+            for (int j = i; j < this.inputLength; j++) {
+                this.gainMatrix[index++] = (float) gain[i][j];
+            }
+        }
+    }
+
+    /**
+     * Private empty constructor for efficient cloning.
+     */
+    private PredictionLinearRLSCompact() {
+        // empty
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#predict(double[])
+     */
+    public double[] predict(double[] input) {
+        for (int dim = 0, row = 0; dim < this.predictionLength; dim++, row += this.inputLength) {
+            // first coefficient is offset
+            double sum = this.coefficients[row]
+                    * XCSFConstants.predictionOffsetValue;
+            // multiply other coefficients with the prediction input
+            for (int i = 1; i < this.inputLength; i++) {
+                sum += this.coefficients[row + i] * input[i - 1];
+            }
+            this.prediction[dim] = sum;
+        }
+        return this.prediction;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#updatePrediction(double[], double[])
+     */
+    public void update(double[] input, double[] functionValue) {
+        // PRECONDITION: this.predict(input) was called before.
+        Workspace workspace = Workspace.get();
+        double[] tmpExtendedPredInput = workspace
+                .extendedInput(this.inputLength);
+        double[] tmpGainVector = workspace.gainVector(this.inputLength);
+        // extend prediction input
+        tmpExtendedPredInput[0] = XCSFConstants.predictionOffsetValue;
+        for (int i = 0; i < input.length; i++) {
+            tmpExtendedPredInput[i + 1] = input[i];
+        }
+        // 1. determine gain vector = gainMatrix * extendedPredInput
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        int n = this.inputLength;
+        int rowStart = 0; // index of entry (i,i)
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            // lower part: entry (i,j) = (j,i) for j < i
+            int index = i; // index of entry (0,i)
+            for (int j = 0; j < i; j++) {
+                sum += this.gainMatrix[index] * tmpExtendedPredInput[j];
+                index += n - j - 1;
+            }
+            // upper part: contiguous entries (i,j) for j >= i
+            for (int j = i; j < n; j++) {
+                sum += this.gainMatrix[rowStart + j - i]
+                        * tmpExtendedPredInput[j];
+            }
+            tmpGainVector[i] = sum;
+            rowStart += n - i;
+        }
+
+        // 2. divide gain vector by lambda + <diffStateExtended, k>
+        double divisor = XCSFConstants.lambdaRLS;
+        for (int i = 0; i < n; i++) {
+            divisor += tmpExtendedPredInput[i] * tmpGainVector[i];
+        }
+        for (int i = 0; i < n; i++) {
+            tmpGainVector[i] /= divisor;
+        }
+
+        // 3. update coefficients using the error (functionValue - prediction)
+        // Note, that "this.prediction" is up to date at the moment!
+        for (int p = 0, row = 0; p < this.predictionLength; p++, row += n) {
+            double error = functionValue[p] - this.prediction[p];
+            for (int i = 0; i < n; i++) {
+                this.coefficients[row + i] = (float) (this.coefficients[row
+                        + i] + error * tmpGainVector[i]);
+            }
+        }
+
+        // 4. update gainMatrix and divide its entries by lambda, see
+        // PredictionLinearRLS: gainMatrix -= divisor * gainVector *
+        // gainVector^T
+        for (int i = 0, index = 0; i < n; i++) {
+            double factor = divisor * tmpGainVector[i];
+            for (int j = i; j < n; j++, index++) {
+                this.gainMatrix[index] = (float) ((this.gainMatrix[index] - factor
+                        * tmpGainVector[j]) / XCSFConstants.lambdaRLS);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#crossover(xcsf.classifier.Prediction)
+     */
+    public void crossover(Prediction otherPrediction) {
+        PredictionLinearRLSCompact other = (PredictionLinearRLSCompact) otherPrediction;
+        for (int i = 0; i < this.coefficients.length; i++) {
+            double avg = (double) this.coefficients[i] + other.coefficients[i];
+            this.coefficients[i] = other.coefficients[i] = (float) (avg / 2.0);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#reproduce()
+     */
+    public PredictionLinearRLSCompact reproduce() {
+        PredictionLinearRLSCompact clone = new PredictionLinearRLSCompact();
+        // cloned fields
+        clone.inputLength = this.inputLength;
+        clone.predictionLength = this.predictionLength;
+        clone.coefficients = new float[this.coefficients.length];
+        System.arraycopy(this.coefficients, 0, clone.coefficients, 0,
+                this.coefficients.length);
+        // modified fields
+        clone.prediction = new double[this.predictionLength];
+        // the gainMatrix is initialized on the first update
+        clone.gainMatrix = null;
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        String s = "prediction{in=" + (this.inputLength - 1) + ",out="
+                + this.predictionLength + " coef=";
+        for (double[] coeff : this.getCoefficients(true)) {
+            s += Arrays.toString(coeff);
+        }
+        s += ", gain=";
+        for (double[] row : this.getGainMatrix()) {
+            s += Arrays.toString(row);
+        }
+        return s + "}";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#write(java.io.PrintStream,
+     * java.lang.CharSequence)
+     */
+    public void write(PrintStream out, CharSequence separator) {
+        StringBuffer s = new StringBuffer();
+        s.append(this.inputLength);
+        s.append(separator);
+        s.append(this.predictionLength);
+        s.append(separator);
+        s.append(Arrays.toString(this.prediction));
+        s.append(separator);
+        s.append(Arrays.deepToString(this.getCoefficients(true)));
+        s.append(separator);
+        s.append(Arrays.deepToString(this.getGainMatrix()));
+        out.print(s.toString());
+    }
+
+    /**
+     * Returns the coefficients of this prediction without the offset.
+     *
+     * @param withOffsetWeight
+     *            This flag indicates, if the offset weight is returned.
+     * @return the coefficients
+     */
+    public double[][] getCoefficients(boolean withOffsetWeight) {
+        int offset = withOffsetWeight ? 0 : 1;
+        int length = this.inputLength - offset;
+        double[][] coef = new double[this.predictionLength][length];
+        for (int row = 0; row < this.predictionLength; row++) {
+            for (int i = 0; i < length; i++) {
+                coef[row][i] = this.coefficients[row * this.inputLength
+                        + offset + i];
+            }
+        }
+        return coef;
+    }
+
+    /**
+     * Returns the gain matrix, e.g. for output or comparison with other RLS
+     * variants.
+     *
+     * @return a new array containing the gain matrix
+     */
+    public double[][] getGainMatrix() {
+        double[][] matrix = new double[this.inputLength][this.inputLength];
+        if (this.gainMatrix == null) {
+            for (int i = 0; i < this.inputLength; i++) {
+                matrix[i][i] = XCSFConstants.rlsInitScaleFactor;
+            }
+            return matrix;
+        }
+        for (int i = 0, index = 0; i < this.inputLength; i++) {
+            for (int j = i; j < this.inputLength; j++, index++) {
+                matrix[i][j] = matrix[j][i] = this.gainMatrix[index];
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Resets the gain matrix of the RLS part.
+     */
+    public void resetGainMatrix() {
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        // diagonal entries of the packed upper triangle
+        int index = 0;
+        for (int i = 0; i < this.inputLength; i++) {
+            this.gainMatrix[index] += XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
+        }
+    }
+
+    /**
+     * Initializes the gainMatrix for this RLS prediction, which is called
+     * on the first update.
+     */
+    private void initializeGainMatrix() {
+        this.gainMatrix = new float[XCSFUtils.Matrix
+                .packedLength(this.inputLength)];
+        int index = 0;
+        for (int i = 0; i < this.inputLength; i++) {
+            this.gainMatrix[index] = (float) XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
+        }
+    }
+}
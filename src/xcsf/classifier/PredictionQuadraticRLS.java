@@ -18,16 +18,13 @@ import xcsf.XCSFUtils;
  */
 public class PredictionQuadraticRLS implements Prediction {
 
-    // arrays for temporary storage to avoid mem alloc.
-    private static double[] tmpExtendedPredInput;
-    private static double[] tmpGainVector;
-    private static double[][] tmpMatrix1;
-    private static double[][] tmpMatrix2;
-
     private int inputLength; // (2 * dimension of function input) + 1 (offset)
     private int predictionLength; // dimension of function output
     private double[][] coefficients; // coefficients of linear/polynomial fit
-    private double[][] gainMatrix; // some kind of magic matrix
+    // some kind of magic matrix, packed upper triangle (see
+    // XCSFUtils.Matrix#packedLength). Null represents the initial matrix
+    // rlsInitScaleFactor * I, which is allocated on the first update.
+    private double[] gainMatrix;
     private double[] prediction; // array, to avoid mem-alloc
 
     /**
@@ -45,7 +42,6 @@ public class PredictionQuadraticRLS implements Prediction {
                 * (inputLength - 1) / 2;
         this.predictionLength = initialPrediction.length;
         this.coefficients = new double[this.predictionLength][this.inputLength];
-        this.gainMatrix = new double[this.inputLength][this.inputLength];
         this.prediction = new double[this.predictionLength];
         // init coefficients
         for (int p = 0; p < this.predictionLength; p++) {
@@ -59,11 +55,8 @@ public class PredictionQuadraticRLS implements Prediction {
                 this.coefficients[p][i] = 0;
             }
         }
-        // init gainMatrix
-        this.initializeGainMatrix();
-
-        // create temporary arrays
-        init(this.inputLength);
+        // the gainMatrix is initialized on the first update
+        this.gainMatrix = null;
     }
 
     /**
@@ -79,23 +72,8 @@ public class PredictionQuadraticRLS implements Prediction {
         this.predictionLength = Integer.parseInt(args[1]);
         this.prediction = XCSFUtils.FileIO.parseDoubleArray(args[2]);
         this.coefficients = XCSFUtils.FileIO.parse2dDoubleArray(args[3]);
-        this.gainMatrix = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
-        init(this.inputLength);
-    }
-
-    /**
-     * Initializes static arrays, if necessary.
-     * 
-     * @param inputLength
-     *            the dimensionality of this prediction
-     */
-    private static void init(int inputLength) {
-        if (tmpGainVector == null || tmpGainVector.length != inputLength) {
-            tmpGainVector = new double[inputLength];
-            tmpExtendedPredInput = new double[inputLength];
-            tmpMatrix1 = new double[inputLength][inputLength];
-            tmpMatrix2 = new double[inputLength][inputLength];
-        }
+        this.gainMatrix = XCSFUtils.Matrix.pack(XCSFUtils.FileIO
+                .parse2dDoubleArray(args[4]), this.inputLength);
     }
 
     /**
@@ -138,6 +116,10 @@ public class PredictionQuadraticRLS implements Prediction {
      * @see xcsf.classifier.Prediction#updatePrediction(double[], double[])
      */
     public void update(double[] input, double[] functionValue) {
+        Workspace workspace = Workspace.get();
+        double[] tmpExtendedPredInput = workspace
+                .extendedInput(this.inputLength);
+        double[] tmpGainVector = workspace.gainVector(this.inputLength);
         // extend prediction input
         tmpExtendedPredInput[0] = XCSFConstants.predictionOffsetValue;
         int length = input.length;
@@ -154,7 +136,10 @@ public class PredictionQuadraticRLS implements Prediction {
         }
 
         // 1. determine gain vector = gainMatrix * extendedPredInput
-        XCSFUtils.Matrix.multiply(this.gainMatrix, tmpExtendedPredInput,
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        XCSFUtils.Matrix.multiplyPacked(this.gainMatrix, tmpExtendedPredInput,
                 tmpGainVector, this.inputLength);
 
         // 2. divide gain vector by lambda + <diffStateExtended, k>
@@ -175,27 +160,14 @@ public class PredictionQuadraticRLS implements Prediction {
             }
         }
 
-        // 4. update gainMatrix:
-        // gainMatrix = (I - rank1(helpV1, diffStateExt)) * gainMatrix
-        for (int i = 0; i < this.inputLength; i++) {
-            for (int j = 0; j < this.inputLength; j++) {
-                double tmp = tmpGainVector[i] * tmpExtendedPredInput[j];
-                if (i == j) {
-                    tmpMatrix1[i][j] = 1.0 - tmp;
-                } else {
-                    tmpMatrix1[i][j] = -tmp;
-                }
-            }
-        }
-        XCSFUtils.Matrix.multiply(tmpMatrix1, this.gainMatrix, tmpMatrix2,
+        // 4. update gainMatrix and divide its entries by lambda:
+        // gainMatrix = (I - rank1(gainVector, extendedPredInput)) * gainMatrix
+        // Since gainMatrix is symmetric, extendedPredInput^T * gainMatrix
+        // equals divisor * gainVector^T, which yields the symmetric O(n^2)
+        // form gainMatrix -= divisor * gainVector * gainVector^T
+        XCSFUtils.Matrix.symmetricRankOneUpdatePacked(this.gainMatrix,
+                tmpGainVector, divisor, XCSFConstants.lambdaRLS,
                 this.inputLength);
-        // 5. divide gainMatrix entries by lambda
-        for (int row = 0; row < this.inputLength; row++) {
-            for (int col = 0; col < this.inputLength; col++) {
-                this.gainMatrix[row][col] = tmpMatrix2[row][col]
-                        / XCSFConstants.lambdaRLS;
-            }
-        }
     }
 
     /*
@@ -231,8 +203,8 @@ public class PredictionQuadraticRLS implements Prediction {
         }
         // modified fields
         clone.prediction = new double[this.predictionLength];
-        clone.gainMatrix = new double[this.inputLength][this.inputLength];
-        clone.initializeGainMatrix();
+        // the gainMatrix is initialized on the first update
+        clone.gainMatrix = null;
         return clone;
     }
 
@@ -248,7 +220,7 @@ public class PredictionQuadraticRLS implements Prediction {
             s += Arrays.toString(coeff);
         }
         s += ", gain=";
-        for (double[] row : this.gainMatrix) {
+        for (double[] row : this.getGainMatrix()) {
             s += Arrays.toString(row);
         }
         return s + "}";
@@ -270,28 +242,72 @@ public class PredictionQuadraticRLS implements Prediction {
         s.append(separator);
         s.append(Arrays.deepToString(this.coefficients));
         s.append(separator);
-        s.append(Arrays.deepToString(this.gainMatrix));
+        s.append(Arrays.deepToString(this.getGainMatrix()));
         out.print(s.toString());
     }
 
+    /**
+     * Returns the coefficients of this prediction without the offset.
+     * 
+     * @param withOffsetWeight
+     *            This flag indicates, if the offset weight is returned.
+     * @return the coefficients
+     */
+    public double[][] getCoefficients(boolean withOffsetWeight) {
+        int offset = withOffsetWeight ? 0 : 1;
+        int length = this.inputLength - offset;
+        double[][] coef = new double[this.predictionLength][length];
+        for (int row = 0; row < this.predictionLength; row++) {
+            System.arraycopy(this.coefficients[row], offset, coef[row], 0,
+                    length);
+        }
+        return coef;
+    }
+
+    /**
+     * Returns the gain matrix, e.g. for output or comparison with other RLS
+     * variants.
+     * 
+     * @return a new array containing the gain matrix
+     */
+    public double[][] getGainMatrix() {
+        if (this.gainMatrix == null) {
+            double[][] matrix = new double[this.inputLength][this.inputLength];
+            for (int i = 0; i < this.inputLength; i++) {
+                matrix[i][i] = XCSFConstants.rlsInitScaleFactor;
+            }
+            return matrix;
+        }
+        return XCSFUtils.Matrix.unpack(this.gainMatrix, this.inputLength);
+    }
+
     /**
      * Resets the gain matrix.
      */
     public void resetGainMatrix() {
+        if (this.gainMatrix == null) {
+            this.initializeGainMatrix();
+        }
+        // diagonal entries of the packed upper triangle
+        int index = 0;
         for (int i = 0; i < this.inputLength; i++) {
-            this.gainMatrix[i][i] += XCSFConstants.rlsInitScaleFactor;
+            this.gainMatrix[index] += XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
         }
     }
 
     /**
-     * Initializes the gainMatrix for this RLS prediction.
+     * Initializes the gainMatrix for this RLS prediction, which is called
+     * on the first update. Many classifiers are deleted before their first
+     * update, thus the matrix is not allocated before.
      */
     private void initializeGainMatrix() {
-        for (int row = 0; row < this.gainMatrix.length; row++) {
-            for (int col = 0; col < this.gainMatrix.length; col++) {
-                this.gainMatrix[row][col] = (row != col) ? 0
-                        : XCSFConstants.rlsInitScaleFactor;
-            }
+        this.gainMatrix = new double[XCSFUtils.Matrix
+                .packedLength(this.inputLength)];
+        int index = 0;
+        for (int i = 0; i < this.inputLength; i++) {
+            this.gainMatrix[index] = XCSFConstants.rlsInitScaleFactor;
+            index += this.inputLength - i;
         }
     }
 }
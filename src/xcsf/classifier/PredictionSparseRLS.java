@@ -0,0 +1,517 @@
+package xcsf.classifier;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import xcsf.XCSFConstants;
+import xcsf.XCSFUtils;
+
+/**
+ * Linear prediction for wide, sparse prediction inputs using recursive least
+ * squares with a diagonal approximation of the gain matrix. Coefficients and
+ * gains are stored only for input entries, that were nonzero in at least one
+ * update, in an open addressing hash table. Thus, predictions and updates
+ * require <tt>O(nnz)</tt> operations and the memory grows with the number of
+ * distinct nonzero entries instead of the input dimension.
+ * <p>
+ * In contrast to {@link PredictionLinearRLS}, the correlations between inputs
+ * are ignored: the update uses the gain vector <tt>k = P * x / (lambda + x^T *
+ * P * x)</tt> with the diagonal matrix <tt>P</tt>, and only the diagonal of
+ * the RLS update <tt>P -= k * x^T * P</tt> is kept. The forget rate
+ * <tt>lambda</tt> would scale all gains in every update, which is represented
+ * by one common factor instead.
+ * <p>
+ * Sparse inputs are used, if the state carries a sparse prediction input (see
+ * {@link xcsf.StateDescriptor#isSparse()}). Dense inputs are supported, too,
+ * but cost <tt>O(n)</tt> to find the nonzero entries.
+ */
+public class PredictionSparseRLS implements SparsePrediction {
+
+    // initial capacity of the hash table, must be a power of two
+    private final static int INITIAL_CAPACITY = 8;
+    // the common gain factor is moved into the gains, if it exceeds this value
+    private final static double MAX_GAIN_SCALE = 1e100;
+
+    private int inputLength; // dimension of function input (without offset)
+    private int predictionLength; // dimension of function output
+    // coefficient and gain of the offset
+    private double[] offsetCoefficients;
+    private double offsetGain;
+    // hash table: keys[slot] = input index + 1, 0 marks an empty slot
+    private int[] keys;
+    private int size;
+    // coefficients[slot * predictionLength + p] for output dimension p
+    private double[] coefficients;
+    // diagonal of the gain matrix, the actual gain is gains[slot] * gainScale
+    private double[] gains;
+    private double gainScale;
+    private double[] prediction; // array, to avoid mem-alloc
+
+    /**
+     * Default constructor with given input length and the actual function value
+     * (used as initial prediction).
+     *
+     * @param inputLength
+     *            the length of prediction input
+     * @param initialPrediction
+     *            the initial prediction value
+     */
+    public PredictionSparseRLS(int inputLength, double[] initialPrediction) {
+        this(inputLength, initialPrediction.length, INITIAL_CAPACITY);
+        // first coefficient is the offset
+        if (XCSFConstants.predictionOffsetValue > 0) {
+            for (int p = 0; p < this.predictionLength; p++) {
+                this.offsetCoefficients[p] = initialPrediction[p];
+            }
+        }
+    }
+
+    /**
+     * Parses the given String array. For details, how this constructor is
+     * called, see {@link Classifier#parse(String, String, String)}.
+     *
+     * @param args
+     *            the splited String
+     */
+    public PredictionSparseRLS(String[] args) {
+        this(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                capacityFor(Integer.parseInt(args[5])));
+        this.prediction = XCSFUtils.FileIO.parseDoubleArray(args[2]);
+        this.offsetCoefficients = XCSFUtils.FileIO.parseDoubleArray(args[3]);
+        this.offsetGain = Double.parseDouble(args[4]);
+        if (Integer.parseInt(args[5]) > 0) {
+            double[] indices = XCSFUtils.FileIO.parseDoubleArray(args[6]);
+            double[][] coef = XCSFUtils.FileIO.parse2dDoubleArray(args[7]);
+            double[] gain = XCSFUtils.FileIO.parseDoubleArray(args[8]);
+            for (int i = 0; i < indices.length; i++) {
+                int slot = this.insert((int) indices[i]);
+                System.arraycopy(coef[i], 0, this.coefficients, slot
+                        * this.predictionLength, this.predictionLength);
+                this.gains[slot] = gain[i];
+            }
+        }
+    }
+
+    /**
+     * Private constructor for covering, cloning and parsing.
+     *
+     * @param inputLength
+     *            the length of prediction input
+     * @param predictionLength
+     *            the length of the prediction
+     * @param capacity
+     *            the initial capacity of the hash table
+     */
+    private PredictionSparseRLS(int inputLength, int predictionLength,
+            int capacity) {
+        this.inputLength = inputLength;
+        this.predictionLength = predictionLength;
+        this.offsetCoefficients = new double[predictionLength];
+        this.offsetGain = XCSFConstants.rlsInitScaleFactor;
+        this.keys = new int[capacity];
+        this.coefficients = new double[capacity * predictionLength];
+        this.gains = new double[capacity];
+        this.gainScale = 1;
+        this.prediction = new double[predictionLength];
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#predict(double[])
+     */
+    public double[] predict(double[] input) {
+        for (int p = 0; p < this.predictionLength; p++) {
+            this.prediction[p] = this.offsetCoefficients[p]
+                    * XCSFConstants.predictionOffsetValue;
+        }
+        // all other coefficients are zero
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != 0) {
+                double value = input[this.keys[slot] - 1];
+                int offset = slot * this.predictionLength;
+                for (int p = 0; p < this.predictionLength; p++) {
+                    this.prediction[p] += this.coefficients[offset + p]
+                            * value;
+                }
+            }
+        }
+        return this.prediction;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.SparsePrediction#predict(int[], double[])
+     */
+    public double[] predict(int[] indices, double[] values) {
+        for (int p = 0; p < this.predictionLength; p++) {
+            this.prediction[p] = this.offsetCoefficients[p]
+                    * XCSFConstants.predictionOffsetValue;
+        }
+        for (int i = 0; i < indices.length; i++) {
+            int slot = this.find(indices[i]);
+            if (slot >= 0) {
+                int offset = slot * this.predictionLength;
+                for (int p = 0; p < this.predictionLength; p++) {
+                    this.prediction[p] += this.coefficients[offset + p]
+                            * values[i];
+                }
+            }
+        }
+        return this.prediction;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#update(double[], double[])
+     */
+    public void update(double[] input, double[] functionValue) {
+        // PRECONDITION: this.predict(input) was called before.
+        Workspace workspace = Workspace.get();
+        int[] tmpIndices = workspace.sparseIndices(input.length);
+        double[] tmpValues = workspace.sparseValues(input.length);
+        int count = 0;
+        for (int i = 0; i < input.length; i++) {
+            if (input[i] != 0) {
+                tmpIndices[count] = i;
+                tmpValues[count++] = input[i];
+            }
+        }
+        this.update(tmpIndices, tmpValues, count, functionValue);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.SparsePrediction#update(int[], double[], double[])
+     */
+    public void update(int[] indices, double[] values, double[] functionValue) {
+        // PRECONDITION: this.predict(indices, values) was called before.
+        this.update(indices, values, indices.length, functionValue);
+    }
+
+    /**
+     * Updates this prediction using the first <code>count</code> nonzero
+     * entries given by <code>indices</code> and <code>values</code>.
+     *
+     * @param indices
+     *            the indices of the nonzero input entries
+     * @param values
+     *            the values of the nonzero input entries
+     * @param count
+     *            the number of nonzero input entries
+     * @param functionValue
+     *            the actual function value
+     */
+    private void update(int[] indices, double[] values, int count,
+            double[] functionValue) {
+        // 1. find or insert the slots of the nonzero entries
+        while (2 * (this.size + count) > this.keys.length) {
+            this.rehash(2 * this.keys.length);
+        }
+        int[] tmpSlots = Workspace.get().sparseSlots(count);
+        for (int i = 0; i < count; i++) {
+            if (values[i] == 0) {
+                tmpSlots[i] = -1; // no effect on coefficients and gains
+            } else {
+                int slot = this.find(indices[i]);
+                tmpSlots[i] = (slot >= 0) ? slot : this.insert(indices[i]);
+            }
+        }
+
+        // 2. divisor = lambda + x^T * P * x for the diagonal P
+        double offset = XCSFConstants.predictionOffsetValue;
+        double divisor = XCSFConstants.lambdaRLS + this.offsetGain * offset
+                * offset;
+        for (int i = 0; i < count; i++) {
+            if (tmpSlots[i] >= 0) {
+                divisor += this.gains[tmpSlots[i]] * this.gainScale
+                        * values[i] * values[i];
+            }
+        }
+
+        // 3. update coefficients using the error (functionValue - prediction)
+        // and the gain vector k = P * x / divisor
+        // Note, that "this.prediction" is up to date at the moment!
+        double offsetK = this.offsetGain * offset / divisor;
+        for (int p = 0; p < this.predictionLength; p++) {
+            double error = functionValue[p] - this.prediction[p];
+            this.offsetCoefficients[p] += error * offsetK;
+            for (int i = 0; i < count; i++) {
+                int slot = tmpSlots[i];
+                if (slot >= 0) {
+                    double k = this.gains[slot] * this.gainScale * values[i]
+                            / divisor;
+                    this.coefficients[slot * this.predictionLength + p] += error
+                            * k;
+                }
+            }
+        }
+
+        // 4. update the diagonal of the gain matrix and divide it by lambda:
+        // P(i,i) -= P(i,i)^2 * x(i)^2 / divisor
+        this.offsetGain = (this.offsetGain - this.offsetGain * this.offsetGain
+                * offset * offset / divisor)
+                / XCSFConstants.lambdaRLS;
+        for (int i = 0; i < count; i++) {
+            int slot = tmpSlots[i];
+            if (slot >= 0) {
+                double gain = this.gains[slot] * this.gainScale;
+                gain -= gain * gain * values[i] * values[i] / divisor;
+                this.gains[slot] = gain / this.gainScale;
+            }
+        }
+        // division of all gains by lambda
+        if (XCSFConstants.lambdaRLS != 1) {
+            this.gainScale /= XCSFConstants.lambdaRLS;
+            if (this.gainScale > MAX_GAIN_SCALE) {
+                for (int slot = 0; slot < this.keys.length; slot++) {
+                    this.gains[slot] *= this.gainScale;
+                }
+                this.gainScale = 1;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#crossover(xcsf.classifier.Prediction)
+     */
+    public void crossover(Prediction otherPrediction) {
+        PredictionSparseRLS other = (PredictionSparseRLS) otherPrediction;
+        for (int p = 0; p < this.predictionLength; p++) {
+            double avg = this.offsetCoefficients[p]
+                    + other.offsetCoefficients[p];
+            this.offsetCoefficients[p] = other.offsetCoefficients[p] = avg / 2.0;
+        }
+        // missing coefficients are zero, thus both predictions end up with the
+        // union of the stored entries
+        this.average(other);
+        other.average(this);
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#reproduce()
+     */
+    public PredictionSparseRLS reproduce() {
+        PredictionSparseRLS clone = new PredictionSparseRLS(this.inputLength,
+                this.predictionLength, this.keys.length);
+        // cloned fields
+        System.arraycopy(this.offsetCoefficients, 0, clone.offsetCoefficients,
+                0, this.predictionLength);
+        System.arraycopy(this.keys, 0, clone.keys, 0, this.keys.length);
+        System.arraycopy(this.coefficients, 0, clone.coefficients, 0,
+                this.coefficients.length);
+        clone.size = this.size;
+        // modified fields: initial gains
+        Arrays.fill(clone.gains, XCSFConstants.rlsInitScaleFactor);
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        return "prediction{in=" + this.inputLength + ",out="
+                + this.predictionLength + " offset="
+                + Arrays.toString(this.offsetCoefficients) + ", nonzero="
+                + this.size + "}";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#write(java.io.PrintStream,
+     * java.lang.CharSequence)
+     */
+    public void write(PrintStream out, CharSequence separator) {
+        int[] indices = new int[this.size];
+        double[][] coef = new double[this.size][this.predictionLength];
+        double[] gain = new double[this.size];
+        for (int slot = 0, i = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != 0) {
+                indices[i] = this.keys[slot] - 1;
+                System.arraycopy(this.coefficients, slot
+                        * this.predictionLength, coef[i], 0,
+                        this.predictionLength);
+                gain[i++] = this.gains[slot] * this.gainScale;
+            }
+        }
+        StringBuffer s = new StringBuffer();
+        s.append(this.inputLength);
+        s.append(separator);
+        s.append(this.predictionLength);
+        s.append(separator);
+        s.append(Arrays.toString(this.prediction));
+        s.append(separator);
+        s.append(Arrays.toString(this.offsetCoefficients));
+        s.append(separator);
+        s.append(this.offsetGain);
+        s.append(separator);
+        s.append(this.size);
+        s.append(separator);
+        s.append(Arrays.toString(indices));
+        s.append(separator);
+        s.append(Arrays.deepToString(coef));
+        s.append(separator);
+        s.append(Arrays.toString(gain));
+        out.print(s.toString());
+    }
+
+    /**
+     * Returns the number of input entries, for which coefficients are stored.
+     *
+     * @return the number of stored input entries
+     */
+    public int getStoredInputs() {
+        return this.size;
+    }
+
+    /**
+     * Resets the gain matrix of the RLS part.
+     */
+    public void resetGainMatrix() {
+        this.offsetGain += XCSFConstants.rlsInitScaleFactor;
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] != 0) {
+                this.gains[slot] += XCSFConstants.rlsInitScaleFactor
+                        / this.gainScale;
+            }
+        }
+    }
+
+    /**
+     * Sets the coefficients of this prediction and <code>other</code> to
+     * their average for all input entries stored by this prediction.
+     * Entries, that are not stored by <code>other</code>, are inserted.
+     *
+     * @param other
+     *            the other prediction
+     */
+    private void average(PredictionSparseRLS other) {
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot] == 0) {
+                continue;
+            }
+            int index = this.keys[slot] - 1;
+            int otherSlot = other.find(index);
+            if (otherSlot < 0) {
+                if (2 * (other.size + 1) > other.keys.length) {
+                    other.rehash(2 * other.keys.length);
+                }
+                otherSlot = other.insert(index);
+            }
+            int offset = slot * this.predictionLength;
+            int otherOffset = otherSlot * this.predictionLength;
+            for (int p = 0; p < this.predictionLength; p++) {
+                double avg = this.coefficients[offset + p]
+                        + other.coefficients[otherOffset + p];
+                this.coefficients[offset + p] = other.coefficients[otherOffset
+                        + p] = avg / 2.0;
+            }
+        }
+    }
+
+    /**
+     * Returns the slot of the given input index.
+     *
+     * @param index
+     *            the input index
+     * @return the slot, or <tt>-1</tt> if the index is not stored
+     */
+    private int find(int index) {
+        int mask = this.keys.length - 1;
+        int key = index + 1;
+        for (int slot = hash(index) & mask;; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return slot;
+            } else if (this.keys[slot] == 0) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Inserts the given input index with zero coefficients and the initial
+     * gain. The index must not be stored and the table must have a free slot.
+     *
+     * @param index
+     *            the input index
+     * @return the slot of the index
+     */
+    private int insert(int index) {
+        int mask = this.keys.length - 1;
+        int slot = hash(index) & mask;
+        while (this.keys[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = index + 1;
+        this.gains[slot] = XCSFConstants.rlsInitScaleFactor / this.gainScale;
+        this.size++;
+        return slot;
+    }
+
+    /**
+     * Moves all entries into a hash table of the given capacity.
+     *
+     * @param capacity
+     *            the new capacity, a power of two
+     */
+    private void rehash(int capacity) {
+        int[] oldKeys = this.keys;
+        double[] oldCoefficients = this.coefficients;
+        double[] oldGains = this.gains;
+        this.keys = new int[capacity];
+        this.coefficients = new double[capacity * this.predictionLength];
+        this.gains = new double[capacity];
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldKeys[oldSlot] != 0) {
+                int slot = hash(oldKeys[oldSlot] - 1) & mask;
+                while (this.keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                this.keys[slot] = oldKeys[oldSlot];
+                System.arraycopy(oldCoefficients, oldSlot
+                        * this.predictionLength, this.coefficients, slot
+                        * this.predictionLength, this.predictionLength);
+                this.gains[slot] = oldGains[oldSlot];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of the given input index.
+     *
+     * @param index
+     *            the input index
+     * @return the hash value
+     */
+    private static int hash(int index) {
+        int h = index * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the capacity of a hash table for the given number of entries,
+     * such that at most half of the slots are used.
+     *
+     * @param size
+     *            the number of entries
+     * @return the capacity, a power of two
+     */
+    private static int capacityFor(int size) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * size) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,298 @@
+package xcsf.classifier;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+import xcsf.XCSFConstants;
+import xcsf.XCSFUtils;
+
+/**
+ * Linear prediction using square-root recursive least squares (Potter's
+ * algorithm). Instead of the gain matrix <tt>P</tt> itself, this
+ * implementation maintains a factor <tt>S</tt> with
+ *
+ * <pre>
+ * P = S * S&circ;T
+ * </pre>
+ *
+ * Thus, the gain matrix is symmetric and positive semi-definite by
+ * construction, while rounding errors may destroy these properties for the
+ * regular update (see {@link PredictionLinearRLS}), which is sensitive to the
+ * large initial values given by {@link XCSFConstants#rlsInitScaleFactor}. The
+ * condition number of <tt>S</tt> is the square root of the one of <tt>P</tt>,
+ * and this prediction does not need a periodic reset of the gain matrix for
+ * long runs. Consequently, the reset according to
+ * {@link XCSFConstants#resetRLSPredictionsAfterSteps} is skipped.
+ * <p>
+ * One update requires <tt>O(n^2)</tt> operations, where <tt>n</tt> is the
+ * dimension of the prediction input plus one (offset).
+ */
+public class PredictionSqrtRLS implements Prediction {
+
+    private int inputLength; // dimension of function input + 1 (offset)
+    private int predictionLength; // dimension of function output
+    private double[][] coefficients; // coefficients of the linear fit
+    private double[][] gainFactor; // square root of the gain matrix
+    private double[] prediction; // array, to avoid mem-alloc
+
+    /**
+     * Default constructor with given input length and the actual function value
+     * (used as initial prediction).
+     *
+     * @param inputLength
+     *            the length of prediction input
+     * @param initialPrediction
+     *            the initial prediction value
+     */
+    public PredictionSqrtRLS(int inputLength, double[] initialPrediction) {
+        this.inputLength = inputLength + 1;
+        this.predictionLength = initialPrediction.length;
+        this.coefficients = new double[this.predictionLength][this.inputLength];
+        this.gainFactor = new double[this.inputLength][this.inputLength];
+        this.prediction = new double[this.predictionLength];
+        // init coefficients
+        for (int p = 0; p < this.predictionLength; p++) {
+            // first coefficient is the offset
+            if (XCSFConstants.predictionOffsetValue > 0) {
+                this.coefficients[p][0] = initialPrediction[p];
+            } else {
+                this.coefficients[p][0] = 0;
+            }
+        }
+        // init gain factor
+        this.initializeGainFactor();
+    }
+
+    /**
+     * Parses the given String array. For details, how this constructor is
+     * called, see {@link Classifier#parse(String, String, String)}.
+     *
+     * @param args
+     *            the splited String
+     */
+    public PredictionSqrtRLS(String[] args) {
+        this();
+        this.inputLength = Integer.parseInt(args[0]);
+        this.predictionLength = Integer.parseInt(args[1]);
+        this.prediction = XCSFUtils.FileIO.parseDoubleArray(args[2]);
+        this.coefficients = XCSFUtils.FileIO.parse2dDoubleArray(args[3]);
+        this.gainFactor = XCSFUtils.FileIO.parse2dDoubleArray(args[4]);
+    }
+
+    /**
+     * Private empty constructor for efficient cloning and parsing.
+     */
+    private PredictionSqrtRLS() {
+        // empty
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#predict(double[])
+     */
+    public double[] predict(double[] input) {
+        for (int dim = 0; dim < this.predictionLength; dim++) {
+            // first coefficient is offset
+            this.prediction[dim] = this.coefficients[dim][0]
+                    * XCSFConstants.predictionOffsetValue;
+            // multiply other coefficients with the prediction input
+            for (int i = 1; i < this.inputLength; i++) {
+                this.prediction[dim] += this.coefficients[dim][i]
+                        * input[i - 1];
+            }
+        }
+        return this.prediction;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#updatePrediction(double[], double[])
+     */
+    public void update(double[] input, double[] functionValue) {
+        // PRECONDITION: this.predict(input) was called before.
+        int n = this.inputLength;
+        Workspace workspace = Workspace.get();
+        double[] tmpExtendedPredInput = workspace.extendedInput(n);
+        double[] tmpProjectedInput = workspace.projectedInput(n);
+        double[] tmpGainVector = workspace.gainVector(n);
+        // extend prediction input
+        tmpExtendedPredInput[0] = XCSFConstants.predictionOffsetValue;
+        for (int i = 0; i < input.length; i++) {
+            tmpExtendedPredInput[i + 1] = input[i];
+        }
+        // 1. projected input phi = gainFactor^T * extendedPredInput
+        for (int j = 0; j < n; j++) {
+            tmpProjectedInput[j] = 0;
+        }
+        for (int i = 0; i < n; i++) {
+            double x = tmpExtendedPredInput[i];
+            if (x != 0) {
+                double[] row = this.gainFactor[i];
+                for (int j = 0; j < n; j++) {
+                    tmpProjectedInput[j] += row[j] * x;
+                }
+            }
+        }
+        // 2. divisor = lambda + <phi, phi>, which equals the divisor of the
+        // regular RLS update, and unscaled gain vector = gainFactor * phi
+        double divisor = XCSFConstants.lambdaRLS;
+        for (int j = 0; j < n; j++) {
+            divisor += tmpProjectedInput[j] * tmpProjectedInput[j];
+        }
+        XCSFUtils.Matrix.multiply(this.gainFactor, tmpProjectedInput,
+                tmpGainVector, n);
+
+        // 3. update coefficients using the error (functionValue - prediction)
+        // and the gain vector (gainFactor * phi / divisor)
+        // Note, that "this.prediction" is up to date at the moment!
+        for (int p = 0; p < this.predictionLength; p++) {
+            double error = (functionValue[p] - this.prediction[p]) / divisor;
+            for (int i = 0; i < n; i++) {
+                this.coefficients[p][i] += error * tmpGainVector[i];
+            }
+        }
+
+        // 4. update gainFactor (Potter):
+        // gainFactor = (gainFactor - gamma * gainVector * phi^T) / sqrt(lambda)
+        // with gamma = 1 / (divisor * (1 + sqrt(lambda / divisor)))
+        double gamma = 1.0 / (divisor * (1.0 + Math.sqrt(XCSFConstants.lambdaRLS
+                / divisor)));
+        double scale = 1.0 / Math.sqrt(XCSFConstants.lambdaRLS);
+        for (int i = 0; i < n; i++) {
+            double[] row = this.gainFactor[i];
+            double factor = gamma * tmpGainVector[i];
+            for (int j = 0; j < n; j++) {
+                row[j] = (row[j] - factor * tmpProjectedInput[j]) * scale;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#crossover(xcsf.classifier.Prediction)
+     */
+    public void crossover(Prediction otherPrediction) {
+        PredictionSqrtRLS other = (PredictionSqrtRLS) otherPrediction;
+        for (int p = 0; p < this.predictionLength; p++) {
+            for (int i = 0; i < this.inputLength; i++) {
+                double avg = this.coefficients[p][i] + other.coefficients[p][i];
+                this.coefficients[p][i] = other.coefficients[p][i] = avg / 2.0;
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#reproduce()
+     */
+    public PredictionSqrtRLS reproduce() {
+        PredictionSqrtRLS clone = new PredictionSqrtRLS();
+        // cloned fields
+        clone.inputLength = this.inputLength;
+        clone.predictionLength = this.predictionLength;
+        clone.coefficients = new double[this.predictionLength][this.inputLength];
+        for (int p = 0; p < this.predictionLength; p++) {
+            for (int i = 0; i < this.inputLength; i++) {
+                clone.coefficients[p][i] = this.coefficients[p][i];
+            }
+        }
+        // modified fields
+        clone.prediction = new double[this.predictionLength];
+        clone.gainFactor = new double[this.inputLength][this.inputLength];
+        clone.initializeGainFactor();
+        return clone;
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see java.lang.Object#toString()
+     */
+    public String toString() {
+        String s = "prediction{in=" + (this.inputLength - 1) + ",out="
+                + this.predictionLength + " coef=";
+        for (double[] coeff : this.coefficients) {
+            s += Arrays.toString(coeff);
+        }
+        s += ", gainFactor=";
+        for (double[] row : this.gainFactor) {
+            s += Arrays.toString(row);
+        }
+        return s + "}";
+    }
+
+    /*
+     * (non-Javadoc)
+     *
+     * @see xcsf.classifier.Prediction#write(java.io.PrintStream,
+     * java.lang.CharSequence)
+     */
+    public void write(PrintStream out, CharSequence separator) {
+        StringBuffer s = new StringBuffer();
+        s.append(this.inputLength);
+        s.append(separator);
+        s.append(this.predictionLength);
+        s.append(separator);
+        s.append(Arrays.toString(this.prediction));
+        s.append(separator);
+        s.append(Arrays.deepToString(this.coefficients));
+        s.append(separator);
+        s.append(Arrays.deepToString(this.gainFactor));
+        out.print(s.toString());
+    }
+
+    /**
+     * Returns the coefficients of this prediction without the offset.
+     *
+     * @param withOffsetWeight
+     *            This flag indicates, if the offset weight is returned.
+     * @return the coefficients
+     */
+    public double[][] getCoefficients(boolean withOffsetWeight) {
+        int offset = withOffsetWeight ? 0 : 1;
+        int length = this.inputLength - offset;
+        double[][] coef = new double[this.predictionLength][length];
+        for (int row = 0; row < this.predictionLength; row++) {
+            System.arraycopy(this.coefficients[row], offset, coef[row], 0,
+                    length);
+        }
+        return coef;
+    }
+
+    /**
+     * Returns the gain matrix <tt>S * S^T</tt>, e.g. for comparison with the
+     * regular RLS update.
+     *
+     * @return a new array containing the gain matrix
+     */
+    public double[][] getGainMatrix() {
+        int n = this.inputLength;
+        double[][] gainMatrix = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                for (int k = 0; k < n; k++) {
+                    gainMatrix[i][j] += this.gainFactor[i][k]
+                            * this.gainFactor[j][k];
+                }
+            }
+        }
+        return gainMatrix;
+    }
+
+    /**
+     * Initializes the gain factor, such that the gain matrix equals
+     * {@link XCSFConstants#rlsInitScaleFactor} times the identity.
+     */
+    private void initializeGainFactor() {
+        double diagonal = Math.sqrt(XCSFConstants.rlsInitScaleFactor);
+        for (int row = 0; row < this.gainFactor.length; row++) {
+            for (int col = 0; col < this.gainFactor.length; col++) {
+                this.gainFactor[row][col] = (row != col) ? 0 : diagonal;
+            }
+        }
+    }
+}
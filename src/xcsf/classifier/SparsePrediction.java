@@ -0,0 +1,45 @@
+package xcsf.classifier;
+
+/**
+ * Extension of the {@link Prediction} interface for sparse prediction inputs,
+ * that is states with separated condition and prediction input, where the
+ * prediction input is given by the indices and values of its nonzero entries
+ * (see {@link xcsf.StateDescriptor#isSparse()}). Implementations should
+ * compute predictions and updates with a cost proportional to the number of
+ * nonzero entries instead of the input dimension.
+ * <p>
+ * Dense inputs are still passed to {@link #predict(double[])} and
+ * {@link #update(double[], double[])}, e.g. if condition and prediction input
+ * are not separated.
+ */
+public interface SparsePrediction extends Prediction {
+
+    /**
+     * Generates the prediction using the given sparse input.
+     *
+     * @param indices
+     *            the distinct indices of the nonzero input entries
+     * @param values
+     *            the values of the nonzero input entries
+     * @return the predicted output at the given input
+     * @see Prediction#predict(double[])
+     */
+    public double[] predict(int[] indices, double[] values);
+
+    /**
+     * Updates this prediction using the given sparse input and the actual
+     * function value.
+     * <p>
+     * Precondition: {@link #predict(int[], double[])} was called with the same
+     * input before.
+     *
+     * @param indices
+     *            the distinct indices of the nonzero input entries
+     * @param values
+     *            the values of the nonzero input entries
+     * @param functionValue
+     *            the actual function value
+     * @see Prediction#update(double[], double[])
+     */
+    public void update(int[] indices, double[] values, double[] functionValue);
+}
@@ -0,0 +1,313 @@
+package xcsf.classifier;
+
+/**
+ * Temporary arrays of classifiers, conditions and predictions, confined to a
+ * single thread. Formerly, these arrays were static fields of the respective
+ * classes, which prevented concurrent calls of e.g.
+ * {@link Classifier#predict(xcsf.StateDescriptor)},
+ * {@link Classifier#update1(xcsf.StateDescriptor)} or
+ * {@link Condition#mutation()} for different classifiers. Every thread now
+ * obtains its own workspace by {@link #get()}.
+ * <p>
+ * The arrays are allocated on first use and re-allocated, if the requested
+ * dimension changes. An array is valid until the same thread requests it
+ * again, thus a method must not call another method that uses the same array
+ * while it still needs the contents. Workspaces and their arrays must not be
+ * passed to other threads.
+ */
+final class Workspace {
+
+    // one workspace per thread, created on first use
+    private final static ThreadLocal<Workspace> LOCAL = new ThreadLocal<Workspace>() {
+
+        /*
+         * (non-Javadoc)
+         *
+         * @see java.lang.ThreadLocal#initialValue()
+         */
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    // classifier: difference between condition input and center
+    private double[] centerDifference;
+    // predictions: extended prediction input, gain vector, projected input
+    private double[] extendedInput;
+    private double[] gainVector;
+    private double[] projectedInput;
+    // conditions: vector, extended transformation and its inverse, cosines
+    // and sines of the rotation angles
+    private double[] vector;
+    private double[][] transformation;
+    private double[][] inverseTransformation;
+    private double[] cosines;
+    private double[] sines;
+    // compact conditions: double copies of the float genotype
+    private double[] stretch;
+    private double[] angles;
+    // conditions without stored transformation matrices: the random mutation
+    // vector and a rotated axis
+    private double[] mutationVector;
+    private double[] axis;
+    private int[] sparseIndices;
+    private double[] sparseValues;
+    private int[] sparseSlots;
+
+    /**
+     * Private constructor, use {@link #get()}.
+     */
+    private Workspace() {
+        // empty
+    }
+
+    /**
+     * Returns the workspace of the current thread.
+     *
+     * @return the workspace of the current thread
+     */
+    static Workspace get() {
+        return LOCAL.get();
+    }
+
+    /**
+     * Returns the array for the difference between condition input and center
+     * of a classifier.
+     *
+     * @param length
+     *            the dimension of the condition input
+     * @return the temporary array
+     */
+    double[] centerDifference(int length) {
+        if (centerDifference == null || centerDifference.length != length) {
+            centerDifference = new double[length];
+        }
+        return centerDifference;
+    }
+
+    /**
+     * Returns the array for the extended prediction input, i.e. the offset
+     * followed by the (possibly expanded) prediction input.
+     *
+     * @param length
+     *            the length of the extended input
+     * @return the temporary array
+     */
+    double[] extendedInput(int length) {
+        if (extendedInput == null || extendedInput.length != length) {
+            extendedInput = new double[length];
+        }
+        return extendedInput;
+    }
+
+    /**
+     * Returns the array for the gain vector of a recursive least squares
+     * update.
+     *
+     * @param length
+     *            the length of the extended input
+     * @return the temporary array
+     */
+    double[] gainVector(int length) {
+        if (gainVector == null || gainVector.length != length) {
+            gainVector = new double[length];
+        }
+        return gainVector;
+    }
+
+    /**
+     * Returns the array for the projected input of a square-root recursive
+     * least squares update.
+     *
+     * @param length
+     *            the length of the extended input
+     * @return the temporary array
+     */
+    double[] projectedInput(int length) {
+        if (projectedInput == null || projectedInput.length != length) {
+            projectedInput = new double[length];
+        }
+        return projectedInput;
+    }
+
+    /**
+     * Returns a vector for condition computations.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary array
+     */
+    double[] vector(int dimension) {
+        if (vector == null || vector.length != dimension) {
+            vector = new double[dimension];
+        }
+        return vector;
+    }
+
+    /**
+     * Returns a matrix for extended transformations, i.e. including the
+     * translation.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary (<code>dimension+1</code> x
+     *         <code>dimension+1</code>) matrix
+     */
+    double[][] transformation(int dimension) {
+        if (transformation == null || transformation.length != dimension + 1) {
+            transformation = new double[dimension + 1][dimension + 1];
+        }
+        return transformation;
+    }
+
+    /**
+     * Returns a second matrix for extended transformations, e.g. the inverse
+     * of {@link #transformation(int)}.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary (<code>dimension+1</code> x
+     *         <code>dimension+1</code>) matrix
+     */
+    double[][] inverseTransformation(int dimension) {
+        if (inverseTransformation == null
+                || inverseTransformation.length != dimension + 1) {
+            inverseTransformation = new double[dimension + 1][dimension + 1];
+        }
+        return inverseTransformation;
+    }
+
+    /**
+     * Returns the array for the cosines of the rotation angles of a
+     * condition.
+     *
+     * @param length
+     *            the number of angles
+     * @return the temporary array
+     */
+    double[] cosines(int length) {
+        if (cosines == null || cosines.length != length) {
+            cosines = new double[length];
+        }
+        return cosines;
+    }
+
+    /**
+     * Returns the array for the sines of the rotation angles of a condition.
+     *
+     * @param length
+     *            the number of angles
+     * @return the temporary array
+     */
+    double[] sines(int length) {
+        if (sines == null || sines.length != length) {
+            sines = new double[length];
+        }
+        return sines;
+    }
+
+    /**
+     * Returns the array for a double copy of the stretch of a compact
+     * condition.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary array
+     */
+    double[] stretch(int dimension) {
+        if (stretch == null || stretch.length != dimension) {
+            stretch = new double[dimension];
+        }
+        return stretch;
+    }
+
+    /**
+     * Returns the array for a double copy of the rotation angles of a compact
+     * condition.
+     *
+     * @param length
+     *            the number of angles
+     * @return the temporary array
+     */
+    double[] angles(int length) {
+        if (angles == null || angles.length != length) {
+            angles = new double[length];
+        }
+        return angles;
+    }
+
+    /**
+     * Returns the array for the random mutation vector of a condition
+     * without stored transformation matrices.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary array
+     */
+    double[] mutationVector(int dimension) {
+        if (mutationVector == null || mutationVector.length != dimension) {
+            mutationVector = new double[dimension];
+        }
+        return mutationVector;
+    }
+
+    /**
+     * Returns the array for a semi-axis of a condition, which is rotated
+     * without stored transformation matrices.
+     *
+     * @param dimension
+     *            the dimension of the condition
+     * @return the temporary array
+     */
+    double[] axis(int dimension) {
+        if (axis == null || axis.length != dimension) {
+            axis = new double[dimension];
+        }
+        return axis;
+    }
+
+    /**
+     * Returns the array for the indices of the nonzero entries of a dense
+     * prediction input. The array may be longer than requested.
+     *
+     * @param length
+     *            the maximum number of nonzero entries
+     * @return the temporary array
+     */
+    int[] sparseIndices(int length) {
+        if (sparseIndices == null || sparseIndices.length < length) {
+            sparseIndices = new int[length];
+        }
+        return sparseIndices;
+    }
+
+    /**
+     * Returns the array for the values of the nonzero entries of a dense
+     * prediction input. The array may be longer than requested.
+     *
+     * @param length
+     *            the maximum number of nonzero entries
+     * @return the temporary array
+     */
+    double[] sparseValues(int length) {
+        if (sparseValues == null || sparseValues.length < length) {
+            sparseValues = new double[length];
+        }
+        return sparseValues;
+    }
+
+    /**
+     * Returns the array for the hash table slots of the nonzero entries of a
+     * sparse prediction input. The array may be longer than requested.
+     *
+     * @param length
+     *            the number of nonzero entries
+     * @return the temporary array
+     */
+    int[] sparseSlots(int length) {
+        if (sparseSlots == null || sparseSlots.length < length) {
+            sparseSlots = new int[length];
+        }
+        return sparseSlots;
+    }
+}